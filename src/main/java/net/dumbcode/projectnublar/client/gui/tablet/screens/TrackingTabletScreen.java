@@ -1,5 +1,6 @@
 package net.dumbcode.projectnublar.client.gui.tablet.screens;
 
+import io.netty.buffer.ByteBuf;
 import lombok.RequiredArgsConstructor;
 import net.dumbcode.dumblibrary.client.RenderUtils;
 import net.dumbcode.dumblibrary.client.gui.GuiScrollBox;
@@ -12,6 +13,10 @@ import net.dumbcode.projectnublar.server.entity.tracking.TrackingSavedData;
 import net.dumbcode.projectnublar.server.network.C23ConfirmTrackingTablet;
 import net.dumbcode.projectnublar.server.network.C25StopTrackingTablet;
 import net.dumbcode.projectnublar.server.network.C30TrackingTabletEntryClicked;
+import net.dumbcode.projectnublar.server.network.C42TrackingTabletViewport;
+import net.dumbcode.projectnublar.server.network.S24TrackingTabletUpdateChunk;
+import net.dumbcode.projectnublar.server.network.S32UpdateTrackingDataList;
+import net.dumbcode.projectnublar.server.utils.TrackingTabletIterator;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.Gui;
 import net.minecraft.client.renderer.GlStateManager;
@@ -19,18 +24,22 @@ import net.minecraft.client.renderer.RenderHelper;
 import net.minecraft.client.renderer.texture.TextureUtil;
 import net.minecraft.item.ItemStack;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec2f;
+import net.minecraft.util.math.Vec3d;
 import net.minecraftforge.fml.client.config.GuiUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.input.Mouse;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 
 import javax.vecmath.Matrix4f;
 import javax.vecmath.Point3f;
 import javax.vecmath.Vector4f;
 import java.awt.*;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.List;
 import java.util.*;
 import java.util.function.Consumer;
@@ -56,8 +65,15 @@ public class TrackingTabletScreen extends TabletScreen {
 
     private final Matrix4f transformation = new Matrix4f();
     private final FloatBuffer buffer = BufferUtils.createFloatBuffer(16);
+    private IntBuffer uploadBuffer = BufferUtils.createIntBuffer(16 * 16);
+    private IntBuffer overviewBuffer = BufferUtils.createIntBuffer(16 * 16);
 
-    private List<TrackingSavedData.DataEntry> trackingData = new ArrayList<>();
+    private static final long VIEWPORT_UPDATE_INTERVAL = 250L;
+    private final int[] viewport = new int[4];
+    private long lastViewportUpdate;
+
+    //Session id -> entry, as sent by the server
+    private final Map<Short, TrackingSavedData.DataEntry> trackingData = new HashMap<>();
     private TrackingSavedData.DataEntry selected;
 
     public TrackingTabletScreen(List<Pair<BlockPos, String>> entries) {
@@ -78,12 +94,19 @@ public class TrackingTabletScreen extends TabletScreen {
         this.textureWidth = textureWidth;
         this.textureHeight = textureHeight;
 
+        this.trackingData.clear();
+        this.selected = null;
+        Arrays.fill(this.viewport, 0);
+        this.lastViewportUpdate = 0;
+
         if(this.textureID != -1) {
             TextureUtil.deleteTexture(this.textureID);
         }
 
         this.textureID = TextureUtil.glGenTextures();
         TextureUtil.allocateTextureImpl(this.textureID, 0, this.textureWidth, this.textureHeight);
+        GlStateManager.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GlStateManager.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
 
         ProjectNublar.NETWORK.sendToServer(new C23ConfirmTrackingTablet());
 
@@ -108,7 +131,7 @@ public class TrackingTabletScreen extends TabletScreen {
 
             GlStateManager.popMatrix();
 
-            for (TrackingSavedData.DataEntry datum : this.trackingData) {
+            for (TrackingSavedData.DataEntry datum : this.trackingData.values()) {
                 Vec2f point = this.getPoint(datum);
                 //Debug
                 RenderUtils.renderBorderExclusive((int) point.x - 1, (int) point.y - 1, (int) point.x + 1, (int) point.y + 1, 2, 0xFFFF0000);
@@ -117,6 +140,7 @@ public class TrackingTabletScreen extends TabletScreen {
             if(this.selected != null) {
                 this.renderTooltip(mouseX, mouseY);
             }
+            this.updateViewport();
         }
 
         this.scrollBox.render(mouseX, mouseY);
@@ -149,7 +173,7 @@ public class TrackingTabletScreen extends TabletScreen {
         TrackingSavedData.DataEntry nearest = null;
         float nearestDist = Integer.MAX_VALUE;
 
-        for (TrackingSavedData.DataEntry datum : this.trackingData) {
+        for (TrackingSavedData.DataEntry datum : this.trackingData.values()) {
             Vec2f point = this.getPoint(datum);
             float dist = (point.x - x)*(point.x - x) + (point.y - y)*(point.y - y);
             if(dist < nearestDist) {
@@ -199,9 +223,42 @@ public class TrackingTabletScreen extends TabletScreen {
         ProjectNublar.NETWORK.sendToServer(new C25StopTrackingTablet());
     }
 
-    public void setTrackingData(List<TrackingSavedData.DataEntry> trackingData) {
-        this.trackingData = trackingData;
-        this.selected = trackingData.stream().filter(d -> this.selected != null && d.getUuid().equals(this.selected.getUuid())).findAny().orElse(null);
+    public void setTrackingData(S32UpdateTrackingDataList update) {
+        for (short id : update.getRemoved()) {
+            this.trackingData.remove(id);
+        }
+
+        for (S32UpdateTrackingDataList.AddedEntry added : update.getAdded()) {
+            TrackingSavedData.DataEntry entry = new TrackingSavedData.DataEntry(added.getUuid(), update.decodePosition(added.getX(), added.getY(), added.getZ()));
+            entry.getInformation().addAll(added.getInformation());
+            this.trackingData.put(added.getId(), entry);
+        }
+
+        for (S32UpdateTrackingDataList.ChangedEntry changed : update.getChanged()) {
+            TrackingSavedData.DataEntry old = this.trackingData.get(changed.getId());
+            if(old == null) {
+                continue;
+            }
+            Vec3d position = changed.isPositionChanged() ? update.decodePosition(changed.getX(), changed.getY(), changed.getZ()) : old.getPosition();
+            TrackingSavedData.DataEntry entry = new TrackingSavedData.DataEntry(old.getUuid(), position);
+            List<TrackingDataInformation> information = entry.getInformation();
+            information.addAll(old.getInformation().subList(0, Math.min(old.getInformation().size(), changed.getInformationSize())));
+
+            int changedIndex = 0;
+            for (int i = 0; i < changed.getInformationSize(); i++) {
+                if((changed.getDirtyMask() & (1 << i)) != 0) {
+                    TrackingDataInformation info = changed.getInformation().get(changedIndex++);
+                    if(i < information.size()) {
+                        information.set(i, info);
+                    } else {
+                        information.add(info);
+                    }
+                }
+            }
+            this.trackingData.put(changed.getId(), entry);
+        }
+
+        this.selected = this.trackingData.values().stream().filter(d -> this.selected != null && d.getUuid().equals(this.selected.getUuid())).findAny().orElse(null);
         if(this.selected != null) {
             Vec2f point = this.getPoint(this.selected);
             this.translateWithZoom(matrix4f -> matrix4f.m03 = -point.x + this.xSize / 2);
@@ -209,9 +266,99 @@ public class TrackingTabletScreen extends TabletScreen {
         }
     }
 
-    public void setRGB(int startX, int startZ, int width, int height, int[] setIntoArray) {
-        GlStateManager.bindTexture(this.textureID);
-        TextureUtil.uploadTextureMipmap(new int[][]{setIntoArray}, width, height, startX - this.startX, startZ - this.startZ, false, false);
+    /**
+     * Decodes the encoded tile straight into the upload buffer, and uploads it to the map texture.
+     * Tiles with a scale above 1 are overview tiles, and each pixel is stretched over {@code scale x scale} texels.
+     * @see S24TrackingTabletUpdateChunk#decodeTile(ByteBuf, IntBuffer, int)
+     */
+    public void setRGB(int startX, int startZ, int width, int height, int scale, ByteBuf encoded) {
+        int pixels = width * height;
+        int offsetX = startX - this.startX;
+        int offsetZ = startZ - this.startZ;
+
+        if(scale == 1) {
+            this.uploadBuffer = ensureCapacity(this.uploadBuffer, pixels);
+            S24TrackingTabletUpdateChunk.decodeTile(encoded, this.uploadBuffer, pixels);
+            this.upload(offsetX, offsetZ, width, height);
+            return;
+        }
+
+        this.overviewBuffer = ensureCapacity(this.overviewBuffer, pixels);
+        S24TrackingTabletUpdateChunk.decodeTile(encoded, this.overviewBuffer, pixels);
+
+        int uploadWidth = Math.min(width * scale, this.textureWidth - offsetX);
+        int uploadHeight = Math.min(height * scale, this.textureHeight - offsetZ);
+        if(uploadWidth <= 0 || uploadHeight <= 0) {
+            return;
+        }
+        this.uploadBuffer = ensureCapacity(this.uploadBuffer, uploadWidth * uploadHeight);
+        for (int z = 0; z < uploadHeight; z++) {
+            for (int x = 0; x < uploadWidth; x++) {
+                this.uploadBuffer.put(this.overviewBuffer.get(x / scale + (z / scale) * width));
+            }
+        }
+        this.upload(offsetX, offsetZ, uploadWidth, uploadHeight);
+    }
+
+    private void upload(int x, int y, int width, int height) {
+        this.uploadBuffer.flip();
+        if(this.textureID != -1) {
+            GlStateManager.bindTexture(this.textureID);
+            GlStateManager.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, x, y, width, height, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, this.uploadBuffer);
+        }
+    }
+
+    //Returns a cleared buffer with at least the capacity
+    private static IntBuffer ensureCapacity(IntBuffer buffer, int capacity) {
+        if(buffer.capacity() < capacity) {
+            return BufferUtils.createIntBuffer(capacity);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Works out the area of the map visible on the screen, and tells the server if it's changed.
+     * When zoomed out too far for full resolution to be visible, an empty area is sent, and only the overview is used.
+     */
+    private void updateViewport() {
+        long time = Minecraft.getSystemTime();
+        if(time - this.lastViewportUpdate < VIEWPORT_UPDATE_INTERVAL) {
+            return;
+        }
+        this.lastViewportUpdate = time;
+
+        Matrix4f inverse = new Matrix4f(this.transformation);
+        inverse.invert();
+        Point3f min = this.getMapPoint(0, 0, inverse);
+        Point3f max = this.getMapPoint(this.xSize, this.ySize, inverse);
+
+        int minX = this.startX + MathHelper.floor(Math.min(min.x, max.x) / this.xSize * this.textureWidth);
+        int maxX = this.startX + MathHelper.ceil(Math.max(min.x, max.x) / this.xSize * this.textureWidth);
+        int minZ = this.startZ + MathHelper.floor(Math.min(min.y, max.y) / this.xSize * this.textureHeight);
+        int maxZ = this.startZ + MathHelper.ceil(Math.max(min.y, max.y) / this.xSize * this.textureHeight);
+
+        if((maxX - minX) / (float) this.xSize > TrackingTabletIterator.FULL_RESOLUTION_BLOCKS_PER_PIXEL) {
+            minX = minZ = 0;
+            maxX = maxZ = -1;
+        }
+
+        if(minX != this.viewport[0] || minZ != this.viewport[1] || maxX != this.viewport[2] || maxZ != this.viewport[3]) {
+            this.viewport[0] = minX;
+            this.viewport[1] = minZ;
+            this.viewport[2] = maxX;
+            this.viewport[3] = maxZ;
+            ProjectNublar.NETWORK.sendToServer(new C42TrackingTabletViewport(minX, minZ, maxX, maxZ));
+        }
+    }
+
+    //The inverse of getTransformedPoint
+    private Point3f getMapPoint(float x, float y, Matrix4f inverse) {
+        Point3f point = new Point3f(x - this.xSize / 2, y - this.ySize / 2, 0);
+        inverse.transform(point);
+        point.x += this.xSize / 2;
+        point.y += this.xSize / 2;
+        return point;
     }
 
     @Override
@@ -0,0 +1,377 @@
+package net.dumbcode.projectnublar.client.render;
+
+import com.google.common.collect.Sets;
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.block.entity.ConnectableBlockEntity;
+import net.dumbcode.projectnublar.server.utils.BlockChangeListener;
+import net.dumbcode.projectnublar.server.utils.Connection;
+import net.dumbcode.projectnublar.server.utils.ConnectionGeometry;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.BufferBuilder;
+import net.minecraft.client.renderer.GlStateManager;
+import net.minecraft.client.renderer.OpenGlHelper;
+import net.minecraft.client.renderer.RenderHelper;
+import net.minecraft.client.renderer.Tessellator;
+import net.minecraft.client.renderer.VertexBufferUploader;
+import net.minecraft.client.renderer.WorldVertexBufferUploader;
+import net.minecraft.client.renderer.culling.Frustum;
+import net.minecraft.client.renderer.culling.ICamera;
+import net.minecraft.client.renderer.texture.TextureMap;
+import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
+import net.minecraft.client.renderer.vertex.VertexBuffer;
+import net.minecraft.entity.Entity;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.ResourceLocation;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.client.MinecraftForgeClient;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+import net.minecraftforge.fml.relauncher.Side;
+import org.lwjgl.opengl.GL11;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders the cables of every fence connection, batched into one buffer per 16x16x16 section of the world. <br>
+ * A section's buffer is only rebuilt when a connectable block entity in or next to it changes, or the light in it changes.
+ * Each frame, the sections outside of the render distance or the view frustum are skipped, and the rest are drawn with one call each.
+ * This means the cost of a frame doesn't grow with the length of the fences, only with the number of visible sections. <br>
+ * The sections are drawn from the first fence block entity rendered each frame, so they're drawn in the solid block entity pass,
+ * with the world's fog, and before the translucent blocks, which would otherwise be drawn over.
+ */
+@Mod.EventBusSubscriber(value = Side.CLIENT, modid = ProjectNublar.MODID)
+public class FenceSectionRenderer {
+
+    private static final ResourceLocation TEXTURE = new ResourceLocation(ProjectNublar.MODID, "textures/blocks/electric_fence.png");
+
+    private static final Map<Long, Section> SECTIONS = new HashMap<>();
+
+    private static boolean renderedThisFrame;
+
+    /**
+     * Called when a connectable block entity on the client is loaded, or its connections change.
+     */
+    public static void onBlockEntityChanged(TileEntity blockEntity) {
+        BlockPos pos = blockEntity.getPos();
+        SECTIONS.computeIfAbsent(getKey(pos), k -> new Section(pos)).blockEntities.add(blockEntity);
+        markDirty(pos);
+    }
+
+    /**
+     * Called when a connectable block entity on the client is unloaded or removed.
+     */
+    public static void onBlockEntityRemoved(TileEntity blockEntity) {
+        BlockPos pos = blockEntity.getPos();
+        long key = getKey(pos);
+        Section section = SECTIONS.get(key);
+        if(section != null && section.blockEntities.remove(blockEntity) && section.blockEntities.isEmpty()) {
+            section.delete();
+            SECTIONS.remove(key);
+        }
+        markDirty(pos);
+    }
+
+    public static void markAllDirty() {
+        for (Section section : SECTIONS.values()) {
+            section.dirty = true;
+        }
+    }
+
+    //Connections are drawn differently depending on the blocks either side of them, so the sections around the position are marked too
+    private static void markDirty(BlockPos pos) {
+        if(SECTIONS.isEmpty()) {
+            return;
+        }
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    Section section = SECTIONS.get(getKey(pos.add(x, y, z)));
+                    if(section != null) {
+                        section.dirty = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long getKey(BlockPos pos) {
+        return new BlockPos(pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4).toLong();
+    }
+
+    @SubscribeEvent
+    public static void onRenderTick(TickEvent.RenderTickEvent event) {
+        if(event.phase == TickEvent.Phase.START) {
+            renderedThisFrame = false;
+        }
+    }
+
+    /**
+     * Called by the fence block entity renderers. The first call in the solid pass of each frame draws all the visible sections.
+     */
+    public static void renderFromBlockEntity(float partialTicks) {
+        if(renderedThisFrame || MinecraftForgeClient.getRenderPass() != 0) {
+            return;
+        }
+        renderedThisFrame = true;
+        renderSections(partialTicks);
+    }
+
+    private static void renderSections(float partialTicks) {
+        Minecraft mc = Minecraft.getMinecraft();
+        Entity view = mc.getRenderViewEntity();
+        if(SECTIONS.isEmpty() || mc.world == null || view == null) {
+            return;
+        }
+        double camX = view.lastTickPosX + (view.posX - view.lastTickPosX) * partialTicks;
+        double camY = view.lastTickPosY + (view.posY - view.lastTickPosY) * partialTicks;
+        double camZ = view.lastTickPosZ + (view.posZ - view.lastTickPosZ) * partialTicks;
+        ICamera camera = new Frustum();
+        camera.setPosition(camX, camY, camZ);
+        double maxDistance = (mc.gameSettings.renderDistanceChunks + 1) * 16D;
+
+        //The lightmap and fog are already set up for the block entity pass
+        mc.getTextureManager().bindTexture(TEXTURE);
+        RenderHelper.disableStandardItemLighting();
+        GlStateManager.disableAlpha();
+        GlStateManager.disableBlend();
+        GlStateManager.disableCull();
+        GlStateManager.color(1F, 1F, 1F, 1F);
+        boolean vbo = OpenGlHelper.useVbo();
+        if(vbo) {
+            enableClientStates();
+        }
+
+        for (Section section : SECTIONS.values()) {
+            BlockPos origin = section.origin;
+            double dx = origin.getX() + 8 - camX;
+            double dz = origin.getZ() + 8 - camZ;
+            if(dx*dx + dz*dz > maxDistance*maxDistance || !camera.isBoundingBoxInFrustum(section.bounds)) {
+                continue;
+            }
+            if(section.dirty) {
+                section.rebuild(mc.world, vbo);
+            }
+            if(section.vertexCount == 0) {
+                continue;
+            }
+            GlStateManager.pushMatrix();
+            GlStateManager.translate(origin.getX() - camX, origin.getY() - camY, origin.getZ() - camZ);
+            if(vbo) {
+                section.buffer.bindBuffer();
+                setupArrayPointers();
+                section.buffer.drawArrays(GL11.GL_QUADS);
+                section.buffer.unbindBuffer();
+            } else {
+                GlStateManager.callList(section.list);
+            }
+            GlStateManager.popMatrix();
+        }
+
+        if(vbo) {
+            disableClientStates();
+        }
+        GlStateManager.resetColor();
+        GlStateManager.enableCull();
+        GlStateManager.enableAlpha();
+        RenderHelper.enableStandardItemLighting();
+        mc.getTextureManager().bindTexture(TextureMap.LOCATION_BLOCKS_TEXTURE);
+    }
+
+    @SubscribeEvent
+    public static void onWorldLoad(WorldEvent.Load event) {
+        World world = event.getWorld();
+        if(world.isRemote) {
+            world.addEventListener(new BlockChangeListener((w, pos, oldState, newState) -> markDirty(pos)) {
+                @Override
+                public void notifyLightSet(BlockPos pos) {
+                    markDirty(pos);
+                }
+            });
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if(event.getWorld().isRemote) {
+            for (Section section : SECTIONS.values()) {
+                section.delete();
+            }
+            SECTIONS.clear();
+        }
+    }
+
+    private static void enableClientStates() {
+        GlStateManager.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.defaultTexUnit);
+        GlStateManager.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.lightmapTexUnit);
+        GlStateManager.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.defaultTexUnit);
+        GlStateManager.glEnableClientState(GL11.GL_COLOR_ARRAY);
+    }
+
+    //The pointers for the vertex format DefaultVertexFormats.BLOCK
+    private static void setupArrayPointers() {
+        GlStateManager.glVertexPointer(3, GL11.GL_FLOAT, 28, 0);
+        GlStateManager.glColorPointer(4, GL11.GL_UNSIGNED_BYTE, 28, 12);
+        GlStateManager.glTexCoordPointer(2, GL11.GL_FLOAT, 28, 16);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.lightmapTexUnit);
+        GlStateManager.glTexCoordPointer(2, GL11.GL_SHORT, 28, 24);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.defaultTexUnit);
+    }
+
+    private static void disableClientStates() {
+        GlStateManager.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.defaultTexUnit);
+        GlStateManager.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.lightmapTexUnit);
+        GlStateManager.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+        OpenGlHelper.setClientActiveTexture(OpenGlHelper.defaultTexUnit);
+        GlStateManager.glDisableClientState(GL11.GL_COLOR_ARRAY);
+    }
+
+    private static void putConnection(BufferBuilder buffer, World world, Connection connection, BlockPos origin) {
+        if(connection.isBroken()) {
+            return;
+        }
+        ConnectionGeometry.CableCache cache = connection.getCache();
+        BlockPos pos = connection.getPosition();
+        buffer.setTranslation(-origin.getX(), connection.getOffset() + pos.getY() - origin.getY(), -origin.getZ());
+        int light = world.getCombinedLight(pos, 0);
+
+        boolean pb = connection.brokenSide(world, false);
+        boolean nb = connection.brokenSide(world, true);
+        if(nb) {
+            putCuboid(buffer, cache.getNextRotated(), light);
+            if(!pb) {
+                putCuboid(buffer, cache.getNextFixed(), light);
+            }
+        }
+        if(pb) {
+            putCuboid(buffer, cache.getPrevRotated(), light);
+            if(!nb) {
+                putCuboid(buffer, cache.getPrevFixed(), light);
+            }
+        }
+        if(!pb && !nb) {
+            putCuboid(buffer, cache.getData(), light);
+        }
+    }
+
+    //The corners of each face, as indices into the top then bottom corners of the cuboid
+    private static final int[][] FACES = {
+            {0, 1, 2, 3}, {7, 6, 5, 4}, {4, 5, 1, 0}, {3, 2, 6, 7}, {0, 3, 7, 4}, {1, 5, 6, 2}
+    };
+
+    private static void putCuboid(BufferBuilder buffer, ConnectionGeometry.Cuboid cuboid, int light) {
+        double[] p = cuboid.getPoints();
+        double[] uvs = cuboid.getUvs();
+        double cx = 0, cy = 0, cz = 0;
+        for (int i = 0; i < 8; i++) {
+            cx += p[i*3] / 8D;
+            cy += p[i*3+1] / 8D;
+            cz += p[i*3+2] / 8D;
+        }
+        int sky = light >> 16 & 0xFFFF;
+        int block = light & 0xFFFF;
+        for (int f = 0; f < FACES.length; f++) {
+            int[] face = FACES[f];
+            double width = f < 4 ? cuboid.getXLength() : cuboid.getZLength();
+            double height = f < 2 ? cuboid.getZLength() : cuboid.getYLength();
+            double u = uvs[f*2];
+            double v = uvs[f*2+1];
+
+            int a = face[0]*3, b = face[1]*3, c = face[2]*3;
+            double nx = (p[b+1]-p[a+1])*(p[c+2]-p[a+2]) - (p[b+2]-p[a+2])*(p[c+1]-p[a+1]);
+            double ny = (p[b+2]-p[a+2])*(p[c]-p[a]) - (p[b]-p[a])*(p[c+2]-p[a+2]);
+            double nz = (p[b]-p[a])*(p[c+1]-p[a+1]) - (p[b+1]-p[a+1])*(p[c]-p[a]);
+            double length = Math.sqrt(nx*nx + ny*ny + nz*nz);
+            if(length != 0) {
+                nx /= length;
+                ny /= length;
+                nz /= length;
+            }
+            //Point the normal out of the cuboid
+            if(nx*(p[a]-cx) + ny*(p[a+1]-cy) + nz*(p[a+2]-cz) < 0) {
+                nx = -nx;
+                ny = -ny;
+                nz = -nz;
+            }
+            //The same directional shading as the world's blocks
+            float shade = (float) (nx*nx*0.6F + nz*nz*0.8F + ny*ny*(ny > 0 ? 1F : 0.5F));
+
+            for (int i = 0; i < 4; i++) {
+                int index = face[i]*3;
+                buffer.pos(p[index], p[index+1], p[index+2])
+                        .color(shade, shade, shade, 1F)
+                        .tex(u + (i == 1 || i == 2 ? width : 0), v + (i >= 2 ? height : 0))
+                        .lightmap(sky, block)
+                        .endVertex();
+            }
+        }
+    }
+
+    private static class Section {
+        private final BlockPos origin;
+        private final AxisAlignedBB bounds;
+        private final Set<TileEntity> blockEntities = Sets.newHashSet();
+        private boolean dirty = true;
+        private VertexBuffer buffer;
+        private int list = -1;
+        private int vertexCount;
+
+        private Section(BlockPos pos) {
+            this.origin = new BlockPos(pos.getX() >> 4 << 4, pos.getY() >> 4 << 4, pos.getZ() >> 4 << 4);
+            //Grown by a block, as broken cables can stick out of their block
+            this.bounds = new AxisAlignedBB(this.origin, this.origin.add(16, 16, 16)).grow(1);
+        }
+
+        private void rebuild(World world, boolean vbo) {
+            this.dirty = false;
+            BufferBuilder builder = Tessellator.getInstance().getBuffer();
+            builder.begin(GL11.GL_QUADS, DefaultVertexFormats.BLOCK);
+            for (TileEntity blockEntity : this.blockEntities) {
+                if(blockEntity instanceof ConnectableBlockEntity) {
+                    for (Connection connection : ((ConnectableBlockEntity) blockEntity).getConnections()) {
+                        putConnection(builder, world, connection, this.origin);
+                    }
+                }
+            }
+            builder.setTranslation(0, 0, 0);
+            builder.finishDrawing();
+            this.vertexCount = builder.getVertexCount();
+            if(vbo) {
+                if(this.buffer == null) {
+                    this.buffer = new VertexBuffer(DefaultVertexFormats.BLOCK);
+                }
+                VertexBufferUploader uploader = new VertexBufferUploader();
+                uploader.setVertexBuffer(this.buffer);
+                uploader.draw(builder);
+            } else {
+                if(this.list == -1) {
+                    this.list = GlStateManager.glGenLists(1);
+                }
+                GlStateManager.glNewList(this.list, GL11.GL_COMPILE);
+                new WorldVertexBufferUploader().draw(builder);
+                GlStateManager.glEndList();
+            }
+        }
+
+        private void delete() {
+            if(this.buffer != null) {
+                this.buffer.deleteGlBuffers();
+                this.buffer = null;
+            }
+            if(this.list != -1) {
+                GlStateManager.glDeleteLists(this.list, 1);
+                this.list = -1;
+            }
+        }
+    }
+}
@@ -1,18 +1,17 @@
 package net.dumbcode.projectnublar.client.render.blockentity;
 
-import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.client.render.FenceSectionRenderer;
 import net.dumbcode.projectnublar.server.block.entity.BlockEntityElectricFencePole;
 import net.dumbcode.projectnublar.server.utils.Connection;
-import net.minecraft.client.Minecraft;
 import net.minecraft.client.renderer.GlStateManager;
 import net.minecraft.client.renderer.RenderHelper;
 import net.minecraft.client.renderer.tileentity.TileEntitySpecialRenderer;
-import net.minecraft.util.ResourceLocation;
 
 public class BlockEntityElectricFencePoleRenderer extends TileEntitySpecialRenderer<BlockEntityElectricFencePole> {
 
     @Override
     public void render(BlockEntityElectricFencePole te, double x, double y, double z, float partialTicks, int destroyStage, float alpha) {
+        FenceSectionRenderer.renderFromBlockEntity(partialTicks);
         GlStateManager.pushMatrix();
 //        RenderHelper.enableStandardItemLighting(); //TODO: Get rid of this?
         GlStateManager.translate(x, y, z);
@@ -21,7 +20,6 @@ public class BlockEntityElectricFencePoleRenderer extends TileEntitySpecialRende
         GlStateManager.enableLighting();
 
         GlStateManager.color(1f, 1f, 1f, 1f);
-        Minecraft.getMinecraft().renderEngine.bindTexture(new ResourceLocation(ProjectNublar.MODID, "textures/blocks/electric_fence.png"));
         for (Connection connection : te.getConnections()) {
             BlockEntityElectricFenceRenderer.renderConnection(connection);
         }
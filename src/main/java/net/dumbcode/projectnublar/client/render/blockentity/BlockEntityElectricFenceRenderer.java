@@ -1,6 +1,7 @@
 package net.dumbcode.projectnublar.client.render.blockentity;
 
 import net.dumbcode.dumblibrary.server.utils.MathUtils;
+import net.dumbcode.projectnublar.client.render.FenceSectionRenderer;
 import net.dumbcode.projectnublar.server.ProjectNublar;
 import net.dumbcode.projectnublar.server.block.entity.BlockEntityElectricFence;
 import net.dumbcode.projectnublar.server.utils.Connection;
@@ -11,18 +12,17 @@ import net.minecraft.client.renderer.Tessellator;
 import net.minecraft.client.renderer.tileentity.TileEntitySpecialRenderer;
 import net.minecraft.client.renderer.vertex.DefaultVertexFormats;
 import net.minecraft.util.ResourceLocation;
-import net.minecraft.world.World;
 import org.lwjgl.opengl.GL11;
 
 public class BlockEntityElectricFenceRenderer extends TileEntitySpecialRenderer<BlockEntityElectricFence> {
     @Override
     public void render(BlockEntityElectricFence te, double x, double y, double z, float partialTicks, int destroyStage, float alpha) {
+        FenceSectionRenderer.renderFromBlockEntity(partialTicks);
         GlStateManager.pushMatrix();
         GlStateManager.translate(x, y, z);
         GlStateManager.disableAlpha();
         GlStateManager.disableBlend();
         GlStateManager.color(1f,1f,1f,1f);
-        Minecraft.getMinecraft().renderEngine.bindTexture(new ResourceLocation(ProjectNublar.MODID, "textures/blocks/electric_fence.png"));
         for (Connection connection : te.getConnections()) {
             renderConnection(connection);
         }
@@ -73,31 +73,12 @@ public class BlockEntityElectricFenceRenderer extends TileEntitySpecialRenderer<
         GlStateManager.bindTexture(currentBound);
     }
 
+    /**
+     * Renders the parts of the connection that aren't batched by {@link FenceSectionRenderer}.
+     */
     public static void renderConnection(Connection connection) {
-        World world = Minecraft.getMinecraft().world;
-        if(!connection.isBroken()) {
-            if (connection.isSign()) {
-                renderVoltSign(connection);
-            }
-            Connection.VboCache cache = connection.getCache();
-
-            boolean pb = connection.brokenSide(world, false);
-            boolean nb = connection.brokenSide(world, true);
-            if(nb) {
-                GlStateManager.callList(cache.getNextRotated());
-                if(!pb) {
-                    GlStateManager.callList(cache.getNextFixed());
-                }
-            }
-            if(pb) {
-                GlStateManager.callList(cache.getPrevRotated());
-                if(!nb) {
-                    GlStateManager.callList(cache.getPrevFixed());
-                }
-            }
-            if(!pb && !nb) {
-                GlStateManager.callList(cache.getData());
-            }
+        if(!connection.isBroken() && connection.isSign()) {
+            renderVoltSign(connection);
         }
     }
 
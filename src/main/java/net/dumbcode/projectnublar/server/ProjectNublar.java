@@ -15,6 +15,7 @@ import net.dumbcode.projectnublar.server.dinosaur.Dinosaur;
 import net.dumbcode.projectnublar.server.dinosaur.DinosaurHandler;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.DataSerializerHandler;
+import net.dumbcode.projectnublar.server.entity.system.EntitySystemScheduler;
 import net.dumbcode.projectnublar.server.entity.system.impl.*;
 import net.dumbcode.projectnublar.server.gui.GuiHandler;
 import net.dumbcode.projectnublar.server.item.ItemDinosaurMeat;
@@ -185,12 +186,15 @@ public class ProjectNublar {
 
     @SubscribeEvent
     public static void register(RegisterSystemsEvent event) {
-        event.registerSystem(new AgeSystem());
-        event.registerSystem(new MultipartSystem());
-        event.registerSystem(new DinosaurEggLayingSystem());
-        event.registerSystem(new TrackingSystem());
-        event.registerSystem(new MetabolismSystem());
-        event.registerSystem(new MoodSystem());
+        //Ordered so the systems that can run together are next to each other. See EntitySystemScheduler
+        event.registerSystem(new EntitySystemScheduler(
+            new TrackingSystem(),
+            new AgeSystem(),
+            new MetabolismSystem(),
+            new MultipartSystem(),
+            new DinosaurEggLayingSystem(),
+            new MoodSystem()
+        ));
         event.registerSystem(new DefenseSystem());
     }
 
@@ -251,7 +255,7 @@ public class ProjectNublar {
         NETWORK.registerMessage(new S29OpenTabletModule.Handler(), S29OpenTabletModule.class, 29, Side.CLIENT);
         NETWORK.registerMessage(new C30TrackingTabletEntryClicked.Handler(), C30TrackingTabletEntryClicked.class, 30, Side.SERVER);
         NETWORK.registerMessage(new C31TrackingBeaconDataChanged.Handler(), C31TrackingBeaconDataChanged.class, 31, Side.SERVER);
-        NETWORK.registerMessage(new S32SetTrackingDataList.Handler(), S32SetTrackingDataList.class, 32, Side.CLIENT);
+        NETWORK.registerMessage(new S32UpdateTrackingDataList.Handler(), S32UpdateTrackingDataList.class, 32, Side.CLIENT);
         NETWORK.registerMessage(new C33SetTabletBackground.Handler(), C33SetTabletBackground.class, 33, Side.SERVER);
         NETWORK.registerMessage(new C34UploadImage.Handler(), C34UploadImage.class, 34, Side.SERVER);
         NETWORK.registerMessage(new C35RequestAllIcons.Handler(), C35RequestAllIcons.class, 35, Side.SERVER);
@@ -261,5 +265,6 @@ public class ProjectNublar {
         NETWORK.registerMessage(new S39SyncBackgroundIcon.Handler(), S39SyncBackgroundIcon.class, 39, Side.CLIENT);
         NETWORK.registerMessage(new C40RequestBackgroundIcon.Handler(), C40RequestBackgroundIcon.class, 40, Side.SERVER);
         NETWORK.registerMessage(new C41PlaceIncubatorEgg.Handler(), C41PlaceIncubatorEgg.class, 41, Side.SERVER);
+        NETWORK.registerMessage(new C42TrackingTabletViewport.Handler(), C42TrackingTabletViewport.class, 42, Side.SERVER);
     }
 }
@@ -0,0 +1,82 @@
+package net.dumbcode.projectnublar.server;
+
+import net.dumbcode.projectnublar.server.profiler.ProjectNublarProfiler;
+import net.minecraftforge.common.config.Config;
+import net.minecraftforge.common.config.ConfigManager;
+import net.minecraftforge.fml.client.event.ConfigChangedEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+@Config(modid = ProjectNublar.MODID)
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class ProjectNublarConfig {
+
+    @Config.Name("tracking")
+    @Config.Comment("Settings for the dinosaur tracking system and the tracking tablet")
+    public static final Tracking TRACKING = new Tracking();
+
+    public static class Tracking {
+        @Config.Comment("How often, in ticks, each tracked entity refreshes its tracking entry")
+        @Config.RangeInt(min = 1, max = 200)
+        public int updateInterval = 5;
+
+        @Config.Comment("How far, in blocks, a tracked entity needs to move before its saved position is updated")
+        @Config.RangeDouble(min = 0D, max = 16D)
+        public double positionThreshold = 0.5D;
+
+        @Config.Comment("How long, in milliseconds, the server can spend each tick reading the world for all open tracking tablet maps combined")
+        @Config.RangeInt(min = 1, max = 50)
+        public int mapBudgetMillis = 10;
+
+        @Config.Comment("How many 16x16 tracking tablet map tiles are kept in memory per dimension. Tiles past this are written to the world folder")
+        @Config.RangeInt(min = 64)
+        public int tileCacheSize = 4096;
+    }
+
+    @Config.Name("systems")
+    @Config.Comment("Settings for how the entity systems are run")
+    public static final Systems SYSTEMS = new Systems();
+
+    public static class Systems {
+        @Config.Comment("If true, entity systems that don't conflict with each other are updated in parallel, off the server thread")
+        public boolean parallel = false;
+
+        @Config.Comment("How many entities of a system are updated by each parallel task")
+        @Config.RangeInt(min = 1)
+        public int parallelChunkSize = 64;
+    }
+
+    @Config.Name("pathfinding")
+    @Config.Comment("Settings for the shared path finding of the dinosaur AIs")
+    public static final Pathfinding PATHFINDING = new Pathfinding();
+
+    public static class Pathfinding {
+        @Config.Comment("How long, in milliseconds, each world can spend finding paths for dinosaur AIs each tick. Requests past this wait for the next tick")
+        @Config.RangeInt(min = 1, max = 50)
+        public int budgetMillis = 5;
+
+        @Config.Comment("How long, in ticks, a found path is reused for other entities starting near it and going to the same place")
+        @Config.RangeInt(min = 0, max = 1200)
+        public int cacheTicks = 40;
+    }
+
+    @Config.Name("profiler")
+    @Config.Comment("Settings for the profiler, started with /projectnublar profile start")
+    public static final Profiler PROFILER = new Profiler();
+
+    public static class Profiler {
+        @Config.Comment("How often, in seconds, the running profiler is dumped to the world folder. 0 to only dump from the command")
+        @Config.RangeInt(min = 0)
+        public int dumpInterval = 0;
+
+        @Config.Comment("The format of the periodic profiler dumps")
+        public ProjectNublarProfiler.DumpFormat dumpFormat = ProjectNublarProfiler.DumpFormat.CSV;
+    }
+
+    @SubscribeEvent
+    public static void onConfigChanged(ConfigChangedEvent.OnConfigChangedEvent event) {
+        if(ProjectNublar.MODID.equals(event.getModID())) {
+            ConfigManager.sync(ProjectNublar.MODID, Config.Type.INSTANCE);
+        }
+    }
+}
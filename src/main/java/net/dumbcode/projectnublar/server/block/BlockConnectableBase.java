@@ -7,8 +7,10 @@ import lombok.Value;
 import net.dumbcode.dumblibrary.client.RenderUtils;
 import net.dumbcode.projectnublar.server.ProjectNublar;
 import net.dumbcode.projectnublar.server.block.entity.ConnectableBlockEntity;
+import net.dumbcode.projectnublar.server.block.entity.FenceNetworkManager;
 import net.dumbcode.projectnublar.server.entity.DamageSourceHandler;
 import net.dumbcode.projectnublar.server.particles.ParticleType;
+import net.dumbcode.projectnublar.server.utils.BlockRun;
 import net.dumbcode.projectnublar.server.utils.Connection;
 import net.dumbcode.projectnublar.server.utils.LineUtils;
 import net.dumbcode.projectnublar.server.utils.RotatedRayBox;
@@ -45,6 +47,7 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 
 import javax.annotation.Nullable;
 import javax.vecmath.Vector3d;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -68,7 +71,7 @@ public class BlockConnectableBase extends Block {
         if(worldIn.isRemote ? collidableClient : collidableServer) {
             TileEntity te = worldIn.getTileEntity(pos);
             if(te instanceof ConnectableBlockEntity) {
-                for (AxisAlignedBB bb : this.createBoundingBox(((ConnectableBlockEntity) te).getConnections(), pos)) {
+                for (AxisAlignedBB bb : this.getBoundingBoxes((ConnectableBlockEntity) te, pos)) {
                     addCollisionBoxToList(pos, entityBox, collidingBoxes, bb);
                 }
                 return;
@@ -89,7 +92,7 @@ public class BlockConnectableBase extends Block {
         boolean intersect = false;
         if (te instanceof ConnectableBlockEntity) {
             AxisAlignedBB enityxzbox = entityBox.grow(0.025D, 0, 0.025D);
-            for (ConnectionAxisAlignedBB boxIn : this.createBoundingBox(((ConnectableBlockEntity) te).getConnections(), pos)) {
+            for (ConnectionAxisAlignedBB boxIn : this.getBoundingBoxes((ConnectableBlockEntity) te, pos)) {
                 AxisAlignedBB box = boxIn.offset(pos);
                 if (enityxzbox.intersects(box) && (!entityBox.grow(0, 0.025D, 0).intersects(box) || !entityBox.grow(0, -0.025D, 0).intersects(box))) {
                     intersect = true;
@@ -111,7 +114,7 @@ public class BlockConnectableBase extends Block {
         }
         if(te instanceof ConnectableBlockEntity) {
             entityBox = entityBox.grow(0.1D);
-            for (ConnectionAxisAlignedBB box : this.createBoundingBox(((ConnectableBlockEntity) te).getConnections(), pos)) {
+            for (ConnectionAxisAlignedBB box : this.getBoundingBoxes((ConnectableBlockEntity) te, pos)) {
                 if (entityBox.intersects(box.offset(pos)) && box.getConnection().isPowered(worldIn)) {
 
                     Vector3d vec = new Vector3d((entityBox.maxX+entityBox.minX)/2, (entityBox.maxY+entityBox.minY)/2, (entityBox.maxZ+entityBox.minZ)/2);
@@ -193,34 +196,20 @@ public class BlockConnectableBase extends Block {
                     boolean pb = connection.brokenSide(world, false);
                     boolean nb = connection.brokenSide(world, true);
 
+                    //The outlines are cached on the ray target the hit came from
+                    RayTarget rayTarget = chunk.getTarget();
                     if(nb || pb) {
-                        Vec3d center = chunk.getAabb().getCenter();
-                        double ycent = (chunk.getAabb().maxY - chunk.getAabb().minY) / 2;
-                        double zcent = (chunk.getAabb().maxZ - chunk.getAabb().minZ) / 2;
-
                         if(nb) {
-                            Vector3d[] bases = connection.getRayBox().points(new AxisAlignedBB(center.x, center.y - ycent, center.z - zcent, center.x, center.y + ycent, center.z + zcent));
-                            for (int i = 0; i < 4; i++) {
-                                bases[i + 4].add(connection.getNextCache().getPoint());
-                            }
-                            RenderUtils.renderBoxLines(bases, EnumFacing.SOUTH);
+                            RenderUtils.renderBoxLines(rayTarget.getBrokenOutline(true), EnumFacing.SOUTH);
                         }
                         if(pb) {
-                            Vector3d[] bases = connection.getRayBox().points(new AxisAlignedBB(center.x, center.y - ycent, center.z - zcent, center.x, center.y + ycent, center.z + zcent));
-                            for (int i = 0; i < 4; i++) {
-                                bases[i + 4].add(connection.getPrevCache().getPoint());
-                            }
-                            RenderUtils.renderBoxLines(bases, EnumFacing.SOUTH);
+                            RenderUtils.renderBoxLines(rayTarget.getBrokenOutline(false), EnumFacing.SOUTH);
                         }
                         if(nb != pb) {
-                            if(nb) {
-                                RenderUtils.renderBoxLines(connection.getRayBox().points(new AxisAlignedBB(chunk.getAabb().minX, chunk.getAabb().minY, chunk.getAabb().minZ, center.x, center.y + ycent, center.z + zcent)), EnumFacing.NORTH);
-                            } else {
-                                RenderUtils.renderBoxLines(connection.getRayBox().points(new AxisAlignedBB(center.x, center.y - ycent, center.z - zcent, chunk.getAabb().maxX, chunk.getAabb().maxY, chunk.getAabb().maxZ)), EnumFacing.SOUTH);
-                            }
+                            RenderUtils.renderBoxLines(rayTarget.getHalfOutline(nb), nb ? EnumFacing.NORTH : EnumFacing.SOUTH);
                         }
                     } else {
-                        RenderUtils.renderBoxLines(connection.getRayBox().points());
+                        RenderUtils.renderBoxLines(rayTarget.getOutline());
                     }
 
 
@@ -277,12 +266,20 @@ public class BlockConnectableBase extends Block {
     public RayTraceResult collisionRayTrace(IBlockState blockState, World worldIn, BlockPos pos, Vec3d start, Vec3d end) {
         double hitDist = Double.MAX_VALUE;
         RayTraceResult resultOut = null;
-        Set<BlockConnectableBase.ChunkedInfo> set = this.getOutlines(worldIn, pos);
-        if(set.isEmpty()) {
-            return this.rayTrace(pos, start, end, FULL_BLOCK_AABB);
-        }
-        for (BlockConnectableBase.ChunkedInfo chunk : set) {
-            Connection connection = chunk.getConnection();
+        TileEntity te = worldIn.getTileEntity(pos);
+        List<RayTarget> targets = te instanceof ConnectableBlockEntity ? this.getRayTargets((ConnectableBlockEntity) te) : Collections.emptyList();
+        boolean any = false;
+        for (RayTarget target : targets) {
+            Connection connection = target.getInfo().getConnection();
+            if(connection.isBroken()) {
+                continue;
+            }
+            any = true;
+            //Skip the exact tests, and the neighbour lookups for the broken sides, when the ray misses every box of the connection
+            if(!target.intersects(start, end)) {
+                continue;
+            }
+            BlockConnectableBase.ChunkedInfo chunk = target.getInfo();
             boolean pb = connection.brokenSide(worldIn, false);
             boolean nb = connection.brokenSide(worldIn, true);
 
@@ -314,32 +311,61 @@ public class BlockConnectableBase extends Block {
                     double dist = result.getDistance();
                     if(dist < hitDist) {
                         resultOut = new RayTraceResult(result.getResult().hitVec, result.getResult().sideHit, pos);
-                        resultOut.hitInfo = new BlockConnectableBase.HitChunk(chunk.getAabb(), chunk.getConnection(), result.getHitDir(), result);
+                        resultOut.hitInfo = new BlockConnectableBase.HitChunk(chunk.getAabb(), chunk.getConnection(), result.getHitDir(), result, target);
 
                         hitDist = dist;
                     }
                 }
             }
         }
+        if(!any) {
+            return this.rayTrace(pos, start, end, FULL_BLOCK_AABB);
+        }
         return resultOut;
     }
 
+    /**
+     * Gets the ray targets of the block entity's connections. The targets are cached on the block entity until its connections change.
+     */
+    public List<RayTarget> getRayTargets(ConnectableBlockEntity blockEntity) {
+        return blockEntity.getBoxCache().getRayTargets(blockEntity.getConnections(), () -> this.createRayTargets(blockEntity.getConnections()));
+    }
+
+    //Broken connections are kept, as connections are broken and fixed without the set changing. They're skipped when ray tracing instead.
+    public List<RayTarget> createRayTargets(Set<Connection> fenceConnections) {
+        List<RayTarget> out = Lists.newArrayList();
+        for (Connection connection : fenceConnections) {
+            double w = connection.getType().getCableWidth();
+            out.add(new RayTarget(new ChunkedInfo(new AxisAlignedBB(0,-w,-w, -connection.getFullLen(), w, w), connection),
+                    connection.getRayBox(),
+                    connection.getPrevCache().getFixedBox(), connection.getPrevCache().getRotatedBox(),
+                    connection.getNextCache().getFixedBox(), connection.getNextCache().getRotatedBox()
+            ));
+        }
+        return out;
+    }
+
 
     public Set<ChunkedInfo> getOutlines(World world, BlockPos pos) {
         Set<ChunkedInfo> set = Sets.newLinkedHashSet();
         TileEntity tileEntity = world.getTileEntity(pos);
         if(tileEntity instanceof ConnectableBlockEntity) {
-            for (Connection connection : ((ConnectableBlockEntity) tileEntity).getConnections()) {
-                if(!connection.isBroken()) {
-                    double w = connection.getType().getCableWidth();
-                    set.add(new ChunkedInfo(new AxisAlignedBB(0,-w,-w, -connection.getFullLen(), w, w), connection));
-
+            for (RayTarget target : this.getRayTargets((ConnectableBlockEntity) tileEntity)) {
+                if(!target.getInfo().getConnection().isBroken()) {
+                    set.add(target.getInfo());
                 }
             }
         }
         return set;
     }
 
+    /**
+     * Gets the collision boxes of the block entity's connections, relative to the position. The boxes are cached on the block entity until its connections change.
+     */
+    public List<ConnectionAxisAlignedBB> getBoundingBoxes(ConnectableBlockEntity blockEntity, BlockPos pos) {
+        return blockEntity.getBoxCache().get(blockEntity.getConnections(), () -> this.createBoundingBox(blockEntity.getConnections(), pos));
+    }
+
     public List<ConnectionAxisAlignedBB> createBoundingBox(Set<Connection> fenceConnections, BlockPos pos) {
         List<ConnectionAxisAlignedBB> out = Lists.newArrayList();
         for (Connection connection : fenceConnections) {
@@ -360,7 +386,7 @@ public class BlockConnectableBase extends Block {
 
 
     @Getter
-    public class ConnectionAxisAlignedBB extends AxisAlignedBB {
+    public static class ConnectionAxisAlignedBB extends AxisAlignedBB {
 
         private final Connection connection;
 
@@ -390,7 +416,8 @@ public class BlockConnectableBase extends Block {
     public boolean removedByPlayer(IBlockState state, World world, BlockPos pos, EntityPlayer player, boolean willHarvest) {
         RayTraceResult result = ForgeHooks.rayTraceEyes(player, 7);
         if(result != null && result.hitInfo instanceof BlockConnectableBase.HitChunk) {
-            ((BlockConnectableBase.HitChunk) result.hitInfo).getConnection().setBroken(true);
+            Connection hit = ((BlockConnectableBase.HitChunk) result.hitInfo).getConnection().setBroken(true);
+            FenceNetworkManager.onConnectionChanged(world, hit);
             TileEntity te = world.getTileEntity(pos);
             if(te instanceof ConnectableBlockEntity) {
                 for (Connection connection : ((ConnectableBlockEntity) te).getConnections()) {
@@ -435,6 +462,7 @@ public class BlockConnectableBase extends Block {
                     }
                     if(ref != null && ref.isBroken()) {
                         ref.setBroken(false);
+                        FenceNetworkManager.onConnectionChanged(worldIn, ref);
                         te.markDirty();
                         placeEffect(playerIn, hand, worldIn, pos);
                         return true;
@@ -456,6 +484,7 @@ public class BlockConnectableBase extends Block {
                         for (Connection connection : ((ConnectableBlockEntity) nextTe).getConnections()) {
                             if(connection.lazyEquals(chunk.getConnection())) {
                                 connection.setBroken(false);
+                                FenceNetworkManager.onConnectionChanged(worldIn, connection);
                                 placeEffect(playerIn, hand, worldIn, pos);
                                 nextTe.markDirty();
                                 return true;
@@ -489,19 +518,17 @@ public class BlockConnectableBase extends Block {
                         ConnectableBlockEntity cbe = (ConnectableBlockEntity) tileentity;
                         for (Connection connection : cbe.getConnections()) {
                             if (connection.getPrevious().equals(pos) || connection.getNext().equals(pos)) {
-                                List<BlockPos> positions = LineUtils.getBlocksInbetween(connection.getFrom(), connection.getTo(), connection.getOffset());
-                                for (int i = 0; i < positions.size(); i++) {
-                                    if (positions.get(i).equals(pos)) {
-                                        Connection con = new Connection(connection.getType(), connection.getOffset(), connection.getFrom(), connection.getTo(), positions.get(Math.min(i + 1, positions.size() - 1)), positions.get(Math.max(i - 1, 0)), pos);
-                                        double[] in = con.getIn();
-                                        double yin = (in[4] + in[5]) / 2D;
-                                        if (side == EnumFacing.DOWN == yin > yRef) {
-                                            yRef = yin;
-                                            ref = con;
-                                        }
-                                        newConnections.add(con);
-                                        break;
+                                BlockRun positions = LineUtils.getBlocksInbetween(connection.getFrom(), connection.getTo(), connection.getOffset());
+                                int i = positions.indexOf(pos);
+                                if (i != -1) {
+                                    Connection con = new Connection(connection.getType(), connection.getOffset(), connection.getFrom(), connection.getTo(), positions.get(Math.min(i + 1, positions.size() - 1)), positions.get(Math.max(i - 1, 0)), pos);
+                                    double[] in = con.getIn();
+                                    double yin = (in[4] + in[5]) / 2D;
+                                    if (side == EnumFacing.DOWN == yin > yRef) {
+                                        yRef = yin;
+                                        ref = con;
                                     }
+                                    newConnections.add(con);
                                 }
                             }
                         }
@@ -563,6 +590,7 @@ public class BlockConnectableBase extends Block {
                     }
                     if(ref != null) {
                         ref.setBroken(false);
+                        FenceNetworkManager.onConnectionChanged(world, ref);
                         event.setCanceled(true);
                         placeEffect(event.getEntityPlayer(), event.getHand(), event.getWorld(), event.getPos());
                     }
@@ -570,6 +598,7 @@ public class BlockConnectableBase extends Block {
                     for (Connection connection : cb.getConnections()) {
                         if(connection.isBroken()) {
                             connection.setBroken(false);
+                            FenceNetworkManager.onConnectionChanged(world, connection);
                             event.setCanceled(true);
                             placeEffect(event.getEntityPlayer(), event.getHand(), event.getWorld(), event.getPos());
                             break;
@@ -589,7 +618,134 @@ public class BlockConnectableBase extends Block {
     }
     
     @Value
-    public static class HitChunk {AxisAlignedBB aabb; Connection connection; EnumFacing dir; RotatedRayBox.Result result;}
+    public static class HitChunk {AxisAlignedBB aabb; Connection connection; EnumFacing dir; RotatedRayBox.Result result; RayTarget target;}
 
     @Value public static class ChunkedInfo {AxisAlignedBB aabb; Connection connection;}
+
+    /**
+     * A connection to ray trace against, with an axis aligned box around every rotated box the connection could be traced with.
+     * The axis aligned box is tested first, without allocating, so the rotated boxes are only tested when the ray could hit them.
+     */
+    public static class RayTarget {
+        //RotatedRayBox extends the ray by 100 times its length both ways, so the same is done here
+        private static final double RAY_EXTENSION = 100;
+        private static final double EPSILON = 1e-4;
+
+        @Getter private final ChunkedInfo info;
+        private final double[] min = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        private final double[] max = { -Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE };
+
+        //The highlight outlines, relative to the start of the connection. Created the first time they're drawn.
+        private Vector3d[] outline;
+        private Vector3d[] nextBrokenOutline;
+        private Vector3d[] prevBrokenOutline;
+        private Vector3d[] nextHalfOutline;
+        private Vector3d[] prevHalfOutline;
+
+        public RayTarget(ChunkedInfo info, RotatedRayBox... boxes) {
+            this.info = info;
+            for (RotatedRayBox box : boxes) {
+                Vec3d origin = box.getOrigin();
+                for (Vector3d point : box.points()) {
+                    this.include(0, origin.x + point.x);
+                    this.include(1, origin.y + point.y);
+                    this.include(2, origin.z + point.z);
+                }
+            }
+            //Grown a little, so rounding in the rotations can't make the box miss a ray the exact test would hit
+            for (int axis = 0; axis < 3; axis++) {
+                this.min[axis] -= EPSILON;
+                this.max[axis] += EPSILON;
+            }
+        }
+
+        /**
+         * Gets the outline of the whole connection, for when neither side is broken.
+         */
+        public Vector3d[] getOutline() {
+            if(this.outline == null) {
+                this.outline = this.info.getConnection().getRayBox().points();
+            }
+            return this.outline;
+        }
+
+        /**
+         * Gets the outline of the end of the connection that's bent towards the broken side.
+         * @param next whether the next side is broken, rather than the previous side
+         */
+        public Vector3d[] getBrokenOutline(boolean next) {
+            Vector3d[] outline = next ? this.nextBrokenOutline : this.prevBrokenOutline;
+            if(outline == null) {
+                AxisAlignedBB aabb = this.info.getAabb();
+                //Worked out here rather than with getCenter, which is client only
+                Vec3d center = new Vec3d((aabb.minX + aabb.maxX) / 2, (aabb.minY + aabb.maxY) / 2, (aabb.minZ + aabb.maxZ) / 2);
+                double ycent = (aabb.maxY - aabb.minY) / 2;
+                double zcent = (aabb.maxZ - aabb.minZ) / 2;
+                Connection connection = this.info.getConnection();
+                outline = connection.getRayBox().points(new AxisAlignedBB(center.x, center.y - ycent, center.z - zcent, center.x, center.y + ycent, center.z + zcent));
+                for (int i = 0; i < 4; i++) {
+                    outline[i + 4].add((next ? connection.getNextCache() : connection.getPrevCache()).getPoint());
+                }
+                if(next) {
+                    this.nextBrokenOutline = outline;
+                } else {
+                    this.prevBrokenOutline = outline;
+                }
+            }
+            return outline;
+        }
+
+        /**
+         * Gets the outline of the unbroken half of the connection, for when only one side is broken.
+         * @param next whether the next side is the broken one, rather than the previous side
+         */
+        public Vector3d[] getHalfOutline(boolean next) {
+            Vector3d[] outline = next ? this.nextHalfOutline : this.prevHalfOutline;
+            if(outline == null) {
+                AxisAlignedBB aabb = this.info.getAabb();
+                //Worked out here rather than with getCenter, which is client only
+                Vec3d center = new Vec3d((aabb.minX + aabb.maxX) / 2, (aabb.minY + aabb.maxY) / 2, (aabb.minZ + aabb.maxZ) / 2);
+                double ycent = (aabb.maxY - aabb.minY) / 2;
+                double zcent = (aabb.maxZ - aabb.minZ) / 2;
+                RotatedRayBox box = this.info.getConnection().getRayBox();
+                if(next) {
+                    outline = this.nextHalfOutline = box.points(new AxisAlignedBB(aabb.minX, aabb.minY, aabb.minZ, center.x, center.y + ycent, center.z + zcent));
+                } else {
+                    outline = this.prevHalfOutline = box.points(new AxisAlignedBB(center.x, center.y - ycent, center.z - zcent, aabb.maxX, aabb.maxY, aabb.maxZ));
+                }
+            }
+            return outline;
+        }
+
+        private void include(int axis, double value) {
+            this.min[axis] = Math.min(this.min[axis], value);
+            this.max[axis] = Math.max(this.max[axis], value);
+        }
+
+        /**
+         * Tests the ray against the axis aligned box, using the slab method.
+         */
+        public boolean intersects(Vec3d start, Vec3d end) {
+            double tMin = -RAY_EXTENSION;
+            double tMax = 1 + RAY_EXTENSION;
+            for (int axis = 0; axis < 3; axis++) {
+                double from = axis == 0 ? start.x : axis == 1 ? start.y : start.z;
+                double delta = (axis == 0 ? end.x : axis == 1 ? end.y : end.z) - from;
+                if(delta == 0) {
+                    if(from < this.min[axis] || from > this.max[axis]) {
+                        return false;
+                    }
+                } else {
+                    double t1 = (this.min[axis] - from) / delta;
+                    double t2 = (this.max[axis] - from) / delta;
+                    tMin = Math.max(tMin, Math.min(t1, t2));
+                    tMax = Math.min(tMax, Math.max(t1, t2));
+                    if(tMin > tMax) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
 }
@@ -6,6 +6,7 @@ import net.dumbcode.dumblibrary.server.utils.MathUtils;
 import net.dumbcode.projectnublar.server.ProjectNublar;
 import net.dumbcode.projectnublar.server.block.entity.BlockEntityElectricFencePole;
 import net.dumbcode.projectnublar.server.block.entity.ConnectableBlockEntity;
+import net.dumbcode.projectnublar.server.block.entity.FenceNetworkManager;
 import net.dumbcode.projectnublar.server.utils.Connection;
 import net.dumbcode.projectnublar.server.utils.ConnectionType;
 import net.dumbcode.projectnublar.server.utils.LineUtils;
@@ -297,6 +298,7 @@ public class BlockElectricFencePole extends BlockConnectableBase implements IIte
                             for (Connection bitcon : ((ConnectableBlockEntity) te).getConnections()) {
                                 if(connection.lazyEquals(bitcon)) {
                                     bitcon.setBroken(true);
+                                    FenceNetworkManager.onConnectionChanged(worldIn, bitcon);
                                 }
                                 left |= !bitcon.isBroken();
                             }
@@ -2,6 +2,7 @@ package net.dumbcode.projectnublar.server.block.entity;
 
 import com.google.common.collect.Sets;
 import net.dumbcode.dumblibrary.server.SimpleBlockEntity;
+import net.dumbcode.projectnublar.client.render.FenceSectionRenderer;
 import net.dumbcode.projectnublar.server.utils.Connection;
 import net.dumbcode.projectnublar.server.utils.LineUtils;
 import net.minecraft.nbt.NBTTagCompound;
@@ -16,6 +17,7 @@ import java.util.Set;
 public class BlockEntityElectricFence extends SimpleBlockEntity implements ConnectableBlockEntity {
 
     private Set<Connection> fenceConnections = Sets.newLinkedHashSet();
+    private final ConnectionBoxCache boxCache = new ConnectionBoxCache();
 
     @Override
     public NBTTagCompound writeToNBT(NBTTagCompound compound) {
@@ -38,6 +40,11 @@ public class BlockEntityElectricFence extends SimpleBlockEntity implements Conne
                 this.fenceConnections.add(connection);
             }
         }
+        //The synced connections may have been broken or fixed
+        Connection.invalidateIntact();
+        if(this.world != null && this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityChanged(this);
+        }
     }
 
     @Override
@@ -58,6 +65,8 @@ public class BlockEntityElectricFence extends SimpleBlockEntity implements Conne
     @Override
     public void addConnection(Connection connection) {
         this.fenceConnections.add(connection);
+        Connection.invalidateIntact();
+        FenceNetworkManager.onConnectionChanged(this.world, connection);
     }
 
     @Override
@@ -65,6 +74,43 @@ public class BlockEntityElectricFence extends SimpleBlockEntity implements Conne
         return this.fenceConnections;
     }
 
+    @Override
+    public ConnectionBoxCache getBoxCache() {
+        return this.boxCache;
+    }
+
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        Connection.invalidateIntact();
+        if(this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityChanged(this);
+        } else {
+            FenceNetworkManager.onConnectionsChanged(this.world, this, false);
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        Connection.invalidateIntact();
+        if(this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityRemoved(this);
+        } else {
+            FenceNetworkManager.onConnectionsChanged(this.world, this, true);
+        }
+    }
+
+    @Override
+    public void onChunkUnload() {
+        super.onChunkUnload();
+        if(this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityRemoved(this);
+        } else {
+            FenceNetworkManager.onConnectionsChanged(this.world, this, true);
+        }
+    }
+
     /**
      * Breaks the surrounding fence. Used for entities
      * who "attack" the fence.
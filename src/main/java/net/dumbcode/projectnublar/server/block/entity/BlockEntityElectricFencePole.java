@@ -1,10 +1,11 @@
 package net.dumbcode.projectnublar.server.block.entity;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import net.dumbcode.dumblibrary.server.SimpleBlockEntity;
+import net.dumbcode.projectnublar.client.render.FenceSectionRenderer;
 import net.dumbcode.projectnublar.server.block.BlockElectricFencePole;
 import net.dumbcode.projectnublar.server.utils.Connection;
 import net.minecraft.block.state.IBlockState;
@@ -12,7 +13,6 @@ import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumFacing;
-import net.minecraft.util.ITickable;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
@@ -22,20 +22,33 @@ import net.minecraftforge.energy.CapabilityEnergy;
 import net.minecraftforge.energy.IEnergyStorage;
 
 import javax.annotation.Nullable;
-import java.util.Comparator;
-import java.util.List;
-import java.util.Objects;
 import java.util.Set;
 
-public class BlockEntityElectricFencePole extends SimpleBlockEntity implements ConnectableBlockEntity, ITickable {
+/**
+ * The block entity for each block of a fence pole. The energy of the pole is held by the {@link FenceNetwork} the pole is in,
+ * with the block entity at the base of the pole exposing it through its energy capability.
+ */
+public class BlockEntityElectricFencePole extends SimpleBlockEntity implements ConnectableBlockEntity {
+
+    public static final int CAPACITY = 350;
+    private static final int MAX_RECEIVE = 350;
+    private static final int MAX_EXTRACT = 250;
 
     private Set<Connection> fenceConnections = Sets.newLinkedHashSet();
+    private final ConnectionBoxCache boxCache = new ConnectionBoxCache();
 
     @Getter @Setter
     private boolean rotatedAround = false;
 
-    private MachineModuleEnergyStorage energy = new MachineModuleEnergyStorage(350, 350, 250);
-    
+    private final IEnergyStorage energy = new PoleEnergyStorage();
+
+    //The energy of this pole when it's not in a network, such as before the networks are built, or on the client
+    @Getter(AccessLevel.PACKAGE) @Setter(AccessLevel.PACKAGE)
+    private int storedEnergy;
+
+    @Getter @Setter(AccessLevel.PACKAGE)
+    private FenceNetwork network;
+
     @Override
     public NBTTagCompound writeToNBT(NBTTagCompound compound) {
         NBTTagList nbt = new NBTTagList();
@@ -46,7 +59,7 @@ public class BlockEntityElectricFencePole extends SimpleBlockEntity implements C
         compound.setBoolean("rotated", this.rotatedAround);
 
         NBTTagCompound energyNBT = new NBTTagCompound();
-        energyNBT.setInteger("Amount", this.energy.getEnergyStored());
+        energyNBT.setInteger("Amount", this.network != null ? this.network.getShare(this) : this.storedEnergy);
         compound.setTag("Energy", energyNBT);
 
         return super.writeToNBT(compound);
@@ -64,9 +77,14 @@ public class BlockEntityElectricFencePole extends SimpleBlockEntity implements C
                 this.fenceConnections.add(connection);
             }
         }
+        //The synced connections may have been broken or fixed
+        Connection.invalidateIntact();
+        if(this.world != null && this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityChanged(this);
+        }
 
         NBTTagCompound energyNBT = compound.getCompoundTag("Energy");
-        this.energy = new MachineModuleEnergyStorage(350, 350, 250, energyNBT.getInteger("Amount"));
+        this.storedEnergy = Math.min(energyNBT.getInteger("Amount"), CAPACITY);
     }
 
     @Override
@@ -77,6 +95,8 @@ public class BlockEntityElectricFencePole extends SimpleBlockEntity implements C
     @Override
     public void addConnection(Connection connection) {
         this.fenceConnections.add(connection);
+        Connection.invalidateIntact();
+        FenceNetworkManager.onConnectionChanged(this.world, connection);
     }
 
     @Override
@@ -84,6 +104,43 @@ public class BlockEntityElectricFencePole extends SimpleBlockEntity implements C
         return this.fenceConnections;
     }
 
+    @Override
+    public ConnectionBoxCache getBoxCache() {
+        return this.boxCache;
+    }
+
+    @Override
+    public void onLoad() {
+        super.onLoad();
+        Connection.invalidateIntact();
+        if(this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityChanged(this);
+        } else {
+            FenceNetworkManager.get(this.world).addPole(this);
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        super.invalidate();
+        Connection.invalidateIntact();
+        if(this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityRemoved(this);
+        } else {
+            FenceNetworkManager.get(this.world).removePole(this);
+        }
+    }
+
+    @Override
+    public void onChunkUnload() {
+        super.onChunkUnload();
+        if(this.world.isRemote) {
+            FenceSectionRenderer.onBlockEntityRemoved(this);
+        } else {
+            FenceNetworkManager.get(this.world).removePole(this);
+        }
+    }
+
     @Override
     public boolean removedByFenceRemovers() {
         return false;
@@ -118,47 +175,6 @@ public class BlockEntityElectricFencePole extends SimpleBlockEntity implements C
         return super.getCapability(capability, facing);
     }
 
-    @Override
-    public void update() {
-        boolean powered = this.energy.getEnergyStored() > 0;
-        boolean update = false;
-        if(this.world.getBlockState(this.pos).getValue(BlockElectricFencePole.POWERED_PROPERTY) != powered) {
-            update = true;
-        }
-
-
-        this.energy.extractRaw(10);
-        IBlockState state = this.world.getBlockState(this.pos);
-        if(state.getBlock() instanceof BlockElectricFencePole && state.getValue(((BlockElectricFencePole) state.getBlock()).INDEX_PROPERTY) == 0) {
-            if(update) {
-                for (int y = 0; y < ((BlockElectricFencePole) state.getBlock()).getType().getHeight(); y++) {
-                    BlockPos pos = this.pos.up(y);
-                    IBlockState s =this.world.getBlockState(pos);
-                    if(s.getBlock() == state.getBlock()) { //When placing the blocks can be air
-                        this.world.setBlockState(pos, s.withProperty(BlockElectricFencePole.POWERED_PROPERTY, powered));
-                    }
-                }
-            }
-            //Pass power to other poles connected to this.
-            if(this.energy.getEnergyStored() > 300) {
-                Set<IEnergyStorage> storages = Sets.newLinkedHashSet();
-                for (Connection connection : this.fenceConnections) {
-                    TileEntity te = this.world.getTileEntity(connection.getPosition().equals(connection.getFrom()) ? connection.getTo() : connection.getFrom());
-                    if(te != null && te.hasCapability(CapabilityEnergy.ENERGY, null)) {
-                        storages.add(Objects.requireNonNull(te.getCapability(CapabilityEnergy.ENERGY, null)));
-                    }
-                }
-                List<IEnergyStorage> list = Lists.newArrayList(storages);
-                list.sort(Comparator.comparing(IEnergyStorage::getEnergyStored));
-                for (IEnergyStorage storage : list) {
-                    int sendEnergy = storage.receiveEnergy(this.energy.extractEnergy(300 / list.size(), true), true);
-                    this.energy.extractEnergy(sendEnergy, false);
-                    storage.receiveEnergy(sendEnergy, false);
-                }
-            }
-        }
-    }
-
     @Override
     public boolean shouldRefresh(World world, BlockPos pos, IBlockState oldState, IBlockState newSate) {
         return oldState.getBlock() != newSate.getBlock();
@@ -168,4 +184,55 @@ public class BlockEntityElectricFencePole extends SimpleBlockEntity implements C
     public AxisAlignedBB getRenderBoundingBox() {
         return new AxisAlignedBB(this.pos.add(-1, -1, -1), this.pos.add(1, 1, 1));
     }
+
+    //A view onto the network's energy, or onto the pole's own energy if it's not in a network
+    private class PoleEnergyStorage implements IEnergyStorage {
+        @Override
+        public int receiveEnergy(int maxReceive, boolean simulate) {
+            FenceNetwork network = BlockEntityElectricFencePole.this.network;
+            if(network != null) {
+                return network.receiveEnergy(Math.min(maxReceive, MAX_RECEIVE), simulate);
+            }
+            int received = Math.max(Math.min(CAPACITY - BlockEntityElectricFencePole.this.storedEnergy, Math.min(maxReceive, MAX_RECEIVE)), 0);
+            if(!simulate) {
+                BlockEntityElectricFencePole.this.storedEnergy += received;
+            }
+            return received;
+        }
+
+        @Override
+        public int extractEnergy(int maxExtract, boolean simulate) {
+            FenceNetwork network = BlockEntityElectricFencePole.this.network;
+            if(network != null) {
+                return network.extractEnergy(Math.min(maxExtract, MAX_EXTRACT), simulate);
+            }
+            int extracted = Math.min(BlockEntityElectricFencePole.this.storedEnergy, Math.min(maxExtract, MAX_EXTRACT));
+            if(!simulate) {
+                BlockEntityElectricFencePole.this.storedEnergy -= extracted;
+            }
+            return extracted;
+        }
+
+        @Override
+        public int getEnergyStored() {
+            FenceNetwork network = BlockEntityElectricFencePole.this.network;
+            return network != null ? network.getEnergy() : BlockEntityElectricFencePole.this.storedEnergy;
+        }
+
+        @Override
+        public int getMaxEnergyStored() {
+            FenceNetwork network = BlockEntityElectricFencePole.this.network;
+            return network != null ? network.getCapacity() : CAPACITY;
+        }
+
+        @Override
+        public boolean canExtract() {
+            return true;
+        }
+
+        @Override
+        public boolean canReceive() {
+            return true;
+        }
+    }
 }
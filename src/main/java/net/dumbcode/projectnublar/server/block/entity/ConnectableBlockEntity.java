@@ -9,6 +9,8 @@ public interface ConnectableBlockEntity {
 
     Set<Connection> getConnections();
 
+    ConnectionBoxCache getBoxCache();
+
     default boolean removedByFenceRemovers() {
         return true;
     }
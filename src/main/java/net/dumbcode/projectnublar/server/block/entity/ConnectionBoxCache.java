@@ -0,0 +1,60 @@
+package net.dumbcode.projectnublar.server.block.entity;
+
+import net.dumbcode.projectnublar.server.block.BlockConnectableBase;
+import net.dumbcode.projectnublar.server.utils.Connection;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Caches the collision boxes and ray targets of a {@link ConnectableBlockEntity}'s connections.
+ * They are recreated only when the connections themselves change.
+ */
+public class ConnectionBoxCache {
+
+    private final List<Connection> connections = new ArrayList<>();
+    private List<BlockConnectableBase.ConnectionAxisAlignedBB> boxes;
+    private List<BlockConnectableBase.RayTarget> rayTargets;
+
+    public List<BlockConnectableBase.ConnectionAxisAlignedBB> get(Set<Connection> current, Supplier<List<BlockConnectableBase.ConnectionAxisAlignedBB>> factory) {
+        this.validate(current);
+        if(this.boxes == null) {
+            this.boxes = factory.get();
+        }
+        return this.boxes;
+    }
+
+    public List<BlockConnectableBase.RayTarget> getRayTargets(Set<Connection> current, Supplier<List<BlockConnectableBase.RayTarget>> factory) {
+        this.validate(current);
+        if(this.rayTargets == null) {
+            this.rayTargets = factory.get();
+        }
+        return this.rayTargets;
+    }
+
+    private void validate(Set<Connection> current) {
+        if(!this.matches(current)) {
+            this.connections.clear();
+            this.connections.addAll(current);
+            this.boxes = null;
+            this.rayTargets = null;
+        }
+    }
+
+    //The connections set is changed directly in a lot of places, so the cache is checked against a copy of it rather than being invalidated
+    private boolean matches(Set<Connection> current) {
+        if(current.size() != this.connections.size()) {
+            return false;
+        }
+        Iterator<Connection> iterator = this.connections.iterator();
+        for (Connection connection : current) {
+            if(iterator.next() != connection) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package net.dumbcode.projectnublar.server.block.entity;
+
+import lombok.Getter;
+import net.dumbcode.projectnublar.server.block.BlockElectricFencePole;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.world.World;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A group of fence poles joined together by unbroken fence connections. <br>
+ * The network holds one pooled energy buffer for all its base poles, which the poles expose through their energy capability.
+ * This means power is shared across the whole network straight away, rather than being passed along from pole to pole.
+ * @see FenceNetworkManager
+ */
+public class FenceNetwork {
+
+    //Every pole block entity in the network, including the ones above the base of each pole
+    private final List<BlockEntityElectricFencePole> poles;
+    //The poles at the bottom of each pole. These are the ones that hold energy.
+    private final Set<BlockEntityElectricFencePole> bases;
+
+    @Getter
+    private int energy;
+    private boolean powered;
+    private boolean poweredSynced;
+
+    FenceNetwork(List<BlockEntityElectricFencePole> poles, Set<BlockEntityElectricFencePole> bases) {
+        this.poles = poles;
+        this.bases = bases;
+        for (BlockEntityElectricFencePole pole : poles) {
+            pole.setNetwork(this);
+        }
+        for (BlockEntityElectricFencePole base : bases) {
+            this.energy += base.getStoredEnergy();
+        }
+        this.energy = Math.min(this.energy, this.getCapacity());
+    }
+
+    public int getCapacity() {
+        return this.bases.size() * BlockEntityElectricFencePole.CAPACITY;
+    }
+
+    public int receiveEnergy(int maxReceive, boolean simulate) {
+        int received = Math.max(Math.min(this.getCapacity() - this.energy, maxReceive), 0);
+        if(!simulate) {
+            this.energy += received;
+        }
+        return received;
+    }
+
+    public int extractEnergy(int maxExtract, boolean simulate) {
+        int extracted = Math.min(this.energy, maxExtract);
+        if(!simulate) {
+            this.energy -= extracted;
+        }
+        return extracted;
+    }
+
+    /**
+     * Gets the part of the network's energy that belongs to the pole. This is what's saved with the pole.
+     * The energy is split evenly between the base poles, with the first pole taking what's left over.
+     * @param pole the pole
+     * @return the pole's share of the energy, or 0 if the pole isn't the base of a pole in this network
+     */
+    public int getShare(BlockEntityElectricFencePole pole) {
+        if(!this.bases.contains(pole)) {
+            return 0;
+        }
+        int share = this.energy / this.bases.size();
+        if(this.bases.iterator().next() == pole) {
+            share += this.energy % this.bases.size();
+        }
+        return share;
+    }
+
+    List<BlockEntityElectricFencePole> getPoles() {
+        return this.poles;
+    }
+
+    boolean isEmpty() {
+        return this.poles.isEmpty();
+    }
+
+    /**
+     * Moves every pole of the other network, and its energy, into this network.
+     */
+    void absorb(FenceNetwork other) {
+        for (BlockEntityElectricFencePole pole : other.poles) {
+            pole.setNetwork(this);
+        }
+        this.poles.addAll(other.poles);
+        this.bases.addAll(other.bases);
+        this.energy = Math.min(this.energy + other.energy, this.getCapacity());
+        other.poles.clear();
+        other.bases.clear();
+        other.energy = 0;
+        //The absorbed poles may not match this network's powered state yet
+        this.poweredSynced = false;
+    }
+
+    /**
+     * Gives each base pole its share of the energy, and removes every pole from this network.
+     */
+    void split() {
+        for (BlockEntityElectricFencePole base : this.bases) {
+            base.setStoredEnergy(this.getShare(base));
+        }
+        for (BlockEntityElectricFencePole pole : this.poles) {
+            if(pole.getNetwork() == this) {
+                pole.setNetwork(null);
+            }
+        }
+    }
+
+    /**
+     * Removes the pole from the network, taking its share of the energy with it.
+     */
+    void remove(BlockEntityElectricFencePole pole) {
+        if(this.bases.contains(pole)) {
+            int share = this.getShare(pole);
+            pole.setStoredEnergy(share);
+            this.energy -= share;
+            this.bases.remove(pole);
+        }
+        this.poles.remove(pole);
+        pole.setNetwork(null);
+    }
+
+    void update(World world) {
+        //Poles that are still being placed may not have a base yet. They're left alone until they're joined to one.
+        if(this.bases.isEmpty()) {
+            return;
+        }
+        //The same drain as each base pole draining on its own
+        this.energy -= Math.min(this.energy, this.bases.size() * 10);
+
+        boolean powered = this.energy > 0;
+        if(powered != this.powered || !this.poweredSynced) {
+            this.powered = powered;
+            this.poweredSynced = true;
+            //The connections read whether they're powered from this block state, which is also synced to the client
+            for (BlockEntityElectricFencePole pole : this.poles) {
+                IBlockState state = world.getBlockState(pole.getPos());
+                if(state.getBlock() instanceof BlockElectricFencePole && state.getValue(BlockElectricFencePole.POWERED_PROPERTY) != powered) {
+                    world.setBlockState(pole.getPos(), state.withProperty(BlockElectricFencePole.POWERED_PROPERTY, powered));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package net.dumbcode.projectnublar.server.block.entity;
+
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.block.BlockElectricFencePole;
+import net.dumbcode.projectnublar.server.profiler.ProfilerSection;
+import net.dumbcode.projectnublar.server.profiler.ProjectNublarProfiler;
+import net.dumbcode.projectnublar.server.utils.Connection;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import java.util.*;
+
+/**
+ * A per world graph of the loaded fence poles, split into {@link FenceNetwork}s. Only used on the server. <br>
+ * The networks are kept up to date incrementally at the end of the world tick. Loaded poles, and fixed or added connections,
+ * join the networks at either end together. Unloaded poles, and broken or removed connections, only re-split the networks they touch.
+ * The networks are then updated once a tick, draining their energy and flipping the powered state of their poles.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class FenceNetworkManager {
+
+    private static final Map<World, FenceNetworkManager> MANAGERS = new WeakHashMap<>();
+
+    private static final ProfilerSection REBUILD_SECTION = ProjectNublarProfiler.section("block/FenceNetworkManager/rebuild");
+    private static final ProfilerSection UPDATE_SECTION = ProjectNublarProfiler.section("block/FenceNetworkManager/update");
+
+    private final World world;
+    private final Map<BlockPos, BlockEntityElectricFencePole> poles = new HashMap<>();
+    private final Set<FenceNetwork> networks = new LinkedHashSet<>();
+
+    //Poles loaded since the last tick, that still need to be joined to their base and connections
+    private final Set<BlockEntityElectricFencePole> addedPoles = new LinkedHashSet<>();
+    //Connections added or fixed since the last tick, that may join the networks at either end
+    private final List<Connection> joinedConnections = new ArrayList<>();
+    //Networks that may have come apart since the last tick
+    private final Set<FenceNetwork> splitNetworks = new LinkedHashSet<>();
+
+    private FenceNetworkManager(World world) {
+        this.world = world;
+    }
+
+    public static FenceNetworkManager get(World world) {
+        return MANAGERS.computeIfAbsent(world, FenceNetworkManager::new);
+    }
+
+    /**
+     * Tells the manager of the world that the connection has been added, broken or fixed. Does nothing on the client.
+     */
+    public static void onConnectionChanged(World world, Connection connection) {
+        if(world != null && !world.isRemote) {
+            FenceNetworkManager manager = get(world);
+            if(connection.isBroken()) {
+                manager.connectionRemoved(connection);
+            } else {
+                manager.connectionAdded(connection);
+            }
+        }
+    }
+
+    /**
+     * Tells the manager of the world that the connections of the block entity have been loaded, or removed. Does nothing on the client.
+     */
+    public static void onConnectionsChanged(World world, ConnectableBlockEntity blockEntity, boolean removed) {
+        if(world != null && !world.isRemote) {
+            FenceNetworkManager manager = get(world);
+            for (Connection connection : blockEntity.getConnections()) {
+                if(removed) {
+                    manager.connectionRemoved(connection);
+                } else if(!connection.isBroken()) {
+                    manager.connectionAdded(connection);
+                }
+            }
+        }
+    }
+
+    public void addPole(BlockEntityElectricFencePole pole) {
+        this.poles.put(pole.getPos(), pole);
+        this.addedPoles.add(pole);
+    }
+
+    public void removePole(BlockEntityElectricFencePole pole) {
+        if(this.poles.get(pole.getPos()) == pole) {
+            this.poles.remove(pole.getPos());
+        }
+        this.addedPoles.remove(pole);
+        FenceNetwork network = pole.getNetwork();
+        if(network != null) {
+            network.remove(pole);
+            if(network.isEmpty()) {
+                this.networks.remove(network);
+                this.splitNetworks.remove(network);
+            } else {
+                this.splitNetworks.add(network);
+            }
+        }
+    }
+
+    private void connectionAdded(Connection connection) {
+        this.joinedConnections.add(connection);
+    }
+
+    private void connectionRemoved(Connection connection) {
+        for (BlockPos pos : new BlockPos[]{ connection.getFrom(), connection.getTo() }) {
+            BlockEntityElectricFencePole pole = this.poles.get(pos);
+            if(pole != null && pole.getNetwork() != null) {
+                this.splitNetworks.add(pole.getNetwork());
+            }
+        }
+    }
+
+    private void update() {
+        if(!this.splitNetworks.isEmpty() || !this.addedPoles.isEmpty() || !this.joinedConnections.isEmpty()) {
+            long start = REBUILD_SECTION.start();
+            try {
+                this.resplit();
+                this.join();
+            } finally {
+                REBUILD_SECTION.stop(start);
+            }
+        }
+        long start = UPDATE_SECTION.start();
+        try {
+            for (FenceNetwork network : this.networks) {
+                network.update(this.world);
+            }
+        } finally {
+            UPDATE_SECTION.stop(start);
+        }
+    }
+
+    //Rebuilds each network that may have come apart from only its own poles, splitting it into the groups that are still joined
+    private void resplit() {
+        for (FenceNetwork network : this.splitNetworks) {
+            if(!this.networks.remove(network)) {
+                continue;
+            }
+            List<BlockEntityElectricFencePole> poles = new ArrayList<>(network.getPoles());
+            //Give the energy back to the poles, so it can be pooled again in the new networks
+            network.split();
+
+            Map<BlockPos, Integer> indices = new HashMap<>();
+            for (int i = 0; i < poles.size(); i++) {
+                indices.put(poles.get(i).getPos(), i);
+            }
+            int[] parents = new int[poles.size()];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = i;
+            }
+            for (int i = 0; i < poles.size(); i++) {
+                BlockEntityElectricFencePole pole = poles.get(i);
+                BlockPos pos = pole.getPos();
+                Integer base = indices.get(this.getBase(pos));
+                if(base != null) {
+                    union(parents, i, base);
+                }
+                for (Connection connection : pole.getConnections()) {
+                    Integer other = indices.get(connection.getFrom().equals(pos) ? connection.getTo() : connection.getFrom());
+                    if(other != null && find(parents, i) != find(parents, other) && !connection.isBroken() && connection.isIntact(this.world)) {
+                        union(parents, i, other);
+                    }
+                }
+            }
+
+            Map<Integer, List<BlockEntityElectricFencePole>> components = new LinkedHashMap<>();
+            for (int i = 0; i < poles.size(); i++) {
+                components.computeIfAbsent(find(parents, i), r -> new ArrayList<>()).add(poles.get(i));
+            }
+            for (List<BlockEntityElectricFencePole> component : components.values()) {
+                this.createNetwork(component);
+            }
+        }
+        this.splitNetworks.clear();
+    }
+
+    //Joins the loaded poles and added connections into the networks at either end, by merging the smaller network into the larger one
+    private void join() {
+        List<BlockEntityElectricFencePole> added = new ArrayList<>(this.addedPoles);
+        this.addedPoles.clear();
+        for (BlockEntityElectricFencePole pole : added) {
+            if(pole.getNetwork() == null && this.poles.get(pole.getPos()) == pole) {
+                this.createNetwork(Collections.singletonList(pole));
+            }
+        }
+        for (BlockEntityElectricFencePole pole : added) {
+            if(pole.getNetwork() == null) {
+                continue;
+            }
+            BlockPos pos = pole.getPos();
+            //Join the pole to the base of the pole it's part of, and to the parts of the pole above it
+            this.merge(pole, this.poles.get(this.getBase(pos)));
+            for (int i = 1; ; i++) {
+                BlockEntityElectricFencePole above = this.poles.get(pos.up(i));
+                if(above == null || !this.getBase(above.getPos()).equals(pos)) {
+                    break;
+                }
+                this.merge(pole, above);
+            }
+            for (Connection connection : pole.getConnections()) {
+                if(!connection.isBroken()) {
+                    this.joinedConnections.add(connection);
+                }
+            }
+        }
+
+        List<Connection> connections = new ArrayList<>(this.joinedConnections);
+        this.joinedConnections.clear();
+        for (Connection connection : connections) {
+            BlockEntityElectricFencePole from = this.poles.get(connection.getFrom());
+            BlockEntityElectricFencePole to = this.poles.get(connection.getTo());
+            if(from != null && to != null && from.getNetwork() != null && to.getNetwork() != null && from.getNetwork() != to.getNetwork()
+                    && !connection.isBroken() && connection.isIntact(this.world)) {
+                this.merge(from, to);
+            }
+        }
+    }
+
+    private void merge(BlockEntityElectricFencePole a, BlockEntityElectricFencePole b) {
+        if(b == null) {
+            return;
+        }
+        FenceNetwork first = a.getNetwork();
+        FenceNetwork second = b.getNetwork();
+        if(first == null || second == null || first == second) {
+            return;
+        }
+        if(first.getPoles().size() < second.getPoles().size()) {
+            FenceNetwork ref = first;
+            first = second;
+            second = ref;
+        }
+        first.absorb(second);
+        this.networks.remove(second);
+    }
+
+    private void createNetwork(List<BlockEntityElectricFencePole> poles) {
+        Set<BlockEntityElectricFencePole> bases = new LinkedHashSet<>();
+        for (BlockEntityElectricFencePole pole : poles) {
+            IBlockState state = this.world.getBlockState(pole.getPos());
+            if(state.getBlock() instanceof BlockElectricFencePole && state.getValue(((BlockElectricFencePole) state.getBlock()).INDEX_PROPERTY) == 0) {
+                bases.add(pole);
+            }
+        }
+        this.networks.add(new FenceNetwork(new ArrayList<>(poles), bases));
+    }
+
+    private BlockPos getBase(BlockPos pos) {
+        IBlockState state = this.world.getBlockState(pos);
+        if(state.getBlock() instanceof BlockElectricFencePole) {
+            return pos.down(state.getValue(((BlockElectricFencePole) state.getBlock()).INDEX_PROPERTY));
+        }
+        return pos;
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        parents[find(parents, a)] = find(parents, b);
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if(event.phase == TickEvent.Phase.END && !event.world.isRemote) {
+            FenceNetworkManager manager = MANAGERS.get(event.world);
+            if(manager != null) {
+                manager.update();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        MANAGERS.remove(event.getWorld());
+    }
+}
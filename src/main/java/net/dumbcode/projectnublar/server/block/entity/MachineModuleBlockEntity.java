@@ -9,6 +9,8 @@ import net.dumbcode.projectnublar.client.gui.tab.TabbedGuiContainer;
 import net.dumbcode.projectnublar.server.ProjectNublar;
 import net.dumbcode.projectnublar.server.item.MachineModuleType;
 import net.dumbcode.projectnublar.server.network.C18OpenContainer;
+import net.dumbcode.projectnublar.server.profiler.ProfilerSection;
+import net.dumbcode.projectnublar.server.profiler.ProjectNublarProfiler;
 import net.dumbcode.projectnublar.server.recipes.MachineRecipe;
 import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiScreen;
@@ -56,6 +58,8 @@ public abstract class MachineModuleBlockEntity<B extends MachineModuleBlockEntit
     @Getter
     private EnergyStorage energy;
 
+    private final ProfilerSection profilerSection = ProjectNublarProfiler.section("block/" + this.getClass().getSimpleName() + "/update");
+
     public MachineModuleBlockEntity() {
         this.energy = new EnergyStorage(getEnergyCapacity(), getEnergyMaxTransferSpeed(), getEnergyMaxExtractSpeed());
         this.inputWrapper = this.getFromProcesses(MachineProcess::getInputSlots, this.constantInputSlots());
@@ -125,42 +129,47 @@ public abstract class MachineModuleBlockEntity<B extends MachineModuleBlockEntit
 
     @Override
     public void update() {
-        if(!this.world.isRemote) {
-            updateEnergyNetwork();
-            boolean hasPower = energy.extractEnergy(getBaseEnergyConsumption(), false) >= getBaseEnergyConsumption();
-            for (MachineProcess<B> process : this.processes) {
-                if (!canProvideEnergyForProcess(process)) {
-                    this.getInterruptAction(process).processConsumer.accept(process);
-                    continue;
-                }
-                if (hasPower && this.canProcess(process) && (process.currentRecipe == null || process.currentRecipe.accepts(this.asB, process))) {
-                    if (process.isProcessing() || this.searchForRecipes(process)) {
-                        if (process.isFinished()) {
-                            MachineRecipe<B> recipe = process.getCurrentRecipe();
-                            if (recipe != null) {
-                                recipe.onRecipeFinished(this.asB, process);
-                                process.setTime(0);
-                                if (!recipe.accepts(this.asB, process)) {
-                                    process.setProcessing(false);
-                                    process.setCurrentRecipe(null);
-                                    this.searchForRecipes(process);
+        long start = this.profilerSection.start();
+        try {
+            if(!this.world.isRemote) {
+                updateEnergyNetwork();
+                boolean hasPower = energy.extractEnergy(getBaseEnergyConsumption(), false) >= getBaseEnergyConsumption();
+                for (MachineProcess<B> process : this.processes) {
+                    if (!canProvideEnergyForProcess(process)) {
+                        this.getInterruptAction(process).processConsumer.accept(process);
+                        continue;
+                    }
+                    if (hasPower && this.canProcess(process) && (process.currentRecipe == null || process.currentRecipe.accepts(this.asB, process))) {
+                        if (process.isProcessing() || this.searchForRecipes(process)) {
+                            if (process.isFinished()) {
+                                MachineRecipe<B> recipe = process.getCurrentRecipe();
+                                if (recipe != null) {
+                                    recipe.onRecipeFinished(this.asB, process);
+                                    process.setTime(0);
+                                    if (!recipe.accepts(this.asB, process)) {
+                                        process.setProcessing(false);
+                                        process.setCurrentRecipe(null);
+                                        this.searchForRecipes(process);
+                                    } else {
+                                        recipe.onRecipeStarted(asB(), process);
+                                    }
                                 } else {
-                                    recipe.onRecipeStarted(asB(), process);
+                                    ProjectNublar.getLogger().error("Unable to find recipe " + process.getCurrentRecipe() + " as it does not exist.");
                                 }
                             } else {
-                                ProjectNublar.getLogger().error("Unable to find recipe " + process.getCurrentRecipe() + " as it does not exist.");
+                                energy.extractEnergy(process.getCurrentConsumptionPerTick(), false); // consume energy for process
+                                energy.receiveEnergy(process.getCurrentProductionPerTick(), false);
+                                process.tick();
                             }
-                        } else {
-                            energy.extractEnergy(process.getCurrentConsumptionPerTick(), false); // consume energy for process
-                            energy.receiveEnergy(process.getCurrentProductionPerTick(), false);
-                            process.tick();
+                            this.markDirty();
                         }
-                        this.markDirty();
+                    } else if (process.isProcessing()) {
+                        this.getInterruptAction(process).processConsumer.accept(process);
                     }
-                } else if (process.isProcessing()) {
-                    this.getInterruptAction(process).processConsumer.accept(process);
                 }
             }
+        } finally {
+            this.profilerSection.stop(start);
         }
     }
 
@@ -0,0 +1,95 @@
+package net.dumbcode.projectnublar.server.command;
+
+import com.google.common.collect.Lists;
+import net.dumbcode.projectnublar.server.profiler.ProfilerSection;
+import net.dumbcode.projectnublar.server.profiler.ProjectNublarProfiler;
+import net.minecraft.command.CommandBase;
+import net.minecraft.command.CommandException;
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.text.TextComponentString;
+import net.minecraft.util.text.TextComponentTranslation;
+import net.minecraft.util.text.TextFormatting;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class ProfileCommand extends CommandBase {
+
+    private static final int SHOWN_SECTIONS = 10;
+
+    @Override
+    public String getName() {
+        return "profile";
+    }
+
+    @Override
+    public String getUsage(ICommandSender sender) {
+        return "Usage: /projectnublar profile {start|stop|reset|show|dump} {csv|json}?";
+    }
+
+    @Override
+    public int getRequiredPermissionLevel() {
+        return 2;
+    }
+
+    @Override
+    public void execute(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+        if(args.length > 0) {
+            switch (args[0].toLowerCase()) {
+                case "start":
+                    ProjectNublarProfiler.reset();
+                    ProjectNublarProfiler.setEnabled(true);
+                    sender.sendMessage(new TextComponentString("Started the profiler"));
+                    return;
+                case "stop":
+                    ProjectNublarProfiler.setEnabled(false);
+                    sender.sendMessage(new TextComponentString("Stopped the profiler"));
+                    return;
+                case "reset":
+                    ProjectNublarProfiler.reset();
+                    sender.sendMessage(new TextComponentString("Reset the profiler"));
+                    return;
+                case "show":
+                    List<ProfilerSection.Snapshot> snapshots = ProjectNublarProfiler.getSnapshots();
+                    sender.sendMessage(new TextComponentString(TextFormatting.YELLOW + "Top " + Math.min(snapshots.size(), SHOWN_SECTIONS) + " of " + snapshots.size() + " sections by total time:"));
+                    for (ProfilerSection.Snapshot snapshot : snapshots.subList(0, Math.min(snapshots.size(), SHOWN_SECTIONS))) {
+                        sender.sendMessage(new TextComponentString(String.format("%s: %.2fms total, %d calls, mean %.1fus, p99 %.1fus, %d bytes/call",
+                            snapshot.getName(), snapshot.getTotalNanos() / 1e6D, snapshot.getCalls(), snapshot.getMeanNanos() / 1e3D, snapshot.getP99() / 1e3D, snapshot.getRecentAllocatedPerCall()
+                        )));
+                    }
+                    return;
+                case "dump":
+                    ProjectNublarProfiler.DumpFormat format = args.length > 1 && args[1].equalsIgnoreCase("json") ? ProjectNublarProfiler.DumpFormat.JSON : ProjectNublarProfiler.DumpFormat.CSV;
+                    try {
+                        File file = ProjectNublarProfiler.dump(server, format);
+                        sender.sendMessage(new TextComponentString("Dumped the profiler to " + file.getName()));
+                    } catch (IOException e) {
+                        TextComponentString text = new TextComponentString("Unable to dump the profiler: " + e.getMessage());
+                        text.getStyle().setColor(TextFormatting.RED);
+                        sender.sendMessage(text);
+                    }
+                    return;
+                default:
+                    break;
+            }
+        }
+        TextComponentTranslation text = new TextComponentTranslation(this.getUsage(sender));
+        text.getStyle().setColor(TextFormatting.RED);
+        sender.sendMessage(text);
+    }
+
+    @Override
+    public List<String> getTabCompletions(MinecraftServer server, ICommandSender sender, String[] args, @Nullable BlockPos targetPos) {
+        if(args.length == 1) {
+            return getListOfStringsMatchingLastWord(args, "start", "stop", "reset", "show", "dump");
+        }
+        if(args.length == 2 && args[0].equalsIgnoreCase("dump")) {
+            return getListOfStringsMatchingLastWord(args, "csv", "json");
+        }
+        return Lists.newArrayList();
+    }
+}
@@ -29,6 +29,8 @@ public class EntityPart extends Entity implements IEntityAdditionalSpawnData {
     @Getter private String partName;
 
     private Entity parentCache;
+    //The generation of the uuid index when the parent was cached. See EntityUUIDIndex#getGeneration
+    private int parentGeneration = -1;
 
     private boolean setInParent = false;
 
@@ -47,6 +49,25 @@ public class EntityPart extends Entity implements IEntityAdditionalSpawnData {
         this.dataManager.set(WATCHER_SIZE, size);
     }
 
+    /**
+     * Sets the size, only creating a new size vector if the size has actually changed.
+     */
+    public void setSize(double x, double y, double z) {
+        Vec3d size = this.dataManager.get(WATCHER_SIZE);
+        if(size.x != x || size.y != y || size.z != z) {
+            this.setSize(new Vec3d(x, y, z));
+        }
+    }
+
+    /**
+     * Sets the position, skipping the bounding box update if the part hasn't moved.
+     */
+    public void updatePosition(double x, double y, double z) {
+        if(this.posX != x || this.posY != y || this.posZ != z || this.height != (float) this.dataManager.get(WATCHER_SIZE).y) {
+            this.setPosition(x, y, z);
+        }
+    }
+
     @Override
     protected void entityInit() {
         this.dataManager.register(WATCHER_SIZE, Vec3d.ZERO);
@@ -68,7 +89,7 @@ public class EntityPart extends Entity implements IEntityAdditionalSpawnData {
             this.setInParent = parent != null;
             if(parent instanceof ComponentAccess) {
                 ((ComponentAccess) parent).get(ComponentHandler.MULTIPART)
-                        .ifPresent(multipartEntityComponent -> multipartEntityComponent.getEntities().add(new MultipartEntityComponent.LinkedEntity(this.partName, this.getUniqueID())));
+                        .ifPresent(multipartEntityComponent -> multipartEntityComponent.getEntities().add(new MultipartEntityComponent.LinkedEntity(this.partName, this)));
 
             }
         }
@@ -86,13 +107,10 @@ public class EntityPart extends Entity implements IEntityAdditionalSpawnData {
 
     @Nullable
     public Entity getParent() {
-        if (this.parentCache != null) {
-            return parentCache;
-        }
-        for (Entity entity : this.world.loadedEntityList) {
-            if (entity.getUniqueID().equals(this.parentUUID)) {
-                this.parentCache = entity;
-            }
+        int generation = EntityUUIDIndex.getGeneration(this.world);
+        if (this.parentCache == null || this.parentGeneration != generation) {
+            this.parentCache = EntityUUIDIndex.getEntity(this.world, this.parentUUID);
+            this.parentGeneration = generation;
         }
         return this.parentCache;
     }
@@ -147,6 +165,7 @@ public class EntityPart extends Entity implements IEntityAdditionalSpawnData {
     @Override
     protected void readEntityFromNBT(NBTTagCompound compound) {
         this.parentUUID = compound.getUniqueId("parent");
+        this.parentCache = null;
         this.partName = compound.getString("partname");
     }
 
@@ -170,6 +189,7 @@ public class EntityPart extends Entity implements IEntityAdditionalSpawnData {
     public void readSpawnData(ByteBuf additionalData) {
         if(additionalData.readBoolean()) {
             this.parentUUID = new UUID(additionalData.readLong(), additionalData.readLong());
+            this.parentCache = null;
             this.partName = ByteBufUtils.readUTF8String(additionalData);
         }
     }
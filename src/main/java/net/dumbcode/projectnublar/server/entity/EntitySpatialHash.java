@@ -0,0 +1,116 @@
+package net.dumbcode.projectnublar.server.entity;
+
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.item.EntityItem;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A per world spatial hash of the living entities and item entities, on the xz plane. <br>
+ * The hash is rebuilt at most once a tick, the first time it's queried in that tick. This means AIs looking for
+ * food or targets only need to look at the cells around them, rather than every loaded entity in the world.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class EntitySpatialHash {
+
+    private static final int CELL_SHIFT = 4;
+
+    private static final Map<World, EntitySpatialHash> HASHES = new WeakHashMap<>();
+
+    private final World world;
+    private final Map<Long, List<Entity>> cells = new HashMap<>();
+    private long builtTime = Long.MIN_VALUE;
+
+    private EntitySpatialHash(World world) {
+        this.world = world;
+    }
+
+    public static EntitySpatialHash get(World world) {
+        return HASHES.computeIfAbsent(world, EntitySpatialHash::new);
+    }
+
+    /**
+     * Gets all the entities of a type within {@code radius} blocks of the entity, ordered nearest first.
+     * The entity itself is never included.
+     * @param entity the entity at the center of the query
+     * @param radius the radius, in blocks
+     * @param type the type of entity to look for. Only {@link EntityLivingBase} and {@link EntityItem} are hashed.
+     * @param predicate the predicate the entities have to match
+     * @return a list of matching entities, ordered by distance
+     */
+    public <T extends Entity> List<T> query(Entity entity, double radius, Class<T> type, Predicate<? super T> predicate) {
+        this.ensureBuilt();
+
+        int minX = MathHelper.floor(entity.posX - radius) >> CELL_SHIFT;
+        int maxX = MathHelper.floor(entity.posX + radius) >> CELL_SHIFT;
+        int minZ = MathHelper.floor(entity.posZ - radius) >> CELL_SHIFT;
+        int maxZ = MathHelper.floor(entity.posZ + radius) >> CELL_SHIFT;
+        double radiusSq = radius * radius;
+
+        List<T> out = new ArrayList<>();
+        Map<T, Double> distances = new IdentityHashMap<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                List<Entity> cell = this.cells.get(ChunkPos.asLong(x, z));
+                if(cell == null) {
+                    continue;
+                }
+                for (Entity other : cell) {
+                    if(other == entity || other.isDead || !type.isInstance(other)) {
+                        continue;
+                    }
+                    double distance = other.getDistanceSq(entity);
+                    T cast = type.cast(other);
+                    if(distance < radiusSq && predicate.test(cast)) {
+                        out.add(cast);
+                        distances.put(cast, distance);
+                    }
+                }
+            }
+        }
+        out.sort(Comparator.comparingDouble(distances::get));
+        return out;
+    }
+
+    /**
+     * Gets the nearest entity of a type within {@code radius} blocks of the entity.
+     * @see #query(Entity, double, Class, Predicate)
+     */
+    public <T extends Entity> Optional<T> nearest(Entity entity, double radius, Class<T> type, Predicate<? super T> predicate) {
+        List<T> list = this.query(entity, radius, type, predicate);
+        return list.isEmpty() ? Optional.empty() : Optional.of(list.get(0));
+    }
+
+    private void ensureBuilt() {
+        long time = this.world.getTotalWorldTime();
+        if(time == this.builtTime) {
+            return;
+        }
+        this.builtTime = time;
+
+        //Reuse the cell lists from the last build, only dropping the cells that were empty for the whole of the last tick
+        this.cells.values().removeIf(List::isEmpty);
+        this.cells.values().forEach(List::clear);
+
+        for (Entity entity : this.world.loadedEntityList) {
+            if(!entity.isDead && (entity instanceof EntityLivingBase || entity instanceof EntityItem)) {
+                long key = ChunkPos.asLong(MathHelper.floor(entity.posX) >> CELL_SHIFT, MathHelper.floor(entity.posZ) >> CELL_SHIFT);
+                this.cells.computeIfAbsent(key, l -> new ArrayList<>()).add(entity);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        HASHES.remove(event.getWorld());
+    }
+}
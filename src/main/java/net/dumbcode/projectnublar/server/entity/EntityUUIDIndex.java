@@ -0,0 +1,130 @@
+package net.dumbcode.projectnublar.server.entity;
+
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+/**
+ * A per world index of the loaded entities by their uuid, on both the server and the client. <br>
+ * The index is created from the loaded entity list the first time it's used in a world, and is then kept up to date
+ * by listening for entities being added to and removed from the world. Removal covers entities dying and being unloaded.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class EntityUUIDIndex implements IWorldEventListener {
+
+    private static final Map<World, EntityUUIDIndex> INDEXES = new WeakHashMap<>();
+
+    private final Map<UUID, Entity> entities = new HashMap<>();
+    //Bumped whenever an entity leaves the index. Used by the callers that cache entities, to know when to look them up again.
+    private int generation;
+
+    private EntityUUIDIndex(World world) {
+        for (Entity entity : world.loadedEntityList) {
+            this.entities.put(entity.getUniqueID(), entity);
+        }
+        world.addEventListener(this);
+    }
+
+    /**
+     * Gets the loaded entity with the uuid
+     * @param world the world the entity is in
+     * @param uuid the uuid of the entity
+     * @return the entity, or null if there is no loaded entity with that uuid
+     */
+    @Nullable
+    public static Entity getEntity(World world, @Nullable UUID uuid) {
+        if(uuid == null) {
+            return null;
+        }
+        return INDEXES.computeIfAbsent(world, EntityUUIDIndex::new).entities.get(uuid);
+    }
+
+    /**
+     * Gets the generation of the world's index, which changes whenever an entity is removed from it, including by being unloaded.
+     * An entity cached along with the generation is still the loaded entity for its uuid while the generation is the same.
+     * @param world the world
+     * @return the generation of the index
+     */
+    public static int getGeneration(World world) {
+        return INDEXES.computeIfAbsent(world, EntityUUIDIndex::new).generation;
+    }
+
+    @Override
+    public void onEntityAdded(Entity entityIn) {
+        Entity previous = this.entities.put(entityIn.getUniqueID(), entityIn);
+        if(previous != null && previous != entityIn) {
+            this.generation++;
+        }
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entityIn) {
+        //Only remove the entry if it's for this entity, as a respawned entity can reuse the uuid before the old one is removed
+        if(this.entities.remove(entityIn.getUniqueID(), entityIn)) {
+            this.generation++;
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        EntityUUIDIndex index = INDEXES.remove(event.getWorld());
+        if(index != null) {
+            event.getWorld().removeEventListener(index);
+        }
+    }
+
+    @Override
+    public void notifyBlockUpdate(World worldIn, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(@Nullable EntityPlayer player, SoundEvent soundIn, SoundCategory category, double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent soundIn, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleID, boolean ignoreRange, double xCoord, double yCoord, double zCoord, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void spawnParticle(int id, boolean ignoreRange, boolean minimiseParticleLevel, double x, double y, double z, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void broadcastSound(int soundID, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos blockPosIn, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+}
@@ -1,11 +1,12 @@
 package net.dumbcode.projectnublar.server.entity.ai;
 
-import net.dumbcode.dumblibrary.DumbLibrary;
 import net.dumbcode.dumblibrary.server.animation.objects.AnimationEntry;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentTypes;
-import net.dumbcode.dumblibrary.server.utils.BlockStateWorker;
 import net.dumbcode.projectnublar.server.animation.AnimationHandler;
+import net.dumbcode.projectnublar.server.entity.ai.objects.FoodSourceIndex;
+import net.dumbcode.projectnublar.server.entity.ai.objects.PathRequest;
+import net.dumbcode.projectnublar.server.entity.ai.objects.PathRequestService;
 import net.dumbcode.projectnublar.server.entity.component.impl.MetabolismComponent;
 import net.minecraft.block.material.Material;
 import net.minecraft.entity.EntityLiving;
@@ -17,23 +18,24 @@ import net.minecraft.util.math.Vec3d;
 import net.minecraft.util.math.Vec3i;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 public class DrinkingAI extends EntityAIBase {
 
     private final ComponentAccess access;
     private EntityLiving entity;
-    private Future<List<BlockPos>> blockPosList;
     private final List<BlockPos> foundPositions = new ArrayList<>();
     private MetabolismComponent metabolism;
     private int drinkingTicks;
+    //The world time before which the water index shouldn't be searched again, after a search found nothing
+    private long nextSearchTime;
 
     private Path path;
+    private PathRequest request;
 
     private static final int WATER_THRESHOLD = 3600; // TODO: Vary
+    private static final int MAX_CANDIDATES = 15;
+    private static final int SEARCH_COOLDOWN = 40;
 
     public DrinkingAI(ComponentAccess access, EntityLiving entity, MetabolismComponent metabolism) {
         this.access = access;
@@ -45,28 +47,21 @@ public class DrinkingAI extends EntityAIBase {
     @Override
     public boolean shouldExecute() {
         if(this.metabolism.getWater() <= WATER_THRESHOLD) {
-            if(this.blockPosList == null) {
-                this.blockPosList = BlockStateWorker.INSTANCE.runTask(this.entity.world, this.entity.getPosition(), 50, 50, 7, (world, pos) -> world.getBlockState(pos).getMaterial() == Material.WATER && world.isAirBlock(pos.up()));
+            long time = this.entity.world.getTotalWorldTime();
+            if(time < this.nextSearchTime) {
+                return false;
             }
-            if(this.blockPosList.isDone()) {
-                try {
-                    List<BlockPos> blockPos = this.blockPosList.get();
-                    blockPos.sort(Comparator.comparingDouble(o -> o.distanceSq(this.entity.posX, this.entity.posY, this.entity.posZ)));
-                    for (BlockPos pos : blockPos) {
-                        if(this.entity.world.getBlockState(pos).getMaterial() == Material.WATER) {
-                            this.foundPositions.add(pos);
-                        }
-                    }
-                }  catch (InterruptedException e) {
-                    DumbLibrary.getLogger().warn("Unable to finish process, had to interrupt", e);
-                    Thread.currentThread().interrupt();
-                } catch (ExecutionException e) {
-                    DumbLibrary.getLogger().warn("Unable to finish process", e);
-                } finally {
-                    this.blockPosList = null;
+            this.foundPositions.clear();
+            for (BlockPos pos : FoodSourceIndex.get(this.entity.world).getNearestWater(this.entity.getPosition(), 50, 7, MAX_CANDIDATES)) {
+                if(this.entity.world.getBlockState(pos).getMaterial() == Material.WATER) {
+                    this.foundPositions.add(pos);
                 }
-                return !this.foundPositions.isEmpty();
             }
+            if(this.foundPositions.isEmpty()) {
+                this.nextSearchTime = time + SEARCH_COOLDOWN;
+                return false;
+            }
+            return true;
         }
         return false;
     }
@@ -74,24 +69,28 @@ public class DrinkingAI extends EntityAIBase {
 
     @Override
     public void updateTask() {
-        //This is to make sure that our destination is reachable:
+        //This is to make sure that our destination is reachable. Candidates are checked one at a time, through the shared path requests
         if(this.path == null) {
-            boolean foundPath = false;
-            for (int i = 0; i < 15; i++) {
-                BlockPos foundPos = this.foundPositions.get(0);
-                this.path = this.entity.getNavigator().getPathToPos(foundPos);
-                if(this.path != null) {
-                    PathPoint finalPoint = this.path.getFinalPathPoint();
-                    if(finalPoint != null && foundPos.add(-finalPoint.x, -finalPoint.y, -finalPoint.z).distanceSq(Vec3i.NULL_VECTOR) < 2*2) {
-                        foundPath = true;
-                        break;
-                    } else {
-                        this.foundPositions.remove(0);
-                    }
+            if(this.request == null) {
+                if(this.foundPositions.isEmpty()) {
+                    return;
                 }
+                this.request = PathRequestService.get(this.entity.world).request(this.entity, this.foundPositions.get(0));
+            }
+            if(!this.request.isDone()) {
+                return;
             }
-            if(!foundPath) {
-                this.path = null;
+            Path path = this.request.getPath();
+            this.request = null;
+            BlockPos foundPos = this.foundPositions.get(0);
+            PathPoint finalPoint = path == null ? null : path.getFinalPathPoint();
+            if(finalPoint != null && foundPos.add(-finalPoint.x, -finalPoint.y, -finalPoint.z).distanceSq(Vec3i.NULL_VECTOR) < 2*2) {
+                this.path = path;
+            } else {
+                this.foundPositions.remove(0);
+                if(!this.foundPositions.isEmpty()) {
+                    this.request = PathRequestService.get(this.entity.world).request(this.entity, this.foundPositions.get(0));
+                }
                 return;
             }
         }
@@ -122,14 +121,23 @@ public class DrinkingAI extends EntityAIBase {
     public void resetTask() {
         this.drinkingTicks = 0;
         this.foundPositions.clear();
+        this.path = null;
+        if(this.request != null) {
+            this.request.cancel();
+            this.request = null;
+        }
         this.access.get(EntityComponentTypes.ANIMATION).ifPresent(a -> a.stopAnimation(this.entity, MetabolismComponent.METABOLISM_CHANNEL));
     }
 
     @Override
     public boolean shouldContinueExecuting() {
-        if(this.foundPositions.isEmpty() || this.path == null) {
+        if(this.foundPositions.isEmpty()) {
             return false;
         }
+        if(this.path == null) {
+            //Still waiting for a path to one of the candidates
+            return this.request != null;
+        }
         BlockPos foundPos = this.foundPositions.get(0);
         Vec3d position = new Vec3d(foundPos.getX() + 0.5D, foundPos.getY() + 0.5D, foundPos.getZ() + 0.5D);
         return (this.entity.getNavigator().getPath() == this.path || this.entity.getPositionVector().squareDistanceTo(position) <= 2*2) && this.entity.world.getBlockState(foundPos).getMaterial() == Material.WATER && this.metabolism.getWater() < (this.metabolism.getMaxWater().getValue() / 4) * 3;
@@ -4,16 +4,18 @@ import net.dumbcode.dumblibrary.server.animation.objects.Animation;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentTypes;
 import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.entity.EntitySpatialHash;
 import net.dumbcode.projectnublar.server.entity.component.impl.ai.AttackComponent;
-import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityCreature;
 import net.minecraft.entity.EntityLivingBase;
+import net.minecraft.entity.SharedMonsterAttributes;
 import net.minecraft.entity.ai.EntityAIAttackMelee;
 import net.minecraft.util.DamageSource;
 import net.minecraft.util.EnumHand;
 import net.minecraft.util.ResourceLocation;
 import net.minecraft.world.World;
 
+import java.util.Optional;
 import java.util.function.Predicate;
 
 public class EntityAttackAI extends EntityAIAttackMelee {
@@ -51,11 +53,11 @@ public class EntityAttackAI extends EntityAIAttackMelee {
 
     private boolean findNewTarget() {
         if(attacker.getAttackTarget() == null || !attacker.getAttackTarget().isEntityAlive()) {
-            for(Entity entity : world.loadedEntityList) {
-                if(entity instanceof EntityLivingBase && entity.isEntityAlive() && this.enemyPredicate.test((EntityLivingBase) entity) && entity != this.attacker) {
-                    attacker.setAttackTarget((EntityLivingBase) entity);
-                    return true;
-                }
+            double range = this.attacker.getEntityAttribute(SharedMonsterAttributes.FOLLOW_RANGE).getAttributeValue();
+            Optional<EntityLivingBase> target = EntitySpatialHash.get(this.world).nearest(this.attacker, range, EntityLivingBase.class, entity -> entity.isEntityAlive() && this.enemyPredicate.test(entity));
+            if(target.isPresent()) {
+                this.attacker.setAttackTarget(target.get());
+                return true;
             }
         }
         return false;
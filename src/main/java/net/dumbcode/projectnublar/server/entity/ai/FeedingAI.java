@@ -1,37 +1,43 @@
 package net.dumbcode.projectnublar.server.entity.ai;
 
 import lombok.ToString;
-import net.dumbcode.dumblibrary.DumbLibrary;
 import net.dumbcode.dumblibrary.server.animation.objects.AnimationEntry;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentTypes;
-import net.dumbcode.dumblibrary.server.utils.BlockStateWorker;
 import net.dumbcode.projectnublar.server.animation.AnimationHandler;
+import net.dumbcode.projectnublar.server.entity.EntitySpatialHash;
+import net.dumbcode.projectnublar.server.entity.ai.objects.FoodSourceIndex;
+import net.dumbcode.projectnublar.server.entity.ai.objects.PathRequest;
+import net.dumbcode.projectnublar.server.entity.ai.objects.PathRequestService;
 import net.dumbcode.projectnublar.server.entity.component.impl.MetabolismComponent;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityLiving;
 import net.minecraft.entity.ai.EntityAIBase;
 import net.minecraft.entity.item.EntityItem;
+import net.minecraft.pathfinding.Path;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 public class FeedingAI extends EntityAIBase {
 
+    private static final int MAX_BLOCK_CANDIDATES = 5;
+
     private final ComponentAccess access;
     private final EntityLiving entityLiving;
     private final MetabolismComponent metabolism;
-    private Future<List<BlockPos>> blockPosList;
 
     private FeedingProcess process = null;
     private int eatingTicks;
 
+    private final List<BlockPos> blockCandidates = new ArrayList<>();
+    private PathRequest request;
+    private Path path;
+
     public  FeedingAI(ComponentAccess access, EntityLiving entityLiving, MetabolismComponent metabolism) {
         this.access = access;
         this.entityLiving = entityLiving;
@@ -44,52 +50,71 @@ public class FeedingAI extends EntityAIBase {
         if (this.metabolism.getFood() <= 3600) {
             if (this.process == null) {
                 World world = this.entityLiving.world;
-                //Search entities first
-                for (Entity entity : world.loadedEntityList) {
-                    if (entity.getDistanceSq(this.entityLiving) < this.metabolism.getFoodSmellDistance() * this.metabolism.getFoodSmellDistance()) {
-                        if (entity instanceof EntityItem && this.metabolism.getDiet().getResult(((EntityItem) entity).getItem()).isPresent()) {
+                //Search entities first, nearest first
+                double smellDistance = this.metabolism.getFoodSmellDistance();
+                for (Entity entity : EntitySpatialHash.get(world).query(this.entityLiving, smellDistance, Entity.class, e -> true)) {
+                    if (entity instanceof EntityItem) {
+                        if(this.metabolism.getDiet().getResult(((EntityItem) entity).getItem()).isPresent()) {
                             this.process = new ItemStackProcess((EntityItem) entity);
                             break;
-                        } else if (this.metabolism.getDiet().getResult(entity).isPresent()) {
-                            this.process = new EntityProcess(entity);
-                            break;
                         }
+                    } else if (this.metabolism.getDiet().getResult(entity).isPresent()) {
+                        this.process = new EntityProcess(entity);
+                        break;
                     }
                 }
                 if(this.process == null) {
-                    if(this.blockPosList == null) {
-                        this.blockPosList = BlockStateWorker.INSTANCE.runTask(entityLiving.world, entityLiving.getPosition(), metabolism.getFoodSmellDistance(), (w, pos) -> this.metabolism.getDiet().getResult(w.getBlockState(pos)).isPresent() && this.entityLiving.getNavigator().getPathToPos(pos) != null);
-                    } else if(this.blockPosList.isDone()) {
-                        try {
-                            List<BlockPos> results = this.blockPosList.get();
-                            this.blockPosList = null;
-                            Vec3d pos = this.entityLiving.getPositionVector();
-                            if (!results.isEmpty()) {
-                                results.sort(Comparator.comparingDouble(o -> o.distanceSq(pos.x, pos.y, pos.z)));
-                                for (BlockPos result : results) {
-                                    if(this.metabolism.getDiet().getResult(this.entityLiving.world.getBlockState(result)).isPresent()) {
-                                        this.process = new BlockStateProcess(world, result);
-                                        break;
-                                    }
-                                }
-                            }
-                        } catch (InterruptedException e) {
-                            DumbLibrary.getLogger().warn("Unable to finish process, had to interrupt", e);
-                            Thread.currentThread().interrupt();
-                        } catch (ExecutionException e) {
-                            DumbLibrary.getLogger().warn("Unable to finish process", e);
-                        }
-                    }
+                    this.process = this.pollBlockProcess(world);
+                } else if(this.request != null) {
+                    this.request.cancel();
+                    this.request = null;
                 }
 
             }
             if (this.process != null) {
                 return this.process.active();
             }
+        } else {
+            //No longer hungry, so any block search still in progress isn't needed
+            this.cancelBlockSearch();
         }
         return false;
     }
 
+    private void cancelBlockSearch() {
+        if(this.request != null) {
+            this.request.cancel();
+            this.request = null;
+        }
+        this.blockCandidates.clear();
+    }
+
+    //Block candidates are checked one at a time through the shared path requests, so finding a reachable block can take a few calls
+    private FeedingProcess pollBlockProcess(World world) {
+        if(this.request == null) {
+            this.blockCandidates.clear();
+            this.blockCandidates.addAll(FoodSourceIndex.get(world).getNearestFood(this.metabolism.getDiet(), this.entityLiving.getPosition(), this.metabolism.getFoodSmellDistance(), MAX_BLOCK_CANDIDATES));
+            if(this.blockCandidates.isEmpty()) {
+                return null;
+            }
+            this.request = PathRequestService.get(world).request(this.entityLiving, this.blockCandidates.get(0));
+        }
+        while (this.request.isDone()) {
+            Path path = this.request.getPath();
+            BlockPos pos = this.blockCandidates.remove(0);
+            this.request = null;
+            if(path != null) {
+                this.path = path;
+                return new BlockStateProcess(world, pos);
+            }
+            if(this.blockCandidates.isEmpty()) {
+                return null;
+            }
+            this.request = PathRequestService.get(world).request(this.entityLiving, this.blockCandidates.get(0));
+        }
+        return null;
+    }
+
     @Override
     public void updateTask() {
         if(this.process != null) {
@@ -108,7 +133,11 @@ public class FeedingAI extends EntityAIBase {
                     this.metabolism.setWater(this.metabolism.getWater() + result.getWater());
                     this.eatingTicks = 0;
                 }
-            } else {
+            } else if(this.path != null) {
+                this.entityLiving.getNavigator().setPath(this.path, 0.4D);
+                this.path = null;
+            } else if(!(this.process instanceof BlockStateProcess) || this.entityLiving.getNavigator().noPath()) {
+                //Blocks don't move, so the requested path is followed rather than finding a new path each tick
                 this.entityLiving.getNavigator().tryMoveToXYZ(position.x, position.y, position.z, 0.4D);
             }
         }
@@ -123,7 +152,9 @@ public class FeedingAI extends EntityAIBase {
     @Override
     public void resetTask() {
         this.process = null;
+        this.path = null;
         this.eatingTicks = 0;
+        this.cancelBlockSearch();
         this.access.get(EntityComponentTypes.ANIMATION).ifPresent(a -> a.stopAnimation(this.entityLiving, MetabolismComponent.METABOLISM_CHANNEL));
     }
 
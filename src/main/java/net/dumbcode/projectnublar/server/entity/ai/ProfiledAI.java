@@ -0,0 +1,99 @@
+package net.dumbcode.projectnublar.server.entity.ai;
+
+import net.dumbcode.projectnublar.server.profiler.ProfilerSection;
+import net.dumbcode.projectnublar.server.profiler.ProjectNublarProfiler;
+import net.minecraft.entity.ai.EntityAIBase;
+
+/**
+ * Wraps an AI task, timing each of its methods with the {@link ProjectNublarProfiler}.
+ * The sections are shared between every task of the same class.
+ */
+public class ProfiledAI extends EntityAIBase {
+
+    private final EntityAIBase delegate;
+
+    private final ProfilerSection shouldExecute;
+    private final ProfilerSection shouldContinueExecuting;
+    private final ProfilerSection startExecuting;
+    private final ProfilerSection updateTask;
+    private final ProfilerSection resetTask;
+
+    private ProfiledAI(EntityAIBase delegate) {
+        this.delegate = delegate;
+        String name = "ai/" + delegate.getClass().getSimpleName() + "/";
+        this.shouldExecute = ProjectNublarProfiler.section(name + "shouldExecute");
+        this.shouldContinueExecuting = ProjectNublarProfiler.section(name + "shouldContinueExecuting");
+        this.startExecuting = ProjectNublarProfiler.section(name + "startExecuting");
+        this.updateTask = ProjectNublarProfiler.section(name + "updateTask");
+        this.resetTask = ProjectNublarProfiler.section(name + "resetTask");
+    }
+
+    public static EntityAIBase wrap(EntityAIBase ai) {
+        return new ProfiledAI(ai);
+    }
+
+    @Override
+    public boolean shouldExecute() {
+        long start = this.shouldExecute.start();
+        try {
+            return this.delegate.shouldExecute();
+        } finally {
+            this.shouldExecute.stop(start);
+        }
+    }
+
+    @Override
+    public boolean shouldContinueExecuting() {
+        long start = this.shouldContinueExecuting.start();
+        try {
+            return this.delegate.shouldContinueExecuting();
+        } finally {
+            this.shouldContinueExecuting.stop(start);
+        }
+    }
+
+    @Override
+    public boolean isInterruptible() {
+        return this.delegate.isInterruptible();
+    }
+
+    @Override
+    public void startExecuting() {
+        long start = this.startExecuting.start();
+        try {
+            this.delegate.startExecuting();
+        } finally {
+            this.startExecuting.stop(start);
+        }
+    }
+
+    @Override
+    public void resetTask() {
+        long start = this.resetTask.start();
+        try {
+            this.delegate.resetTask();
+        } finally {
+            this.resetTask.stop(start);
+        }
+    }
+
+    @Override
+    public void updateTask() {
+        long start = this.updateTask.start();
+        try {
+            this.delegate.updateTask();
+        } finally {
+            this.updateTask.stop(start);
+        }
+    }
+
+    @Override
+    public void setMutexBits(int mutexBitsIn) {
+        this.delegate.setMutexBits(mutexBitsIn);
+    }
+
+    @Override
+    public int getMutexBits() {
+        return this.delegate.getMutexBits();
+    }
+}
@@ -11,37 +11,77 @@ import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.*;
 import net.minecraftforge.common.util.Constants;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 
+/**
+ * The blocks, items and entities an entity can eat. <br>
+ * Items are indexed by their item, so only the entries for the same item need to be compared, and the result for each entity class
+ * is worked out once, the first time an entity of that class is looked up.
+ */
 public class FeedingDiet {
-    private final Map<IBlockState, FeedingResult> blocks = new HashMap<>();
+    private final Map<IBlockState, FeedingResult> blocks = new IdentityHashMap<>();
     private final Map<ItemStack, FeedingResult> items = new HashMap<>();
     private final Map<Class<? extends Entity>, FeedingResult> entities = new HashMap<>();
 
+    private final Set<IBlockState> blockStates = Collections.unmodifiableSet(this.blocks.keySet());
+    private final Map<Item, List<ItemStack>> itemIndex = new HashMap<>();
+    private ClassValue<Optional<FeedingResult>> entityResults = this.createEntityResults();
+
     public Optional<FeedingResult> getResult(IBlockState state) {
         return Optional.ofNullable(this.blocks.get(state));
     }
 
+    /**
+     * @return all the block states this diet can eat
+     */
+    public Set<IBlockState> getBlockStates() {
+        return this.blockStates;
+    }
+
     public Optional<FeedingResult> getResult(ItemStack item) {
-        for (Map.Entry<ItemStack, FeedingResult> entry : this.items.entrySet()) {
-            if(entry.getKey().isItemEqual(item) && ItemStackUtils.compareControlledNbt(entry.getKey().getTagCompound(), item.getTagCompound())) {
-                return Optional.of(entry.getValue());
+        if(item.isEmpty()) {
+            return Optional.empty();
+        }
+        List<ItemStack> stacks = this.itemIndex.get(item.getItem());
+        if(stacks != null) {
+            for (ItemStack stack : stacks) {
+                //Only compare the nbt if the entry has nbt to compare against
+                if(stack.getMetadata() == item.getMetadata() && (stack.getTagCompound() == null || ItemStackUtils.compareControlledNbt(stack.getTagCompound(), item.getTagCompound()))) {
+                    return Optional.of(this.items.get(stack));
+                }
             }
         }
         return Optional.empty();
     }
 
     public Optional<FeedingResult> getResult(Entity entity) {
-        Class clazz = entity.getClass();
-        while(clazz != Entity.class) {
-            if(this.entities.containsKey(clazz)) {
-                return Optional.of(this.entities.get(clazz));
+        return this.entityResults.get(entity.getClass());
+    }
+
+    private ClassValue<Optional<FeedingResult>> createEntityResults() {
+        return new ClassValue<Optional<FeedingResult>>() {
+            @Override
+            protected Optional<FeedingResult> computeValue(Class<?> type) {
+                Class<?> clazz = type;
+                while(clazz != Entity.class && clazz != null) {
+                    if(FeedingDiet.this.entities.containsKey(clazz)) {
+                        return Optional.of(FeedingDiet.this.entities.get(clazz));
+                    }
+                    clazz = clazz.getSuperclass();
+                }
+                return Optional.empty();
             }
-            clazz = clazz.getSuperclass();
-        }
-        return Optional.empty();
+        };
+    }
+
+    private void addItem(ItemStack stack, FeedingResult result) {
+        this.items.put(stack, result);
+        this.itemIndex.computeIfAbsent(stack.getItem(), i -> new ArrayList<>()).add(stack);
+    }
+
+    //Callers need to reset the memoized results with createEntityResults once they're done adding
+    private void addEntity(Class<? extends Entity> clazz, FeedingResult result) {
+        this.entities.put(clazz, result);
     }
 
     public FeedingDiet add(int food, int water, IBlockState... states) {
@@ -62,7 +102,7 @@ public class FeedingDiet {
     public final FeedingDiet add(int food, int water, ItemStack... stackPredicates) {
         FeedingResult result = new FeedingResult(food, water);
         for (ItemStack stack : stackPredicates) {
-            this.items.put(stack, result);
+            this.addItem(stack, result);
         }
         return this;
     }
@@ -70,7 +110,7 @@ public class FeedingDiet {
     public FeedingDiet add(int food, int water, Item... items) {
         FeedingResult result = new FeedingResult(food, water);
         for (Item item : items) {
-            this.items.put(new ItemStack(item), result);
+            this.addItem(new ItemStack(item), result);
         }
         return this;
     }
@@ -79,8 +119,10 @@ public class FeedingDiet {
     public final FeedingDiet add(int food, int water, Class<? extends Entity>... entities) {
         FeedingResult result = new FeedingResult(food, water);
         for (Class<? extends Entity> aClass : entities) {
-            this.entities.put(aClass, result);
+            this.addEntity(aClass, result);
         }
+        //The memoized results may now be wrong, so start over
+        this.entityResults = this.createEntityResults();
         return this;
     }
 
@@ -119,6 +161,7 @@ public class FeedingDiet {
     public void fromNBT(NBTTagCompound nbt) {
         this.blocks.clear();
         this.items.clear();
+        this.itemIndex.clear();
         this.entities.clear();
 
         for (NBTBase base : nbt.getTagList("blocks", Constants.NBT.TAG_COMPOUND)) {
@@ -127,14 +170,14 @@ public class FeedingDiet {
         }
         for (NBTBase base : nbt.getTagList("items", Constants.NBT.TAG_COMPOUND)) {
             NBTTagCompound compound = (NBTTagCompound) base;
-            this.items.put(new ItemStack(compound.getCompoundTag("itemstack")), FeedingResult.readFromNbt(compound.getCompoundTag("result")));
+            this.addItem(new ItemStack(compound.getCompoundTag("itemstack")), FeedingResult.readFromNbt(compound.getCompoundTag("result")));
         }
         for (NBTBase base : nbt.getTagList("entities", Constants.NBT.TAG_COMPOUND)) {
             NBTTagCompound compound = (NBTTagCompound) base;
             try {
                 Class<?> clazz = Class.forName(compound.getString("classname"));
                 if(Entity.class.isAssignableFrom(clazz)) {
-                    this.entities.put((Class<? extends Entity>) clazz, FeedingResult.readFromNbt(compound.getCompoundTag("result")));
+                    this.addEntity((Class<? extends Entity>) clazz, FeedingResult.readFromNbt(compound.getCompoundTag("result")));
                 } else {
                     DumbLibrary.getLogger().warn("Skipping {} as it does not extend Entity", clazz);
                 }
@@ -142,5 +185,6 @@ public class FeedingDiet {
                 DumbLibrary.getLogger().warn("Skipping class {} as it does not exist", ((NBTTagString) base).getString());
             }
         }
+        this.entityResults = this.createEntityResults();
     }
 }
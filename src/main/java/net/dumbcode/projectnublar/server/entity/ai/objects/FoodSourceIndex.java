@@ -0,0 +1,312 @@
+package net.dumbcode.projectnublar.server.entity.ai.objects;
+
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.utils.BlockChangeListener;
+import net.minecraft.block.material.Material;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.storage.ExtendedBlockStorage;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A per chunk index of the water surface positions, and of the positions of every block state that a {@link FeedingDiet} can eat. <br>
+ * Chunks are indexed the first time they're queried, and are then kept up to date with block changes.
+ * This means entities looking for food or water can share one index, rather than each scanning the world around them.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class FoodSourceIndex {
+
+    private static final Map<World, FoodSourceIndex> INDEXES = new WeakHashMap<>();
+
+    //Every block state that is indexed. When a diet with new states is queried, the indexed chunks are thrown away so they can be rebuilt with the new states.
+    private static final Set<IBlockState> INDEXED_STATES = new HashSet<>();
+
+    private final World world;
+    private final Map<Long, ChunkSources> chunks = new HashMap<>();
+
+    private FoodSourceIndex(World world) {
+        this.world = world;
+    }
+
+    public static FoodSourceIndex get(World world) {
+        return INDEXES.computeIfAbsent(world, FoodSourceIndex::new);
+    }
+
+    /**
+     * Gets the nearest water positions with air above them, around the center.
+     * @param center the center of the search
+     * @param rangeXZ the range on the x and z axis
+     * @param rangeY the range on the y axis
+     * @param limit the max amount of positions to return
+     * @return up to {@code limit} positions, ordered nearest first
+     */
+    public List<BlockPos> getNearestWater(BlockPos center, int rangeXZ, int rangeY, int limit) {
+        return this.getNearest(center, rangeXZ, rangeY, limit, sources -> sources.water, state -> true);
+    }
+
+    /**
+     * Gets the nearest positions that the diet can eat, around the center.
+     * @param diet the diet to get the food for
+     * @param center the center of the search
+     * @param range the range on every axis
+     * @param limit the max amount of positions to return
+     * @return up to {@code limit} positions, ordered nearest first
+     */
+    public List<BlockPos> getNearestFood(FeedingDiet diet, BlockPos center, int range, int limit) {
+        Set<IBlockState> states = diet.getBlockStates();
+        if(states.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if(!INDEXED_STATES.containsAll(states)) {
+            INDEXED_STATES.addAll(states);
+            INDEXES.values().forEach(index -> index.chunks.clear());
+        }
+        return this.getNearest(center, range, range, limit, sources -> sources.food, states::contains);
+    }
+
+    //The positions are only unpacked into BlockPos objects for the nearest few that are returned
+    private List<BlockPos> getNearest(BlockPos center, int rangeXZ, int rangeY, int limit, Function<ChunkSources, PackedStates> getter, Predicate<IBlockState> predicate) {
+        long[] nearest = new long[limit];
+        long[] distances = new long[limit];
+        int found = 0;
+        for (int cx = (center.getX() - rangeXZ) >> 4; cx <= (center.getX() + rangeXZ) >> 4; cx++) {
+            for (int cz = (center.getZ() - rangeXZ) >> 4; cz <= (center.getZ() + rangeXZ) >> 4; cz++) {
+                ChunkSources sources = this.getSources(cx, cz);
+                if(sources == null) {
+                    continue;
+                }
+                PackedStates states = getter.apply(sources);
+                for (int slot = 0; slot < states.capacity(); slot++) {
+                    IBlockState state = states.getState(slot);
+                    if(state == null) {
+                        continue;
+                    }
+                    long packed = states.getPosition(slot);
+                    long dx = unpackX(packed) - center.getX();
+                    long dy = unpackY(packed) - center.getY();
+                    long dz = unpackZ(packed) - center.getZ();
+                    if(Math.abs(dx) > rangeXZ || Math.abs(dz) > rangeXZ || Math.abs(dy) > rangeY || !predicate.test(state)) {
+                        continue;
+                    }
+                    long distance = dx * dx + dy * dy + dz * dz;
+                    if(found == limit && distance >= distances[limit - 1]) {
+                        continue;
+                    }
+                    //Insert into the sorted nearest positions, dropping the furthest if it's full
+                    int i = found < limit ? found++ : limit - 1;
+                    while (i > 0 && distances[i - 1] > distance) {
+                        nearest[i] = nearest[i - 1];
+                        distances[i] = distances[i - 1];
+                        i--;
+                    }
+                    nearest[i] = packed;
+                    distances[i] = distance;
+                }
+            }
+        }
+        List<BlockPos> out = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            out.add(BlockPos.fromLong(nearest[i]));
+        }
+        return out;
+    }
+
+    //The same as BlockPos#fromLong, without creating the BlockPos
+    private static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    private static int unpackY(long packed) {
+        return (int) (packed << 26 >> 52);
+    }
+
+    private static int unpackZ(long packed) {
+        return (int) (packed << 38 >> 38);
+    }
+
+    //Gets the sources for the chunk, indexing the chunk if needed. Returns null if the chunk is not loaded, as queries should never load chunks.
+    private ChunkSources getSources(int chunkX, int chunkZ) {
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        ChunkSources sources = this.chunks.get(key);
+        if(sources == null) {
+            Chunk chunk = this.world.getChunkProvider().getLoadedChunk(chunkX, chunkZ);
+            if(chunk == null) {
+                return null;
+            }
+            sources = new ChunkSources();
+            BlockPos.MutableBlockPos pos = new BlockPos.MutableBlockPos();
+            for (ExtendedBlockStorage storage : chunk.getBlockStorageArray()) {
+                if(storage == Chunk.NULL_BLOCK_STORAGE || storage.isEmpty()) {
+                    continue;
+                }
+                for (int y = 0; y < 16; y++) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int x = 0; x < 16; x++) {
+                            IBlockState state = storage.get(x, y, z);
+                            if(INDEXED_STATES.contains(state) || state.getMaterial() == Material.WATER) {
+                                this.update(sources, pos.setPos((chunkX << 4) + x, storage.getYLocation() + y, (chunkZ << 4) + z), state);
+                            }
+                        }
+                    }
+                }
+            }
+            this.chunks.put(key, sources);
+        }
+        return sources;
+    }
+
+    private void update(ChunkSources sources, BlockPos pos, IBlockState state) {
+        long key = pos.toLong();
+        if(INDEXED_STATES.contains(state)) {
+            sources.food.put(key, state);
+        } else {
+            sources.food.remove(key);
+        }
+        if(state.getMaterial() == Material.WATER && this.world.isAirBlock(pos.up())) {
+            sources.water.put(key, state);
+        } else {
+            sources.water.remove(key);
+        }
+    }
+
+    private void onBlockChanged(BlockPos pos, IBlockState newState) {
+        ChunkSources sources = this.chunks.get(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4));
+        if(sources != null) {
+            this.update(sources, pos, newState);
+            //The block below may have become, or stopped being, a water surface
+            if(pos.getY() > 0) {
+                BlockPos down = pos.down();
+                this.update(sources, down, this.world.getBlockState(down));
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldLoad(WorldEvent.Load event) {
+        World world = event.getWorld();
+        if(!world.isRemote) {
+            world.addEventListener(new BlockChangeListener((w, pos, oldState, newState) -> {
+                FoodSourceIndex index = INDEXES.get(w);
+                if(index != null) {
+                    index.onBlockChanged(pos, newState);
+                }
+            }));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        INDEXES.remove(event.getWorld());
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        FoodSourceIndex index = INDEXES.get(event.getWorld());
+        if(index != null) {
+            index.chunks.remove(ChunkPos.asLong(event.getChunk().x, event.getChunk().z));
+        }
+    }
+
+    private static class ChunkSources {
+        private final PackedStates food = new PackedStates();
+        private final PackedStates water = new PackedStates();
+    }
+
+    /**
+     * Block positions, packed as with {@link BlockPos#toLong()}, mapped to the state at that position.
+     * An open addressing hash table with linear probing, so positions aren't boxed. Empty slots have a null state.
+     */
+    private static class PackedStates {
+        private long[] positions = new long[16];
+        private IBlockState[] states = new IBlockState[16];
+        private int size;
+
+        private int capacity() {
+            return this.states.length;
+        }
+
+        private long getPosition(int slot) {
+            return this.positions[slot];
+        }
+
+        @Nullable
+        private IBlockState getState(int slot) {
+            return this.states[slot];
+        }
+
+        private void put(long pos, IBlockState state) {
+            int slot = this.find(pos);
+            if(this.states[slot] == null) {
+                if((this.size + 1) * 4 > this.states.length * 3) {
+                    this.resize(this.states.length * 2);
+                    slot = this.find(pos);
+                }
+                this.positions[slot] = pos;
+                this.size++;
+            }
+            this.states[slot] = state;
+        }
+
+        private void remove(long pos) {
+            int slot = this.find(pos);
+            if(this.states[slot] == null) {
+                return;
+            }
+            this.states[slot] = null;
+            this.size--;
+            //Shift the entries after the removed one back, so lookups don't stop early at the gap
+            int mask = this.states.length - 1;
+            int next = (slot + 1) & mask;
+            while (this.states[next] != null) {
+                int home = hash(this.positions[next]) & mask;
+                if(((next - home) & mask) >= ((next - slot) & mask)) {
+                    this.positions[slot] = this.positions[next];
+                    this.states[slot] = this.states[next];
+                    this.states[next] = null;
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        //Gets the slot holding the position, or the empty slot it would go into
+        private int find(long pos) {
+            int mask = this.states.length - 1;
+            int slot = hash(pos) & mask;
+            while (this.states[slot] != null && this.positions[slot] != pos) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize(int capacity) {
+            long[] positions = this.positions;
+            IBlockState[] states = this.states;
+            this.positions = new long[capacity];
+            this.states = new IBlockState[capacity];
+            for (int i = 0; i < states.length; i++) {
+                if(states[i] != null) {
+                    int slot = this.find(positions[i]);
+                    this.positions[slot] = positions[i];
+                    this.states[slot] = states[i];
+                }
+            }
+        }
+
+        private static int hash(long pos) {
+            long h = pos * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
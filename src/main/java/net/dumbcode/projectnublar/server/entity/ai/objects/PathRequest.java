@@ -0,0 +1,52 @@
+package net.dumbcode.projectnublar.server.entity.ai.objects;
+
+import lombok.Getter;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+
+import javax.annotation.Nullable;
+
+/**
+ * A request for a path, submitted to the {@link PathRequestService}. AIs should keep the request, and poll {@link #isDone()} each tick.
+ */
+public class PathRequest {
+
+    @Getter
+    private final EntityLiving entity;
+    @Getter
+    private final BlockPos goal;
+
+    @Getter
+    private boolean done;
+    @Getter
+    private boolean cancelled;
+    private PathPoint[] points;
+
+    PathRequest(EntityLiving entity, BlockPos goal) {
+        this.entity = entity;
+        this.goal = goal;
+    }
+
+    void complete(@Nullable PathPoint[] points) {
+        this.points = points;
+        this.done = true;
+    }
+
+    /**
+     * Cancels this request. If every request waiting on the same path is cancelled, the path won't be computed.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Gets the computed path. Each call creates a new path, as paths track how far along them the entity is.
+     * @return the path, or null if the request isn't done, or no path could be found
+     */
+    @Nullable
+    public Path getPath() {
+        return this.done && this.points != null ? new Path(this.points) : null;
+    }
+}
@@ -0,0 +1,133 @@
+package net.dumbcode.projectnublar.server.entity.ai.objects;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.ProjectNublarConfig;
+import net.minecraft.entity.EntityLiving;
+import net.minecraft.pathfinding.Path;
+import net.minecraft.pathfinding.PathPoint;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * A per world queue of path requests from the dinosaur AIs. <br>
+ * Requests are computed at the end of the world tick, until {@link ProjectNublarConfig.Pathfinding#budgetMillis} is used up,
+ * with the rest waiting for the next tick. Requests from entities of the same type starting in the same small region
+ * and heading to the same goal, such as a herd going to the same water, share one computation, and the result is
+ * cached for {@link ProjectNublarConfig.Pathfinding#cacheTicks} ticks for any later requests.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class PathRequestService {
+
+    //Start positions are grouped into 4x4x4 regions
+    private static final int REGION_SHIFT = 2;
+
+    private static final Map<World, PathRequestService> SERVICES = new WeakHashMap<>();
+
+    private final World world;
+    private final Map<PathKey, List<PathRequest>> pending = new LinkedHashMap<>();
+    private final Map<PathKey, CachedPath> cache = new HashMap<>();
+
+    private PathRequestService(World world) {
+        this.world = world;
+    }
+
+    public static PathRequestService get(World world) {
+        return SERVICES.computeIfAbsent(world, PathRequestService::new);
+    }
+
+    /**
+     * Requests a path for the entity to the goal. If the path is cached, the returned request is already done.
+     * @param entity the entity to path
+     * @param goal the position to path to
+     * @return the request, to be polled for the path
+     */
+    public PathRequest request(EntityLiving entity, BlockPos goal) {
+        PathRequest request = new PathRequest(entity, goal);
+        PathKey key = new PathKey(entity.getClass(), Math.round(entity.width * 4F), entity.getPosition().getX() >> REGION_SHIFT, entity.getPosition().getY() >> REGION_SHIFT, entity.getPosition().getZ() >> REGION_SHIFT, goal.toLong());
+        CachedPath cached = this.cache.get(key);
+        if(cached != null && this.world.getTotalWorldTime() - cached.time <= ProjectNublarConfig.PATHFINDING.cacheTicks) {
+            request.complete(cached.points);
+        } else {
+            this.pending.computeIfAbsent(key, k -> new ArrayList<>()).add(request);
+        }
+        return request;
+    }
+
+    private void update() {
+        long time = this.world.getTotalWorldTime();
+        this.cache.values().removeIf(cached -> time - cached.time > ProjectNublarConfig.PATHFINDING.cacheTicks);
+
+        long end = System.nanoTime() + ProjectNublarConfig.PATHFINDING.budgetMillis * 1_000_000L;
+        Iterator<Map.Entry<PathKey, List<PathRequest>>> iterator = this.pending.entrySet().iterator();
+        while (iterator.hasNext() && System.nanoTime() < end) {
+            Map.Entry<PathKey, List<PathRequest>> entry = iterator.next();
+            iterator.remove();
+
+            List<PathRequest> requests = entry.getValue();
+            requests.removeIf(request -> request.isCancelled() || request.getEntity().isDead || request.getEntity().world != this.world);
+            if(requests.isEmpty()) {
+                continue;
+            }
+            PathRequest first = requests.get(0);
+            PathPoint[] points = toPoints(first.getEntity().getNavigator().getPathToPos(first.getGoal()));
+            this.cache.put(entry.getKey(), new CachedPath(points, time));
+            for (PathRequest request : requests) {
+                request.complete(points);
+            }
+        }
+    }
+
+    @Nullable
+    private static PathPoint[] toPoints(@Nullable Path path) {
+        if(path == null) {
+            return null;
+        }
+        PathPoint[] points = new PathPoint[path.getCurrentPathLength()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = path.getPathPointFromIndex(i);
+        }
+        return points;
+    }
+
+    @SubscribeEvent
+    public static void onWorldTick(TickEvent.WorldTickEvent event) {
+        if(event.phase == TickEvent.Phase.END && !event.world.isRemote) {
+            PathRequestService service = SERVICES.get(event.world);
+            if(service != null) {
+                service.update();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        SERVICES.remove(event.getWorld());
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class PathKey {
+        private final Class<?> entityClass;
+        private final int width;
+        private final int regionX;
+        private final int regionY;
+        private final int regionZ;
+        private final long goal;
+    }
+
+    @RequiredArgsConstructor
+    private static class CachedPath {
+        @Nullable
+        private final PathPoint[] points;
+        private final long time;
+    }
+}
@@ -40,6 +40,12 @@ public class AgeComponent extends EntityComponent implements RenderLocationCompo
 
     @Setter private float percentageStage = 1F;
 
+    //The stages that can be reached by aging, and the age (in ticks) each one of them ends at. The last stage never ends.
+    //Compiled from the ordered ages by compileTimeline, so the current stage can be looked up with a binary search.
+    private AgeStage[] timeline = new AgeStage[0];
+    private int[] stageEnds = new int[0];
+    private int timelineIndex = -1;
+
     public boolean setRawStage(String stage) {
         for (AgeStage orderedAge : this.orderedAges) {
             if(stage.equals(orderedAge.getName())) {
@@ -51,6 +57,68 @@ public class AgeComponent extends EntityComponent implements RenderLocationCompo
 
     }
 
+    /**
+     * Compiles the ordered ages into the timeline. This needs to be called whenever the ordered ages change.
+     */
+    public void compileTimeline() {
+        List<AgeStage> stages = Lists.newArrayList();
+        List<Integer> ends = Lists.newArrayList();
+        int total = 0;
+        for (AgeStage age : this.orderedAges) {
+            stages.add(age);
+            if(age.getTime() == -1) {
+                break;
+            }
+            total += age.getTime();
+            ends.add(total);
+        }
+        this.timeline = stages.toArray(new AgeStage[0]);
+        this.stageEnds = new int[this.timeline.length];
+        for (int i = 0; i < this.stageEnds.length; i++) {
+            this.stageEnds[i] = i == this.stageEnds.length - 1 ? Integer.MAX_VALUE : ends.get(i);
+        }
+        this.timelineIndex = -1;
+    }
+
+    /**
+     * Updates the current stage and the percentage through that stage from the age in ticks.
+     * @return true if the stage has changed
+     */
+    public boolean updateStage() {
+        AgeStage start = this.stage;
+        int index = this.timelineIndex;
+        if(this.ageInTicks > 0 && this.timeline.length != 0) {
+            //Only search for the stage when the age has moved out of the current one
+            if(index < 0 || this.stageEnds[index] < this.ageInTicks || (index > 0 && this.stageEnds[index - 1] >= this.ageInTicks)) {
+                index = this.findTimelineIndex(this.ageInTicks);
+                this.timelineIndex = index;
+            }
+            this.stage = this.timeline[index];
+            int stageStart = index == 0 ? 0 : this.stageEnds[index - 1];
+            this.percentageStage = (this.ageInTicks - stageStart) / (float) this.stage.getTime();
+        } else if(this.stage == null) {
+            this.percentageStage = 0F;
+        } else {
+            this.percentageStage = (this.ageInTicks + this.stage.getTime()) / (float) this.stage.getTime();
+        }
+        return start != this.stage;
+    }
+
+    //Finds the first stage that ends at or after the age
+    private int findTimelineIndex(int age) {
+        int low = 0;
+        int high = this.stageEnds.length - 1;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(this.stageEnds[mid] < age) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     public void resetStageTo(String stage) {
         if (this.setRawStage(stage)) {
             this.ageInTicks = 0;
@@ -96,6 +164,7 @@ public class AgeComponent extends EntityComponent implements RenderLocationCompo
             this.orderedAges.add(new AgeStage(ageTag.getString("Name"), ageTag.getInteger("Time"), ageTag.getString("ModelStage")));
         }
 
+        this.compileTimeline();
         this.setRawStage(compound.getString("CurrentAge"));
         super.deserialize(compound);
     }
@@ -120,6 +189,7 @@ public class AgeComponent extends EntityComponent implements RenderLocationCompo
         for (int i = 0; i < size; i++) {
             this.orderedAges.add(new AgeStage(ByteBufUtils.readUTF8String(buf), buf.readInt(), ByteBufUtils.readUTF8String(buf)));
         }
+        this.compileTimeline();
         this.stage = this.orderedAges.get(buf.readInt());
 
         this.ageInTicks = buf.readInt();
@@ -176,7 +246,7 @@ public class AgeComponent extends EntityComponent implements RenderLocationCompo
                 }
                 component.ageInTicks += age.getTime();
             }
-
+            component.compileTimeline();
         }
 
         public Storage addStage(AgeStage stage) {
@@ -21,10 +21,13 @@ import net.dumbcode.dumblibrary.server.utils.IOCollectors;
 import net.dumbcode.dumblibrary.server.utils.StreamUtils;
 import net.dumbcode.projectnublar.server.dinosaur.eggs.DinosaurEggType;
 import net.dumbcode.projectnublar.server.entity.component.impl.additionals.TrackingDataComponent;
+import net.dumbcode.projectnublar.server.entity.system.impl.DinosaurEggLayingSystem;
 import net.dumbcode.projectnublar.server.entity.tracking.TrackingDataInformation;
 import net.dumbcode.projectnublar.server.entity.tracking.info.PregnancyInformation;
+import net.minecraft.entity.Entity;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.JsonUtils;
+import net.minecraft.world.World;
 import net.minecraftforge.common.util.Constants;
 
 import java.util.*;
@@ -47,20 +50,23 @@ public class DinosaurEggLayingComponent extends EntityComponent implements Breed
 
     @Override
     public void onBreed(ComponentAccess self, ComponentAccess other) {
-        if(!self.getOrExcept(EntityComponentTypes.GENDER).male) {
+        if(self instanceof Entity && !self.getOrExcept(EntityComponentTypes.GENDER).male) {
+            Entity entity = (Entity) self;
             Optional<GeneticComponent> thisGenetics = self.get(EntityComponentTypes.GENETICS);
             Optional<GeneticComponent> otherGenetics = other.get(EntityComponentTypes.GENETICS);
             if(thisGenetics.isPresent() && otherGenetics.isPresent()) {
                 int pregnancyTime = (int) this.ticksPregnancy.getRandomValue(RANDOM);
                 int eggs = (int) this.eggAmount.getRandomValue(RANDOM);
                 for (int i = 0; i < eggs; i++) {
-                    this.heldEggs.add(new EggEntry(
+                    EggEntry egg = new EggEntry(
                         this.eggModifier.getRandomValue(RANDOM),
                         this.eggTypes.get(RANDOM.nextInt(this.eggTypes.size())),
-                        pregnancyTime, //Set to 100 for debugging
+                        entity.world.getTotalWorldTime() + pregnancyTime, //Set to 100 for debugging
                         (int) this.ticksEggHatch.getRandomValue(RANDOM),
                         this.generateCombinedGenetics(thisGenetics.get(), otherGenetics.get())
-                    ));
+                    );
+                    this.heldEggs.add(egg);
+                    DinosaurEggLayingSystem.scheduleEgg(entity, this, egg, pregnancyTime);
                 }
             }
         }
@@ -120,7 +126,10 @@ public class DinosaurEggLayingComponent extends EntityComponent implements Breed
 
     @Override
     public void addTrackingData(ComponentAccess access, Consumer<Supplier<TrackingDataInformation>> consumer) {
-        consumer.accept(() -> new PregnancyInformation(this.heldEggs.stream().mapToInt(EggEntry::getTicksLeft).toArray()));
+        if(access instanceof Entity) {
+            World world = ((Entity) access).world;
+            consumer.accept(() -> new PregnancyInformation(this.heldEggs.stream().mapToInt(egg -> egg.getTicksLeft(world)).toArray()));
+        }
     }
 
     @Data
@@ -128,9 +137,14 @@ public class DinosaurEggLayingComponent extends EntityComponent implements Breed
     public static class EggEntry {
         private final float randomScaleAdjustment;
         private final DinosaurEggType type;
-        private int ticksLeft;
+        //The total world time the egg is laid at
+        private final long layTime;
         private final int eggTicks;
         private final List<GeneticEntry<?>> combinedGenetics;
+
+        public int getTicksLeft(World world) {
+            return (int) Math.max(this.layTime - world.getTotalWorldTime(), 0);
+        }
     }
 
     @Getter
@@ -1,6 +1,7 @@
 package net.dumbcode.projectnublar.server.entity.component.impl;
 
 import com.google.gson.JsonObject;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -13,6 +14,7 @@ import net.dumbcode.dumblibrary.server.ecs.component.additionals.CanBreedCompone
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.ai.DrinkingAI;
 import net.dumbcode.projectnublar.server.entity.ai.FeedingAI;
+import net.dumbcode.projectnublar.server.entity.ai.ProfiledAI;
 import net.dumbcode.projectnublar.server.entity.ai.objects.FeedingDiet;
 import net.dumbcode.projectnublar.server.entity.component.impl.additionals.MoodChangingComponent;
 import net.dumbcode.projectnublar.server.entity.component.impl.additionals.TrackingDataComponent;
@@ -20,6 +22,7 @@ import net.dumbcode.projectnublar.server.entity.mood.MoodReason;
 import net.dumbcode.projectnublar.server.entity.mood.MoodReasons;
 import net.dumbcode.projectnublar.server.entity.tracking.TrackingDataInformation;
 import net.dumbcode.projectnublar.server.entity.tracking.info.MetabolismInformation;
+import net.dumbcode.projectnublar.server.utils.FloatSupplier;
 import net.minecraft.entity.EntityLiving;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.JsonUtils;
@@ -51,6 +54,24 @@ public class MetabolismComponent extends EntityComponent implements FinalizableC
     private int foodSmellDistance;
     private int hydrateAmountPerTick;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private Runnable markMoodDirty = () -> {};
+
+    public void setFood(float food) {
+        if(this.food != food) {
+            this.food = food;
+            this.markMoodDirty.run();
+        }
+    }
+
+    public void setWater(float water) {
+        if(this.water != water) {
+            this.water = water;
+            this.markMoodDirty.run();
+        }
+    }
+
     @Override
     public NBTTagCompound serialize(NBTTagCompound compound) {
         compound.setFloat("food", this.food);
@@ -90,14 +111,15 @@ public class MetabolismComponent extends EntityComponent implements FinalizableC
         this.foodSmellDistance = compound.getInteger("food_smell_distance");
 
         this.diet.fromNBT(compound.getCompoundTag("diet"));
+        this.markMoodDirty.run();
     }
 
     @Override
     public void finalizeComponent(ComponentAccess entity) {
         if(entity instanceof EntityLiving) {
             EntityLiving living = (EntityLiving) entity;
-            living.tasks.addTask(2, new FeedingAI(entity, (EntityLiving) entity, this));
-            living.tasks.addTask(2, new DrinkingAI(entity, (EntityLiving) entity, this));
+            living.tasks.addTask(2, ProfiledAI.wrap(new FeedingAI(entity, (EntityLiving) entity, this)));
+            living.tasks.addTask(2, ProfiledAI.wrap(new DrinkingAI(entity, (EntityLiving) entity, this)));
         }
     }
 
@@ -107,15 +129,17 @@ public class MetabolismComponent extends EntityComponent implements FinalizableC
     }
 
     @Override
-    public void applyMoods(BiConsumer<MoodReason, Supplier<Float>> acceptor) {
-        Supplier<Float> foodDiff = () -> (this.food / (float) this.maxFood.getValue()) * 4 - 2;
-        Supplier<Float> waterDiff = () -> (this.water / (float) this.maxWater.getValue()) * 4 - 2;
+    public void applyMoods(BiConsumer<MoodReason, FloatSupplier> acceptor, Runnable markDirty) {
+        this.markMoodDirty = markDirty;
+
+        FloatSupplier foodDiff = () -> (this.food / (float) this.maxFood.getValue()) * 4 - 2;
+        FloatSupplier waterDiff = () -> (this.water / (float) this.maxWater.getValue()) * 4 - 2;
 
-        acceptor.accept(MoodReasons.STARVED, () -> -MathHelper.clamp(foodDiff.get(), -2, 0));
-        acceptor.accept(MoodReasons.FULL, () -> MathHelper.clamp(foodDiff.get(), 0, 2));
+        acceptor.accept(MoodReasons.STARVED, () -> -MathHelper.clamp(foodDiff.getAsFloat(), -2, 0));
+        acceptor.accept(MoodReasons.FULL, () -> MathHelper.clamp(foodDiff.getAsFloat(), 0, 2));
 
-        acceptor.accept(MoodReasons.DEHYDRATED, () -> -MathHelper.clamp(waterDiff.get(), -2, 0));
-        acceptor.accept(MoodReasons.HYDRATED, () -> MathHelper.clamp(waterDiff.get(), 0, 2));
+        acceptor.accept(MoodReasons.DEHYDRATED, () -> -MathHelper.clamp(waterDiff.getAsFloat(), -2, 0));
+        acceptor.accept(MoodReasons.HYDRATED, () -> MathHelper.clamp(waterDiff.getAsFloat(), 0, 2));
 
     }
 
@@ -14,36 +14,69 @@ import net.dumbcode.projectnublar.server.entity.mood.MoodType;
 import net.dumbcode.projectnublar.server.entity.tracking.TrackingDataInformation;
 import net.dumbcode.projectnublar.server.entity.tracking.info.MoodInformation;
 
+import net.dumbcode.projectnublar.server.utils.FloatSupplier;
+import net.dumbcode.projectnublar.server.utils.FloatUnaryOperator;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 
+/**
+ * Holds the moods of an entity, made up from the mood reasons of its {@link MoodChangingComponent}s. <br>
+ * Moods are only recomputed after a component feeding them marks them as dirty, and the reasons shown
+ * on tracking tablets are only rebuilt when they're asked for.
+ */
 public class MoodComponent extends EntityComponent implements FinalizableComponent, TrackingDataComponent {
 
     @Getter
     private final Map<MoodType, MoodChangingEntry> entries = new HashMap<>();
 
+    //Whether any of the entries are dirty
+    private boolean dirty;
+
     @Override
     public void finalizeComponent(ComponentAccess entity) {
         this.entries.clear();
         for (EntityComponent component : entity.getAllComponents()) {
             if(component instanceof MoodChangingComponent) {
                 MoodChangingComponent mood = (MoodChangingComponent) component;
+                List<MoodChangingEntry> changed = new ArrayList<>();
                 mood.applyMoods((reason, amountSupplier) ->
-                    reason.getMoodTypes().forEach((moodType, modifier) ->
-                        this.entries.computeIfAbsent(moodType, MoodChangingEntry::new).add(reason, amountSupplier, modifier, mood::isDirty)
-                    )
+                    reason.getMoodTypes().forEach((moodType, modifier) -> {
+                        MoodChangingEntry entry = this.entries.computeIfAbsent(moodType, MoodChangingEntry::new);
+                        entry.add(reason, amountSupplier, modifier);
+                        if(!changed.contains(entry)) {
+                            changed.add(entry);
+                        }
+                    }), () -> {
+                        for (MoodChangingEntry entry : changed) {
+                            entry.dirty = true;
+                        }
+                        this.dirty = true;
+                    }
                 );
             }
         }
-        this.entries.values().forEach(MoodChangingEntry::recompile);
+        this.entries.values().forEach(entry -> entry.dirty = true);
+        this.dirty = true;
+    }
+
+    /**
+     * Recomputes the dirty moods, and runs their change callbacks.
+     * @param access the entity this component is on
+     */
+    public void updateMoods(ComponentAccess access) {
+        if(this.dirty) {
+            this.dirty = false;
+            for (MoodChangingEntry entry : this.entries.values()) {
+                entry.runIfDirty(access);
+            }
+        }
     }
 
     @Override
@@ -54,7 +87,7 @@ public class MoodComponent extends EntityComponent implements FinalizableCompone
                 boolean positive = entry.getNumber() > 0;
                 return new MoodInformation(
                     positive ? entry.type.getPositiveTranslationKey() : entry.type.getNegativeTranslationKey(),
-                    IndexedObject.sortIndex(positive ? entry.positiveReasons : entry.negativeReasons).stream().limit(3).collect(Collectors.toList())
+                    IndexedObject.sortIndex(entry.getReasons(positive)).stream().limit(3).collect(Collectors.toList())
                 );
             }
             return null;
@@ -67,7 +100,12 @@ public class MoodComponent extends EntityComponent implements FinalizableCompone
 
         private final List<MoodReasonEntry> entries = new ArrayList<>();
 
+        private boolean dirty;
+        @Getter
         private float number;
+        private float[] amounts = new float[0];
+
+        private boolean reasonsDirty;
         private final List<IndexedObject<String>> positiveReasons = new ArrayList<>();
         private final List<IndexedObject<String>> negativeReasons = new ArrayList<>();
 
@@ -76,49 +114,52 @@ public class MoodComponent extends EntityComponent implements FinalizableCompone
         }
 
         private void recompile() {
+            if(this.amounts.length != this.entries.size()) {
+                this.amounts = new float[this.entries.size()];
+            }
             this.number = 0;
-            this.positiveReasons.clear();
-            this.negativeReasons.clear();
-
-            for (MoodReasonEntry entry : this.entries) {
-                float amount = entry.modifier.apply(entry.amountSupplier.get());
+            for (int i = 0; i < this.amounts.length; i++) {
+                MoodReasonEntry entry = this.entries.get(i);
+                float amount = entry.modifier.applyAsFloat(entry.amountSupplier.getAsFloat());
+                this.amounts[i] = amount;
                 this.number += amount;
-                if(amount != 0) {
-                    (amount < 0 ? this.negativeReasons : this.positiveReasons).add(new IndexedObject<>(entry.reason.getTranslationKey(), Math.abs(amount)));
-                }
             }
+            this.reasonsDirty = true;
         }
 
-        private float getNumber() {
-            for (MoodReasonEntry entry : this.entries) {
-                if(entry.isDirty.getAsBoolean()) {
-                    this.recompile();
-                    break;
+        //The reasons are only needed for the tracking tablets, so are rebuilt from the last computed amounts when they're asked for
+        private List<IndexedObject<String>> getReasons(boolean positive) {
+            if(this.reasonsDirty) {
+                this.reasonsDirty = false;
+                this.positiveReasons.clear();
+                this.negativeReasons.clear();
+                for (int i = 0; i < this.amounts.length; i++) {
+                    float amount = this.amounts[i];
+                    if(amount != 0) {
+                        (amount < 0 ? this.negativeReasons : this.positiveReasons).add(new IndexedObject<>(this.entries.get(i).reason.getTranslationKey(), Math.abs(amount)));
+                    }
                 }
             }
-            return this.number;
+            return positive ? this.positiveReasons : this.negativeReasons;
         }
 
         public void runIfDirty(ComponentAccess access) {
-            for (MoodReasonEntry entry : this.entries) {
-                if(entry.isDirty.getAsBoolean()) {
-                    this.recompile();
-                    this.type.getOnChange().accept(access, this.number);
-                    break;
-                }
+            if(this.dirty) {
+                this.dirty = false;
+                this.recompile();
+                this.type.getOnChange().accept(access, this.number);
             }
         }
 
-        private void add(MoodReason reason, Supplier<Float> amountSupplier, UnaryOperator<Float> modifier, BooleanSupplier isDirty) {
-            this.entries.add(new MoodReasonEntry(reason, amountSupplier, modifier, isDirty));
+        private void add(MoodReason reason, FloatSupplier amountSupplier, FloatUnaryOperator modifier) {
+            this.entries.add(new MoodReasonEntry(reason, amountSupplier, modifier));
         }
     }
 
     @RequiredArgsConstructor
     private static class MoodReasonEntry {
         private final MoodReason reason;
-        private final Supplier<Float> amountSupplier;
-        private final UnaryOperator<Float> modifier;
-        private final BooleanSupplier isDirty;
+        private final FloatSupplier amountSupplier;
+        private final FloatUnaryOperator modifier;
     }
 }
@@ -3,24 +3,29 @@ package net.dumbcode.projectnublar.server.entity.component.impl;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
-import lombok.Value;
+import lombok.ToString;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponent;
 import net.dumbcode.projectnublar.server.ProjectNublar;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.EntityPart;
+import net.dumbcode.projectnublar.server.entity.EntityUUIDIndex;
 import net.minecraft.entity.Entity;
 import net.minecraft.nbt.NBTBase;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.nbt.NBTTagList;
+import net.minecraft.world.World;
 import net.minecraftforge.common.util.Constants;
 import net.minecraftforge.event.entity.EntityJoinWorldEvent;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.network.ByteBufUtils;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -52,7 +57,7 @@ public class MultipartEntityComponent extends EntityComponent {
                         EntityPart e = new EntityPart(entity, s);
                         e.setPosition(entity.posX, entity.posY, entity.posZ);
                         entity.world.spawnEntity(e);
-                        component.entities.add(new LinkedEntity(s, e.getUniqueID()));
+                        component.entities.add(new LinkedEntity(s, e));
                     }
                 }
             }
@@ -60,7 +65,7 @@ public class MultipartEntityComponent extends EntityComponent {
         if (event.getWorld().isRemote && entity instanceof EntityPart) {
             Entity parent = ((EntityPart) entity).getParent();
             if (parent instanceof ComponentAccess) {
-                ((ComponentAccess) parent).get(ComponentHandler.MULTIPART).ifPresent(c -> c.entities.add(new LinkedEntity(((EntityPart) entity).getPartName(), entity.getUniqueID())));
+                ((ComponentAccess) parent).get(ComponentHandler.MULTIPART).ifPresent(c -> c.entities.add(new LinkedEntity(((EntityPart) entity).getPartName(), entity)));
             }
         }
     }
@@ -107,9 +112,48 @@ public class MultipartEntityComponent extends EntityComponent {
         }
     }
 
-    @Value
+    @Getter
+    @EqualsAndHashCode
+    @ToString
     public static class LinkedEntity {
-        String cubeName;
-        UUID entityUUID;
+        private final String cubeName;
+        private final UUID entityUUID;
+
+        //The resolved entity. This is looked up again from the index whenever an entity has left the index since it was resolved,
+        //as entities that are unloaded with their chunk aren't set dead
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        @Getter(AccessLevel.NONE)
+        private Entity entity;
+        @EqualsAndHashCode.Exclude
+        @ToString.Exclude
+        @Getter(AccessLevel.NONE)
+        private int generation = -1;
+
+        public LinkedEntity(String cubeName, UUID entityUUID) {
+            this.cubeName = cubeName;
+            this.entityUUID = entityUUID;
+        }
+
+        public LinkedEntity(String cubeName, Entity entity) {
+            this(cubeName, entity.getUniqueID());
+            this.entity = entity;
+            this.generation = EntityUUIDIndex.getGeneration(entity.world);
+        }
+
+        /**
+         * Gets the linked entity
+         * @param world the world the linked entity should be in
+         * @return the entity, or null if the entity isn't loaded
+         */
+        @Nullable
+        public Entity getEntity(World world) {
+            int generation = EntityUUIDIndex.getGeneration(world);
+            if(this.entity == null || this.entity.isDead || this.entity.world != world || this.generation != generation) {
+                this.entity = EntityUUIDIndex.getEntity(world, this.entityUUID);
+                this.generation = generation;
+            }
+            return this.entity;
+        }
     }
 }
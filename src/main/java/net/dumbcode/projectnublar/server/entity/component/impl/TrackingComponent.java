@@ -15,10 +15,21 @@ public class TrackingComponent extends EntityComponent implements FinalizableCom
 
     private final List<Supplier<TrackingDataInformation>> infoSuppliers = new ArrayList<>();
 
+    //The information last sent to the saved data. Never modified, so it can be resent when nothing has changed.
+    private List<TrackingDataInformation> lastInformation = Collections.emptyList();
+
     public List<Supplier<TrackingDataInformation>> getInfoSuppliers() {
         return Collections.unmodifiableList(this.infoSuppliers);
     }
 
+    public List<TrackingDataInformation> getLastInformation() {
+        return this.lastInformation;
+    }
+
+    public void setLastInformation(List<TrackingDataInformation> lastInformation) {
+        this.lastInformation = lastInformation;
+    }
+
     @Override
     public void finalizeComponent(ComponentAccess entity) {
         this.infoSuppliers.clear();
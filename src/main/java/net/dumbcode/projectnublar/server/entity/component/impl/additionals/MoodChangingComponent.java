@@ -1,14 +1,15 @@
 package net.dumbcode.projectnublar.server.entity.component.impl.additionals;
 
 import net.dumbcode.projectnublar.server.entity.mood.MoodReason;
+import net.dumbcode.projectnublar.server.utils.FloatSupplier;
 
 import java.util.function.BiConsumer;
-import java.util.function.Supplier;
 
 public interface MoodChangingComponent {
-    void applyMoods(BiConsumer<MoodReason, Supplier<Float>> acceptor);
-
-    default boolean isDirty() {
-        return true;
-    }
+    /**
+     * Applies the mood reasons of this component.
+     * @param acceptor accepts each reason, with the supplier of its amount
+     * @param markDirty should be run whenever the amounts given by the suppliers may have changed. The moods are only recomputed when this is run.
+     */
+    void applyMoods(BiConsumer<MoodReason, FloatSupplier> acceptor, Runnable markDirty);
 }
@@ -7,6 +7,7 @@ import net.dumbcode.dumblibrary.server.ecs.ComposableCreatureEntity;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponent;
 import net.dumbcode.dumblibrary.server.ecs.component.FinalizableComponent;
 import net.dumbcode.projectnublar.server.entity.ai.EntityAttackAI;
+import net.dumbcode.projectnublar.server.entity.ai.ProfiledAI;
 import net.dumbcode.projectnublar.server.entity.component.impl.GatherEnemiesComponent;
 import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.nbt.NBTTagCompound;
@@ -36,7 +37,7 @@ public class AttackComponent extends EntityComponent implements FinalizableCompo
         if(entity instanceof ComposableCreatureEntity) {
             enemyPredicates.stream().reduce(Predicate::and).ifPresent(predicate -> {
                 ComposableCreatureEntity creature = (ComposableCreatureEntity) entity;
-                creature.tasks.addTask(this.priority, new EntityAttackAI(creature, predicate, this));
+                creature.tasks.addTask(this.priority, ProfiledAI.wrap(new EntityAttackAI(creature, predicate, this)));
             });
         } else {
             throw new IllegalArgumentException("Tried to attach a attack component to an ecs of class " + entity.getClass() + ". The given ecs must be a subclass of EntityCreature");
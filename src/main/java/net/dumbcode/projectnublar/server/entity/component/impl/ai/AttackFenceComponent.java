@@ -5,6 +5,7 @@ import net.dumbcode.dumblibrary.server.ecs.ComposableCreatureEntity;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponent;
 import net.dumbcode.dumblibrary.server.ecs.component.FinalizableComponent;
 import net.dumbcode.projectnublar.server.entity.ai.EntityAttackFenceAI;
+import net.dumbcode.projectnublar.server.entity.ai.ProfiledAI;
 import net.minecraft.nbt.NBTTagCompound;
 
 public class AttackFenceComponent extends EntityComponent implements FinalizableComponent {
@@ -17,7 +18,7 @@ public class AttackFenceComponent extends EntityComponent implements Finalizable
 
         if (entity instanceof ComposableCreatureEntity) {
             ComposableCreatureEntity creature = (ComposableCreatureEntity) entity;
-            creature.tasks.addTask(this.priority, new EntityAttackFenceAI(creature));
+            creature.tasks.addTask(this.priority, ProfiledAI.wrap(new EntityAttackFenceAI(creature)));
         } else {
             throw new IllegalArgumentException("Tried to attach a attack component to an ecs of class " + entity.getClass() + ". The given ecs must be a subclass of EntityCreature");
         }
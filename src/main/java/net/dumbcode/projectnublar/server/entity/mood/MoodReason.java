@@ -1,15 +1,15 @@
 package net.dumbcode.projectnublar.server.entity.mood;
 
 import lombok.*;
+import net.dumbcode.projectnublar.server.utils.FloatUnaryOperator;
 
 import java.util.Map;
-import java.util.function.UnaryOperator;
 
 @Getter
 @Builder
 @RequiredArgsConstructor
 public class MoodReason {
     @Singular
-    private final Map<MoodType, UnaryOperator<Float>> moodTypes;
+    private final Map<MoodType, FloatUnaryOperator> moodTypes;
     @NonNull private final String translationKey;
 }
@@ -0,0 +1,28 @@
+package net.dumbcode.projectnublar.server.entity.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the world changing side effects of a system update, such as damaging entities or writing saved data,
+ * so they can be applied on the server thread once the system has finished updating. <br>
+ * A command buffer is only ever written to from one thread at a time.
+ */
+public class CommandBuffer {
+
+    private final List<Runnable> commands = new ArrayList<>();
+
+    public void add(Runnable command) {
+        this.commands.add(command);
+    }
+
+    /**
+     * Runs all the commands in the order they were added, then clears the buffer.
+     */
+    public void apply() {
+        for (Runnable command : this.commands) {
+            command.run();
+        }
+        this.commands.clear();
+    }
+}
@@ -0,0 +1,160 @@
+package net.dumbcode.projectnublar.server.entity.system;
+
+import net.dumbcode.dumblibrary.server.ecs.EntityManager;
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
+import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
+import net.dumbcode.projectnublar.server.ProjectNublarConfig;
+import net.dumbcode.projectnublar.server.profiler.ProfilerSection;
+import net.dumbcode.projectnublar.server.profiler.ProjectNublarProfiler;
+import net.minecraft.world.World;
+import net.minecraftforge.common.MinecraftForge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a group of {@link ParallelEntitySystem}s as one entity system. <br>
+ * The systems are split into stages, in the order they were given. A system joins the current stage unless it conflicts with a
+ * system already in it (one writes a component the other reads or writes), or isn't thread safe, in which case it starts a new stage. <br>
+ * When {@link ProjectNublarConfig.Systems#parallel} is on, the systems of a stage are updated at the same time, with each system's
+ * entity buffers split into chunks that are updated in parallel. The server thread waits for the stage to finish, then applies
+ * every command buffer of the stage in order. Otherwise, the systems are updated one after another on the server thread.
+ */
+public class EntitySystemScheduler implements EntitySystem {
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(Runtime.getRuntime().availableProcessors() - 1, 1), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Project Nublar System Worker " + THREAD_ID.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    private static final ProfilerSection COMMANDS_SECTION = ProjectNublarProfiler.section("system/commands");
+
+    private final List<ParallelEntitySystem> systems;
+    private final Map<ParallelEntitySystem, ProfilerSection> updateSections = new IdentityHashMap<>();
+    private final Map<ParallelEntitySystem, ProfilerSection> populateSections = new IdentityHashMap<>();
+    private List<List<ParallelEntitySystem>> stages;
+
+    public EntitySystemScheduler(ParallelEntitySystem... systems) {
+        this.systems = Collections.unmodifiableList(Arrays.asList(systems));
+        for (ParallelEntitySystem system : systems) {
+            //The systems are run through this scheduler, so aren't registered on their own. Their event listeners still need to be.
+            MinecraftForge.EVENT_BUS.register(system);
+            this.updateSections.put(system, ProjectNublarProfiler.section("system/" + system.getClass().getSimpleName() + "/update"));
+            this.populateSections.put(system, ProjectNublarProfiler.section("system/" + system.getClass().getSimpleName() + "/populate"));
+        }
+    }
+
+    //Built on the first update rather than in the constructor, as the component types may not have been injected yet when the systems are registered
+    private List<List<ParallelEntitySystem>> getStages() {
+        if(this.stages == null) {
+            List<List<ParallelEntitySystem>> stages = new ArrayList<>();
+            List<ParallelEntitySystem> stage = new ArrayList<>();
+            for (ParallelEntitySystem system : this.systems) {
+                if(!stage.isEmpty() && (!system.isThreadSafe() || !stage.get(0).isThreadSafe() || stage.stream().anyMatch(s -> conflicts(s, system)))) {
+                    stages.add(stage);
+                    stage = new ArrayList<>();
+                }
+                stage.add(system);
+            }
+            if(!stage.isEmpty()) {
+                stages.add(stage);
+            }
+            this.stages = stages;
+        }
+        return this.stages;
+    }
+
+    @Override
+    public void populateEntityBuffers(EntityManager manager) {
+        for (ParallelEntitySystem system : this.systems) {
+            ProfilerSection section = this.populateSections.get(system);
+            long start = section.start();
+            try {
+                system.populateEntityBuffers(manager);
+            } finally {
+                section.stop(start);
+            }
+        }
+    }
+
+    @Override
+    public void update(World world) {
+        boolean parallel = ProjectNublarConfig.SYSTEMS.parallel;
+        for (List<ParallelEntitySystem> stage : this.getStages()) {
+            if(parallel && stage.get(0).isThreadSafe()) {
+                this.updateParallel(world, stage);
+            } else {
+                for (ParallelEntitySystem system : stage) {
+                    ProfilerSection section = this.updateSections.get(system);
+                    long start = section.start();
+                    try {
+                        system.update(world);
+                    } finally {
+                        section.stop(start);
+                    }
+                }
+            }
+        }
+    }
+
+    private void updateParallel(World world, List<ParallelEntitySystem> stage) {
+        int chunkSize = ProjectNublarConfig.SYSTEMS.parallelChunkSize;
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        List<CommandBuffer> buffers = new ArrayList<>();
+        for (ParallelEntitySystem system : stage) {
+            //In parallel, each chunk is timed on its own. The section's total is then the cpu time of the system, rather than the time the server thread waited.
+            ProfilerSection section = this.updateSections.get(system);
+            int count = system.getEntityCount();
+            for (int from = 0; from < count; from += chunkSize) {
+                int start = from;
+                int end = Math.min(from + chunkSize, count);
+                CommandBuffer buffer = new CommandBuffer();
+                buffers.add(buffer);
+                tasks.add(POOL.submit(() -> {
+                    long time = section.start();
+                    try {
+                        system.update(world, start, end, buffer);
+                    } finally {
+                        section.stop(time);
+                    }
+                }));
+            }
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        long start = COMMANDS_SECTION.start();
+        try {
+            for (CommandBuffer buffer : buffers) {
+                buffer.apply();
+            }
+        } finally {
+            COMMANDS_SECTION.stop(start);
+        }
+    }
+
+    private static boolean conflicts(ParallelEntitySystem a, ParallelEntitySystem b) {
+        for (EntityComponentType<?, ?> type : a.getWrittenComponents()) {
+            if(b.getReadComponents().contains(type) || b.getWrittenComponents().contains(type)) {
+                return true;
+            }
+        }
+        for (EntityComponentType<?, ?> type : b.getWrittenComponents()) {
+            if(a.getReadComponents().contains(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
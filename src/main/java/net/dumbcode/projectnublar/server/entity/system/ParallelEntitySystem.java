@@ -0,0 +1,46 @@
+package net.dumbcode.projectnublar.server.entity.system;
+
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
+import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
+import net.minecraft.world.World;
+
+import java.util.Set;
+
+/**
+ * An entity system that can be run by the {@link EntitySystemScheduler}. <br>
+ * Systems declare the components they read and write, so systems that don't conflict can be run at the same time.
+ * Thread safe systems can also have their entity buffers split into ranges that are updated in parallel.
+ * Anything that changes the world, rather than the system's own components, should be added to the command buffer.
+ */
+public interface ParallelEntitySystem extends EntitySystem {
+
+    Set<EntityComponentType<?, ?>> getReadComponents();
+
+    Set<EntityComponentType<?, ?>> getWrittenComponents();
+
+    /**
+     * @return true if ranges of this system can be updated off the server thread. If false, the whole system is always updated on the server thread.
+     */
+    boolean isThreadSafe();
+
+    /**
+     * @return the amount of entities in this system's buffers
+     */
+    int getEntityCount();
+
+    /**
+     * Updates the entities in the range of this system's buffers.
+     * @param world the world being updated
+     * @param from the first index to update, inclusive
+     * @param to the last index to update, exclusive
+     * @param commands the buffer to add world changing side effects to
+     */
+    void update(World world, int from, int to, CommandBuffer commands);
+
+    @Override
+    default void update(World world) {
+        CommandBuffer commands = new CommandBuffer();
+        this.update(world, 0, this.getEntityCount(), commands);
+        commands.apply();
+    }
+}
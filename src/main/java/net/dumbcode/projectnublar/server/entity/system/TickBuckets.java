@@ -0,0 +1,41 @@
+package net.dumbcode.projectnublar.server.entity.system;
+
+import net.minecraft.world.World;
+
+/**
+ * Spreads the entities of a system that only needs to update every {@code interval} ticks over that interval.
+ * Each tick only the entities in the current phase are visited, so the cost is the same every tick rather than
+ * spiking on the ticks where every entity updates at once. <br>
+ * Usage:
+ * <pre>{@code
+ * for (int i = TickBuckets.getPhase(world, 20); i < this.entities.length; i += 20) {
+ *     ...
+ * }
+ * }</pre>
+ * As the phase of an entity comes from its index in the system's buffers, an entity can be updated slightly early or late
+ * once when the buffers are repopulated.
+ */
+public class TickBuckets {
+
+    private TickBuckets() {
+    }
+
+    /**
+     * Gets the index of the first entity to update this tick.
+     * @param world the world being updated
+     * @param interval the amount of ticks between updates of the same entity
+     * @return the first index to update. Every {@code interval}th index after it should also be updated.
+     */
+    public static int getPhase(World world, int interval) {
+        return (int) (world.getTotalWorldTime() % interval);
+    }
+
+    /**
+     * Gets the index of the first entity at or after {@code from} to update this tick. Used by systems that are updated in ranges.
+     * @see #getPhase(World, int)
+     */
+    public static int getFirstIndex(World world, int interval, int from) {
+        int phase = getPhase(world, interval);
+        return from + Math.floorMod(phase - from, interval);
+    }
+}
@@ -0,0 +1,127 @@
+package net.dumbcode.projectnublar.server.entity.system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timer wheel, for one-shot timers that would otherwise be counted down every tick. <br>
+ * Scheduling and firing a timer is constant time, and advancing the wheel by a tick only touches the timers
+ * due on that tick. Timers further away live on the coarser levels, and are moved down a level as they come closer.
+ * @param <T> the type of the timers
+ */
+public class TimerWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    //[level][slot]. Level n holds the timers that are due within 64^(n+1) ticks, in slots 64^n ticks wide
+    @SuppressWarnings("unchecked")
+    private final List<Entry<T>>[][] wheels = new List[LEVELS][SLOTS];
+    //Timers due further than the last level can hold
+    private final List<Entry<T>> overflow = new ArrayList<>();
+
+    private long currentTick;
+    private boolean started;
+    private int size;
+
+    public TimerWheel() {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                this.wheels[level][slot] = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Schedules a timer.
+     * @param now the current tick
+     * @param delay the amount of ticks until the timer is due. Timers that are already due fire on the next advance.
+     * @param timer the timer
+     */
+    public void schedule(long now, long delay, T timer) {
+        if(!this.started) {
+            this.currentTick = now;
+            this.started = true;
+        }
+        this.insert(new Entry<>(Math.max(now + delay, this.currentTick + 1), timer));
+        this.size++;
+    }
+
+    /**
+     * Advances the wheel up to and including the tick, firing every timer due on the way.
+     * @param now the current tick
+     * @param fired called for each timer that is due
+     */
+    public void advance(long now, Consumer<T> fired) {
+        if(!this.started || this.size == 0) {
+            this.currentTick = now;
+            return;
+        }
+        while(this.currentTick < now) {
+            long tick = ++this.currentTick;
+
+            //Move the timers down a level when the level below has wrapped around. This goes from the highest level down,
+            //so timers moved down more than one level on the same tick aren't skipped
+            int wrapped = 0;
+            while(wrapped < LEVELS && (tick & ((1L << (SLOT_BITS * (wrapped + 1))) - 1)) == 0) {
+                wrapped++;
+            }
+            if(wrapped == LEVELS) {
+                this.cascade(this.overflow);
+            }
+            for (int level = Math.min(wrapped, LEVELS - 1); level >= 1; level--) {
+                this.cascade(this.wheels[level][(int) (tick >> (SLOT_BITS * level)) & SLOT_MASK]);
+            }
+
+            List<Entry<T>> slot = this.wheels[0][(int) tick & SLOT_MASK];
+            if(!slot.isEmpty()) {
+                List<Entry<T>> due = new ArrayList<>(slot);
+                slot.clear();
+                this.size -= due.size();
+                for (Entry<T> entry : due) {
+                    fired.accept(entry.timer);
+                }
+            }
+
+            if(this.size == 0) {
+                this.currentTick = now;
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    private void cascade(List<Entry<T>> entries) {
+        if(!entries.isEmpty()) {
+            List<Entry<T>> moving = new ArrayList<>(entries);
+            entries.clear();
+            moving.forEach(this::insert);
+        }
+    }
+
+    private void insert(Entry<T> entry) {
+        long delay = entry.dueTick - this.currentTick;
+        for (int level = 0; level < LEVELS; level++) {
+            if(delay < 1L << (SLOT_BITS * (level + 1))) {
+                this.wheels[level][(int) (entry.dueTick >> (SLOT_BITS * level)) & SLOT_MASK].add(entry);
+                return;
+            }
+        }
+        this.overflow.add(entry);
+    }
+
+    private static class Entry<T> {
+        private final long dueTick;
+        private final T timer;
+
+        private Entry(long dueTick, T timer) {
+            this.dueTick = dueTick;
+            this.timer = timer;
+        }
+    }
+}
@@ -3,25 +3,33 @@ package net.dumbcode.projectnublar.server.entity.system.impl;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
 import net.dumbcode.dumblibrary.server.ecs.EntityFamily;
 import net.dumbcode.dumblibrary.server.ecs.EntityManager;
-import net.dumbcode.dumblibrary.server.ecs.component.impl.AgeStage;
-import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.component.impl.AgeComponent;
+import net.dumbcode.projectnublar.server.entity.system.CommandBuffer;
+import net.dumbcode.projectnublar.server.entity.system.ParallelEntitySystem;
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.Entity;
 import net.minecraft.world.World;
+import net.minecraftforge.event.entity.EntityJoinWorldEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
-public class AgeSystem implements EntitySystem {
+public class AgeSystem implements ParallelEntitySystem {
 
     private AgeComponent[] ages = new AgeComponent[0];
     private Entity[] entities = new Entity[0];
 
+    //The client side entities with an age component. Kept from entities joining the world, rather than scanning the world every tick
+    private final List<Entity> clientEntities = new ArrayList<>();
+
     @Override
     public void populateEntityBuffers(EntityManager manager) {
         EntityFamily<Entity> family = manager.resolveFamily(ComponentHandler.AGE);
@@ -30,51 +38,69 @@ public class AgeSystem implements EntitySystem {
     }
 
     @Override
-    public void update(World world) {
-        for (int i = 0; i < this.ages.length; i++) {
-            this.update(this.ages[i], this.entities[i]);
-        }
+    public Set<EntityComponentType<?, ?>> getReadComponents() {
+        return Collections.singleton(ComponentHandler.AGE);
     }
 
-    private void update(AgeComponent age, Entity entity) {
-        AgeStage start = age.stage;
-        int ageoff = age.getAgeInTicks();
+    @Override
+    public Set<EntityComponentType<?, ?>> getWrittenComponents() {
+        return Collections.singleton(ComponentHandler.AGE);
+    }
 
-        Iterator<AgeStage> iterator = age.getOrderedAges().iterator();
-        while(ageoff > 0 && iterator.hasNext()) {
-            age.stage = iterator.next();
-            ageoff -= age.stage.getTime();
-            if(age.stage.getTime() == -1) {
-                break;
-            }
-        }
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
 
+    @Override
+    public int getEntityCount() {
+        return this.ages.length;
+    }
 
-        if(age.stage == null) {
-            age.setPercentageStage(0F);
-        } else {
-            age.setPercentageStage((ageoff + age.stage.getTime()) / (float) age.stage.getTime());
+    @Override
+    public void update(World world, int from, int to, CommandBuffer commands) {
+        for (int i = from; i < to; i++) {
+            this.update(this.ages[i], this.entities[i], commands);
         }
+    }
 
-        if(start != age.stage) {
+    private void update(AgeComponent age, Entity entity, CommandBuffer commands) {
+        if(age.updateStage()) {
             if(entity instanceof ComponentAccess) {
-                ((ComponentAccess) entity).finalizeComponents();
+                //Finalizing the components changes the entity's AI and attributes, so needs to be done on the main thread
+                commands.add(((ComponentAccess) entity)::finalizeComponents);
             }
         }
 
         age.setAgeInTicks(age.getAgeInTicks() + 1);
     }
 
+    @SubscribeEvent
+    @SideOnly(Side.CLIENT)
+    public void onEntityJoinWorld(EntityJoinWorldEvent event) {
+        Entity entity = event.getEntity();
+        if(event.getWorld().isRemote && entity instanceof ComponentAccess && ((ComponentAccess) entity).getOrNull(ComponentHandler.AGE) != null) {
+            this.clientEntities.add(entity);
+        }
+    }
+
     @SubscribeEvent
     @SideOnly(Side.CLIENT)
     public void onClientWorldTick(TickEvent.ClientTickEvent event) {
         World world = Minecraft.getMinecraft().world;
         if(world != null && !Minecraft.getMinecraft().isGamePaused()) {
-            for (Entity entity : world.loadedEntityList) {
-                if(entity instanceof ComponentAccess) {
-                    ((ComponentAccess) entity).get(ComponentHandler.AGE).ifPresent(a -> this.update(a, entity));
+            //Entities removed from the client world are set dead, so this also drops unloaded entities
+            this.clientEntities.removeIf(entity -> entity.isDead || entity.world != world);
+            CommandBuffer commands = new CommandBuffer();
+            for (Entity entity : this.clientEntities) {
+                AgeComponent age = ((ComponentAccess) entity).getOrNull(ComponentHandler.AGE);
+                if(age != null) {
+                    this.update(age, entity, commands);
                 }
             }
+            commands.apply();
+        } else if(world == null) {
+            this.clientEntities.clear();
         }
     }
 }
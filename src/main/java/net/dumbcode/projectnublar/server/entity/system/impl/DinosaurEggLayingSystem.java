@@ -1,63 +1,134 @@
 package net.dumbcode.projectnublar.server.entity.system.impl;
 
+import com.google.common.collect.Sets;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
-import net.dumbcode.dumblibrary.server.ecs.EntityFamily;
 import net.dumbcode.dumblibrary.server.ecs.EntityManager;
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentTypes;
 import net.dumbcode.dumblibrary.server.ecs.component.impl.FamilyComponent;
-import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
+import net.dumbcode.projectnublar.server.ProjectNublar;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.DinosaurEggEntity;
+import net.dumbcode.projectnublar.server.entity.EntityUUIDIndex;
 import net.dumbcode.projectnublar.server.entity.component.impl.DinosaurComponent;
 import net.dumbcode.projectnublar.server.entity.component.impl.DinosaurEggLayingComponent;
+import net.dumbcode.projectnublar.server.entity.system.CommandBuffer;
+import net.dumbcode.projectnublar.server.entity.system.ParallelEntitySystem;
+import net.dumbcode.projectnublar.server.entity.system.TimerWheel;
 import net.minecraft.entity.Entity;
 import net.minecraft.world.World;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 
-public class DinosaurEggLayingSystem implements EntitySystem {
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
-    private Entity[] entities = new Entity[0];
-    private DinosaurEggLayingComponent[] eggLayingComponents = new DinosaurEggLayingComponent[0];
-    private DinosaurComponent[] dinosaurs = new DinosaurComponent[0];
+/**
+ * Lays the eggs held by pregnant dinosaurs. Rather than counting down every held egg each tick,
+ * each egg is put on a per world timer wheel when the dinosaur becomes pregnant, and is laid when its timer fires.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class DinosaurEggLayingSystem implements ParallelEntitySystem {
+
+    //The pending eggs hold their entities, which hold the world, so the wheels have to be removed when the world unloads
+    private static final Map<World, TimerWheel<PendingEgg>> WHEELS = new WeakHashMap<>();
+
+    /**
+     * Schedules an egg to be laid.
+     * @param entity the entity holding the egg
+     * @param component the egg laying component of the entity
+     * @param egg the egg. This should already be in the component's held eggs.
+     * @param ticks the amount of ticks until the egg should be laid
+     */
+    public static void scheduleEgg(Entity entity, DinosaurEggLayingComponent component, DinosaurEggLayingComponent.EggEntry egg, int ticks) {
+        if(!entity.world.isRemote) {
+            WHEELS.computeIfAbsent(entity.world, w -> new TimerWheel<>()).schedule(entity.world.getTotalWorldTime(), ticks, new PendingEgg(entity, component, egg));
+        }
+    }
 
     @Override
     public void populateEntityBuffers(EntityManager manager) {
-        EntityFamily<Entity> family = manager.resolveFamily(ComponentHandler.DINOSAUR_EGG_LAYING, ComponentHandler.DINOSAUR);
-        this.entities = family.getEntities();
-        this.eggLayingComponents = family.populateBuffer(ComponentHandler.DINOSAUR_EGG_LAYING, this.eggLayingComponents);
-        this.dinosaurs = family.populateBuffer(ComponentHandler.DINOSAUR, this.dinosaurs);
+        //Eggs are tracked on the timer wheels, so there are no entities to buffer
+    }
+
+    @Override
+    public Set<EntityComponentType<?, ?>> getReadComponents() {
+        return Sets.newHashSet(ComponentHandler.DINOSAUR_EGG_LAYING, ComponentHandler.DINOSAUR, EntityComponentTypes.FAMILY);
+    }
+
+    @Override
+    public Set<EntityComponentType<?, ?>> getWrittenComponents() {
+        return Collections.singleton(ComponentHandler.DINOSAUR_EGG_LAYING);
+    }
+
+    //Eggs are spawned straight into the world
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    @Override
+    public int getEntityCount() {
+        return 0;
+    }
+
+    @Override
+    public void update(World world, int from, int to, CommandBuffer commands) {
+        this.update(world);
     }
 
     @Override
     public void update(World world) {
-        for (int i = 0; i < this.entities.length; i++) {
-            Entity en = this.entities[i];
-            ComponentAccess access = (ComponentAccess) en;
-            DinosaurEggLayingComponent component = this.eggLayingComponents[i];
-            DinosaurComponent dinosaur = this.dinosaurs[i];
-            component.getHeldEggs().removeIf(egg -> {
-                int ticksLeft = egg.getTicksLeft();
-                if(ticksLeft <= 0) {
-                    DinosaurEggEntity eggEntity = new DinosaurEggEntity(
-                        en.world,
-                        egg.getCombinedGenetics(),
-                        dinosaur.getDinosaur(),
-                        egg.getType(),
-                        egg.getRandomScaleAdjustment(),
-                        access.get(EntityComponentTypes.FAMILY).map(FamilyComponent::getFamilyUUID).orElse(null),
-                        egg.getEggTicks()
-                    );
-
-                    eggEntity.setPosition(en.posX + en.world.rand.nextGaussian()*0.2, en.posY, en.posZ + en.world.rand.nextGaussian()*0.2);
-
-                    world.spawnEntity(eggEntity);
-
-                    return true;
-                } else {
-                    egg.setTicksLeft(ticksLeft - 1);
-                }
-                return false;
-            });
+        TimerWheel<PendingEgg> wheel = WHEELS.get(world);
+        if(wheel != null) {
+            wheel.advance(world.getTotalWorldTime(), pending -> this.layEgg(world, pending));
+        }
+    }
+
+    private void layEgg(World world, PendingEgg pending) {
+        Entity en = pending.entity;
+        //The entity could have died, or been unloaded, since the egg was scheduled. In which case the egg is dropped with it.
+        if(en.isDead || EntityUUIDIndex.getEntity(world, en.getUniqueID()) != en || !pending.component.getHeldEggs().remove(pending.egg)) {
+            return;
+        }
+        ComponentAccess access = (ComponentAccess) en;
+        DinosaurComponent dinosaur = access.getOrNull(ComponentHandler.DINOSAUR);
+        if(dinosaur == null) {
+            return;
+        }
+        DinosaurEggLayingComponent.EggEntry egg = pending.egg;
+        DinosaurEggEntity eggEntity = new DinosaurEggEntity(
+            en.world,
+            egg.getCombinedGenetics(),
+            dinosaur.getDinosaur(),
+            egg.getType(),
+            egg.getRandomScaleAdjustment(),
+            access.get(EntityComponentTypes.FAMILY).map(FamilyComponent::getFamilyUUID).orElse(null),
+            egg.getEggTicks()
+        );
+
+        eggEntity.setPosition(en.posX + en.world.rand.nextGaussian()*0.2, en.posY, en.posZ + en.world.rand.nextGaussian()*0.2);
+
+        world.spawnEntity(eggEntity);
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        WHEELS.remove(event.getWorld());
+    }
+
+    private static class PendingEgg {
+        private final Entity entity;
+        private final DinosaurEggLayingComponent component;
+        private final DinosaurEggLayingComponent.EggEntry egg;
 
+        private PendingEgg(Entity entity, DinosaurEggLayingComponent component, DinosaurEggLayingComponent.EggEntry egg) {
+            this.entity = entity;
+            this.component = component;
+            this.egg = egg;
         }
     }
 }
@@ -1,22 +1,31 @@
 package net.dumbcode.projectnublar.server.entity.system.impl;
 
+import com.google.common.collect.Sets;
 import net.dumbcode.dumblibrary.server.ecs.EntityFamily;
 import net.dumbcode.dumblibrary.server.ecs.EntityManager;
-import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.DamageSourceHandler;
 import net.dumbcode.projectnublar.server.entity.component.impl.MetabolismComponent;
+import net.dumbcode.projectnublar.server.entity.system.CommandBuffer;
+import net.dumbcode.projectnublar.server.entity.system.ParallelEntitySystem;
+import net.dumbcode.projectnublar.server.entity.system.TickBuckets;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.util.DamageSource;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
 
-public class MetabolismSystem implements EntitySystem {
+import java.util.Collections;
+import java.util.Set;
+
+public class MetabolismSystem implements ParallelEntitySystem {
 
     private MetabolismComponent[] metabolism = new MetabolismComponent[0];
     private Entity[] entities = new Entity[0];
 
+    private static final int UPDATE_INTERVAL = 20;
+
     @Override
     public void populateEntityBuffers(EntityManager manager) {
         EntityFamily<Entity> family = manager.resolveFamily(ComponentHandler.METABOLISM);
@@ -25,24 +34,42 @@ public class MetabolismSystem implements EntitySystem {
     }
 
     @Override
-    public void update(World world) {
-        for (int i = 0; i < this.metabolism.length; i++) {
-            if(this.entities[i].ticksExisted % 20 == 0) {
-                MetabolismComponent meta = this.metabolism[i];
-                meta.setFood((float) MathHelper.clamp(meta.getFood() - meta.getFoodRate().getValue(), 0, meta.getMaxFood().getValue()));
-                meta.setWater((float) MathHelper.clamp(meta.getWater() - meta.getWaterRate().getValue(), 0, meta.getMaxWater().getValue()));
-
-                if(this.entities[i] instanceof EntityLivingBase) {
-                    if(meta.getFood() == 0) {
-                        this.entities[i].attackEntityFrom(DamageSource.STARVE, 1F);
-                    }
-                    if(meta.getWater() == 0) {
-                        this.entities[i].attackEntityFrom(DamageSourceHandler.THIRST, 1F);
-                    }
+    public Set<EntityComponentType<?, ?>> getReadComponents() {
+        return Collections.singleton(ComponentHandler.METABOLISM);
+    }
+
+    //Changing the food and water marks the moods as dirty
+    @Override
+    public Set<EntityComponentType<?, ?>> getWrittenComponents() {
+        return Sets.newHashSet(ComponentHandler.METABOLISM, ComponentHandler.MOOD);
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public int getEntityCount() {
+        return this.metabolism.length;
+    }
+
+    @Override
+    public void update(World world, int from, int to, CommandBuffer commands) {
+        for (int i = TickBuckets.getFirstIndex(world, UPDATE_INTERVAL, from); i < to; i += UPDATE_INTERVAL) {
+            MetabolismComponent meta = this.metabolism[i];
+            meta.setFood((float) MathHelper.clamp(meta.getFood() - meta.getFoodRate().getValue(), 0, meta.getMaxFood().getValue()));
+            meta.setWater((float) MathHelper.clamp(meta.getWater() - meta.getWaterRate().getValue(), 0, meta.getMaxWater().getValue()));
+
+            Entity entity = this.entities[i];
+            if(entity instanceof EntityLivingBase) {
+                if(meta.getFood() == 0) {
+                    commands.add(() -> entity.attackEntityFrom(DamageSource.STARVE, 1F));
+                }
+                if(meta.getWater() == 0) {
+                    commands.add(() -> entity.attackEntityFrom(DamageSourceHandler.THIRST, 1F));
                 }
             }
         }
     }
-
-
 }
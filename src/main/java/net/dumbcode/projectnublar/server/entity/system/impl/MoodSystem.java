@@ -3,13 +3,18 @@ package net.dumbcode.projectnublar.server.entity.system.impl;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
 import net.dumbcode.dumblibrary.server.ecs.EntityFamily;
 import net.dumbcode.dumblibrary.server.ecs.EntityManager;
-import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.component.impl.MoodComponent;
+import net.dumbcode.projectnublar.server.entity.system.CommandBuffer;
+import net.dumbcode.projectnublar.server.entity.system.ParallelEntitySystem;
 import net.minecraft.entity.Entity;
 import net.minecraft.world.World;
 
-public class MoodSystem implements EntitySystem {
+import java.util.Collections;
+import java.util.Set;
+
+public class MoodSystem implements ParallelEntitySystem {
 
     private Entity[] entities = new Entity[0];
     private MoodComponent[] components = new MoodComponent[0];
@@ -22,10 +27,30 @@ public class MoodSystem implements EntitySystem {
     }
 
     @Override
-    public void update(World world) {
-        for (int i = 0; i < this.components.length; i++) {
-            ComponentAccess access = (ComponentAccess) this.entities[i];
-            this.components[i].getEntries().values().forEach(v -> v.runIfDirty(access));
+    public Set<EntityComponentType<?, ?>> getReadComponents() {
+        return Collections.singleton(ComponentHandler.MOOD);
+    }
+
+    @Override
+    public Set<EntityComponentType<?, ?>> getWrittenComponents() {
+        return Collections.singleton(ComponentHandler.MOOD);
+    }
+
+    //The mood entries run arbitrary code when they're dirty
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    @Override
+    public int getEntityCount() {
+        return this.components.length;
+    }
+
+    @Override
+    public void update(World world, int from, int to, CommandBuffer commands) {
+        for (int i = from; i < to; i++) {
+            this.components[i].updateMoods((ComponentAccess) this.entities[i]);
         }
     }
 }
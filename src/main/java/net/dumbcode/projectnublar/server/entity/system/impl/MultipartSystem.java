@@ -1,39 +1,50 @@
 package net.dumbcode.projectnublar.server.entity.system.impl;
 
-import net.dumbcode.dumblibrary.server.animation.TabulaUtils;
+import com.google.common.collect.Sets;
 import net.dumbcode.dumblibrary.server.animation.objects.AnimatableCube;
 import net.dumbcode.dumblibrary.server.animation.objects.AnimationLayer;
 import net.dumbcode.dumblibrary.server.ecs.ComponentAccess;
 import net.dumbcode.dumblibrary.server.ecs.EntityFamily;
 import net.dumbcode.dumblibrary.server.ecs.EntityManager;
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
 import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentTypes;
 import net.dumbcode.dumblibrary.server.ecs.component.impl.AnimationComponent;
 import net.dumbcode.dumblibrary.server.ecs.component.impl.RenderAdjustmentsComponent;
-import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.DinosaurEntity;
 import net.dumbcode.projectnublar.server.entity.EntityPart;
 import net.dumbcode.projectnublar.server.entity.component.impl.MultipartEntityComponent;
+import net.dumbcode.projectnublar.server.entity.system.CommandBuffer;
+import net.dumbcode.projectnublar.server.entity.system.ParallelEntitySystem;
+import net.dumbcode.projectnublar.server.entity.system.TickBuckets;
 import net.minecraft.client.Minecraft;
 import net.minecraft.entity.Entity;
-import net.minecraft.util.math.Vec3d;
+import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.world.World;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
-import javax.vecmath.Matrix4d;
-import javax.vecmath.Point3d;
-import java.util.Objects;
+import java.util.*;
 import java.util.function.Function;
 
-public class MultipartSystem implements EntitySystem {
+public class MultipartSystem implements ParallelEntitySystem {
+
+    private static final int UPDATE_INTERVAL = 3;
+    //How often, in ticks, a resting entity is animated anyway, so animations started while it's standing still are picked up
+    private static final int ANIMATE_INTERVAL = 20;
+    //A 3x3 rotation followed by a translation
+    private static final int TRANSFORM_SIZE = 12;
 
     private Entity[] entities = new Entity[0];
     private AnimationComponent[] animations = new AnimationComponent[0];
     private MultipartEntityComponent[] multiparts = new MultipartEntityComponent[0];
 
+    //The client tick and the integrated server both update through this instance, so each side gets its own scratch space
+    private final Scratch serverScratch = new Scratch();
+    private final Scratch clientScratch = new Scratch();
+
     @Override
     public void populateEntityBuffers(EntityManager manager) {
         EntityFamily<Entity> family = manager.resolveFamily(ComponentHandler.MULTIPART, EntityComponentTypes.ANIMATION);
@@ -43,99 +54,195 @@ public class MultipartSystem implements EntitySystem {
     }
 
     @Override
-    public void update(World world) {
-        for (int i = 0; i < this.multiparts.length; i++) {
+    public Set<EntityComponentType<?, ?>> getReadComponents() {
+        return Sets.newHashSet(ComponentHandler.MULTIPART, EntityComponentTypes.ANIMATION, EntityComponentTypes.RENDER_ADJUSTMENTS);
+    }
+
+    @Override
+    public Set<EntityComponentType<?, ?>> getWrittenComponents() {
+        return Sets.newHashSet(ComponentHandler.MULTIPART, EntityComponentTypes.ANIMATION);
+    }
+
+    //Animating the layers and moving the part entities both touch state shared with the rest of the game
+    @Override
+    public boolean isThreadSafe() {
+        return false;
+    }
+
+    @Override
+    public int getEntityCount() {
+        return this.multiparts.length;
+    }
+
+    @Override
+    public void update(World world, int from, int to, CommandBuffer commands) {
+        for (int i = TickBuckets.getFirstIndex(world, UPDATE_INTERVAL, from); i < to; i += UPDATE_INTERVAL) {
             updatePart(this.entities[i], this.multiparts[i], this.animations[i]);
         }
     }
 
     private void updatePart(Entity entity, MultipartEntityComponent multipart, AnimationComponent animation) {
-        if(entity.ticksExisted % 3 != 0) {
-            return;
-        }
-
         AnimationLayer layer = animation.getAnimationLayer(entity);
         if(layer == null) {
             return;
         }
+        Scratch scratch = entity.world.isRemote ? this.clientScratch : this.serverScratch;
 
-        DinosaurEntity dinosaur = null;
+        //Only dinosaurs have their parts scaled. This is looked up once per entity, rather than per cube corner.
+        float scaleX = 1F, scaleY = 1F, scaleZ = 1F;
         if(entity instanceof DinosaurEntity) {
-            dinosaur = (DinosaurEntity) entity;
+            RenderAdjustmentsComponent adjustments = ((DinosaurEntity) entity).getOrNull(EntityComponentTypes.RENDER_ADJUSTMENTS);
+            if(adjustments != null) {
+                float[] scale = adjustments.getScale();
+                scaleX = scale[0];
+                scaleY = scale[1];
+                scaleZ = scale[2];
+            }
         }
 
-        if(!entity.world.isRemote) {
+        Pose pose = scratch.poses.computeIfAbsent(entity, e -> new Pose());
+        boolean moved = pose.update(entity);
+        if(!entity.world.isRemote && (moved || !pose.settled || entity.ticksExisted - pose.lastAnimated >= ANIMATE_INTERVAL)) {
             for (String cubeName : layer.getCubeNames()) {
                 layer.getAnicubeRef().apply(cubeName).reset();
             }
             layer.animate(1);
+            pose.lastAnimated = entity.ticksExisted;
         }
 
-        Matrix4d entityRotate = new Matrix4d();
-        entityRotate.rotY(-Math.toRadians(entity.rotationYaw));
+        //Rotation around the y axis by -yaw. Everything below is done on primitives and the scratch arrays, with each cube's transform
+        //worked out once per entity rather than once per corner.
+        double yaw = -Math.toRadians(entity.rotationYaw);
+        double cos = Math.cos(yaw);
+        double sin = Math.sin(yaw);
+
+        scratch.slots.clear();
+        double checksum = 0;
 
         Function<String, AnimatableCube> function = layer.getAnicubeRef();
         for (MultipartEntityComponent.LinkedEntity cube : multipart.getEntities()) {
-            for (Entity e : entity.world.loadedEntityList) {
-                if(e instanceof EntityPart && e.getUniqueID().equals(cube.getEntityUUID())) {
-                    AnimatableCube animatableCube = function.apply(cube.getCubeName());
-                    if (animatableCube != null && e.ticksExisted > 1) {
-                        EntityPart cubeEntity = (EntityPart) e;
-                        Point3d sp = null;
-                        Point3d ep = null;
-
-                        double minX = Integer.MAX_VALUE;
-                        double minY = Integer.MAX_VALUE;
-                        double minZ = Integer.MAX_VALUE;
-
-                        double maxX = Integer.MIN_VALUE;
-                        double maxY = Integer.MIN_VALUE;
-                        double maxZ = Integer.MIN_VALUE;
-
-                        for (int i = 0; i < 8; i++) {
-                            Vec3d startPoint = TabulaUtils.getModelPosAlpha(animatableCube, (i >> 2)&1, (i >> 1)&1, i&1);
-                            Point3d point = new Point3d(startPoint.x, startPoint.y + 1.5, startPoint.z);
-
-                            if(dinosaur != null) {
-                                dinosaur.get(EntityComponentTypes.RENDER_ADJUSTMENTS).map(RenderAdjustmentsComponent::getScale).ifPresent(floats -> {
-                                            point.x *= floats[0];
-                                            point.y *= floats[1];
-                                            point.z *= floats[2];
-                                        }
-                                );
-                            }
-                            entityRotate.transform(point);
-
-                            minX = Math.min(minX, point.x);
-                            minY = Math.min(minY, point.y);
-                            minZ = Math.min(minZ, point.z);
-
-                            maxX = Math.max(maxX, point.x);
-                            maxY = Math.max(maxY, point.y);
-                            maxZ = Math.max(maxZ, point.z);
-
-                            if(i == 0) {
-                                sp = point;
-                            } else if(i == 7) {
-                                ep = point;
-                            }
-                        }
-
-
-                        Vec3d size = new Vec3d(maxX, maxY, maxZ).subtract(minX, minY, minZ).add(0.1F, 0.1F, 0.1F); //0.1F -> padding
-
-                        cubeEntity.setSize(size);
-
-                        Objects.requireNonNull(ep);
-                        Objects.requireNonNull(sp);
-
-                        cubeEntity.setPosition(sp.x + (ep.x - sp.x) / 2D + entity.posX, sp.y + (ep.y - sp.y) / 2D + entity.posY - size.y / 2, sp.z + (ep.z - sp.z) / 2D + entity.posZ);
-                    }
+            Entity e = cube.getEntity(entity.world);
+            if(!(e instanceof EntityPart) || e.ticksExisted <= 1) {
+                continue;
+            }
+            AnimatableCube animatableCube = function.apply(cube.getCubeName());
+            if (animatableCube == null) {
+                continue;
+            }
+
+            int m = this.resolveTransform(scratch, animatableCube) * TRANSFORM_SIZE;
+            double[] transforms = scratch.transforms;
+            float[] offset = animatableCube.getOffset();
+            float[] dimension = animatableCube.getDimension();
+
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double minZ = Double.POSITIVE_INFINITY;
+
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            double maxZ = Double.NEGATIVE_INFINITY;
+
+            //The first and last corner are opposite each other, so the center of the part is halfway between them
+            double centerX = 0;
+            double centerY = 0;
+            double centerZ = 0;
 
-                    break;
+            for (int i = 0; i < 8; i++) {
+                double lx = (offset[0] + dimension[0] * ((i >> 2) & 1)) / 16D;
+                double ly = (offset[1] + dimension[1] * ((i >> 1) & 1)) / 16D;
+                double lz = (offset[2] + dimension[2] * (i & 1)) / 16D;
+
+                //Into model space, then flipped the same way the entity renderer flips the model
+                double mx = -(transforms[m] * lx + transforms[m + 1] * ly + transforms[m + 2] * lz + transforms[m + 9]);
+                double my = -(transforms[m + 3] * lx + transforms[m + 4] * ly + transforms[m + 5] * lz + transforms[m + 10]);
+                double mz = transforms[m + 6] * lx + transforms[m + 7] * ly + transforms[m + 8] * lz + transforms[m + 11];
+
+                double px = mx * scaleX;
+                double py = (my + 1.5) * scaleY;
+                double pz = mz * scaleZ;
+
+                double x = cos * px + sin * pz;
+                double z = cos * pz - sin * px;
+
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, py);
+                minZ = Math.min(minZ, z);
+
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, py);
+                maxZ = Math.max(maxZ, z);
+
+                if(i == 0 || i == 7) {
+                    centerX += x / 2D;
+                    centerY += py / 2D;
+                    centerZ += z / 2D;
                 }
             }
+            checksum = checksum * 31 + centerX + centerY * 7 + centerZ * 13 + maxX - minX + maxY - minY + maxZ - minZ;
+
+            //0.1 -> padding
+            double sizeY = maxY - minY + 0.1D;
+            EntityPart cubeEntity = (EntityPart) e;
+            cubeEntity.setSize(maxX - minX + 0.1D, sizeY, maxZ - minZ + 0.1D);
+            cubeEntity.updatePosition(centerX + entity.posX, centerY + entity.posY - sizeY / 2, centerZ + entity.posZ);
         }
+
+        //Once the parts come out the same twice in a row without the entity moving, the animation has come to rest, and the layer
+        //doesn't need to be reset and animated again until the entity moves, or the next forced update
+        pose.settled = !moved && checksum == pose.checksum;
+        pose.checksum = checksum;
+    }
+
+    /**
+     * Works out the transform from the cube's space into the model space, walking up the parents only for cubes that
+     * haven't already been worked out for this entity.
+     * @return the slot of the transform in {@link Scratch#transforms}
+     */
+    private int resolveTransform(Scratch scratch, AnimatableCube cube) {
+        Integer existing = scratch.slots.get(cube);
+        if(existing != null) {
+            return existing;
+        }
+        AnimatableCube parent = cube.getParent();
+        int parentSlot = parent == null ? -1 : this.resolveTransform(scratch, parent);
+
+        int slot = scratch.slots.size();
+        int m = slot * TRANSFORM_SIZE;
+        if(m + TRANSFORM_SIZE > scratch.transforms.length) {
+            scratch.transforms = Arrays.copyOf(scratch.transforms, scratch.transforms.length * 2);
+        }
+        double[] t = scratch.transforms;
+
+        //The same order the cube is rendered in: rotated around x, then y, then z, then moved to the rotation point
+        float[] rotation = cube.getActualRotation();
+        float[] point = cube.getRotationPoint();
+        double cx = Math.cos(rotation[0]), sx = Math.sin(rotation[0]);
+        double cy = Math.cos(rotation[1]), sy = Math.sin(rotation[1]);
+        double cz = Math.cos(rotation[2]), sz = Math.sin(rotation[2]);
+
+        double r00 = cz * cy, r01 = cz * sy * sx - sz * cx, r02 = cz * sy * cx + sz * sx;
+        double r10 = sz * cy, r11 = sz * sy * sx + cz * cx, r12 = sz * sy * cx - cz * sx;
+        double r20 = -sy,     r21 = cy * sx,                r22 = cy * cx;
+        double tx = point[0] / 16D, ty = point[1] / 16D, tz = point[2] / 16D;
+
+        if(parentSlot == -1) {
+            t[m] = r00; t[m + 1] = r01; t[m + 2] = r02;
+            t[m + 3] = r10; t[m + 4] = r11; t[m + 5] = r12;
+            t[m + 6] = r20; t[m + 7] = r21; t[m + 8] = r22;
+            t[m + 9] = tx; t[m + 10] = ty; t[m + 11] = tz;
+        } else {
+            int p = parentSlot * TRANSFORM_SIZE;
+            for (int row = 0; row < 3; row++) {
+                double p0 = t[p + row * 3], p1 = t[p + row * 3 + 1], p2 = t[p + row * 3 + 2];
+                t[m + row * 3] = p0 * r00 + p1 * r10 + p2 * r20;
+                t[m + row * 3 + 1] = p0 * r01 + p1 * r11 + p2 * r21;
+                t[m + row * 3 + 2] = p0 * r02 + p1 * r12 + p2 * r22;
+                t[m + 9 + row] = p0 * tx + p1 * ty + p2 * tz + t[p + 9 + row];
+            }
+        }
+        scratch.slots.put(cube, slot);
+        return slot;
     }
 
     @SubscribeEvent
@@ -147,11 +254,47 @@ public class MultipartSystem implements EntitySystem {
                 if(entity instanceof ComponentAccess) {
                     AnimationComponent animation = ((ComponentAccess) entity).getOrNull(EntityComponentTypes.ANIMATION);
                     MultipartEntityComponent multipart = ((ComponentAccess) entity).getOrNull(ComponentHandler.MULTIPART);
-                    if(animation != null && multipart != null) {
+                    if(animation != null && multipart != null && (entity.ticksExisted + entity.getEntityId()) % UPDATE_INTERVAL == 0) {
                         updatePart(entity, multipart, animation);
                     }
                 }
             }
         }
     }
+
+    private static class Scratch {
+        private final Map<AnimatableCube, Integer> slots = new IdentityHashMap<>();
+        private double[] transforms = new double[TRANSFORM_SIZE * 32];
+        private final Map<Entity, Pose> poses = new WeakHashMap<>();
+    }
+
+    //What the pose of an entity was the last time its parts were updated
+    private static class Pose {
+        private float yaw;
+        private float pitch;
+        private float headYaw;
+        private float limbSwing;
+        private float limbSwingAmount;
+        private int lastAnimated;
+        private double checksum = Double.NaN;
+        private boolean settled;
+
+        //Returns true if the entity has moved since the last update
+        private boolean update(Entity entity) {
+            float headYaw = entity.getRotationYawHead();
+            float limbSwing = 0F, limbSwingAmount = 0F;
+            if(entity instanceof EntityLivingBase) {
+                limbSwing = ((EntityLivingBase) entity).limbSwing;
+                limbSwingAmount = ((EntityLivingBase) entity).limbSwingAmount;
+            }
+            boolean moved = entity.rotationYaw != this.yaw || entity.rotationPitch != this.pitch || headYaw != this.headYaw
+                || limbSwing != this.limbSwing || limbSwingAmount != this.limbSwingAmount;
+            this.yaw = entity.rotationYaw;
+            this.pitch = entity.rotationPitch;
+            this.headYaw = headYaw;
+            this.limbSwing = limbSwing;
+            this.limbSwingAmount = limbSwingAmount;
+            return moved;
+        }
+    }
 }
@@ -1,29 +1,36 @@
 package net.dumbcode.projectnublar.server.entity.system.impl;
 
+import com.google.common.collect.Sets;
 import net.dumbcode.dumblibrary.server.ecs.EntityFamily;
 import net.dumbcode.dumblibrary.server.ecs.EntityManager;
-import net.dumbcode.dumblibrary.server.ecs.system.EntitySystem;
+import net.dumbcode.dumblibrary.server.ecs.component.EntityComponentType;
+import net.dumbcode.projectnublar.server.ProjectNublarConfig;
 import net.dumbcode.projectnublar.server.entity.ComponentHandler;
 import net.dumbcode.projectnublar.server.entity.component.impl.TrackingComponent;
+import net.dumbcode.projectnublar.server.entity.system.CommandBuffer;
+import net.dumbcode.projectnublar.server.entity.system.ParallelEntitySystem;
+import net.dumbcode.projectnublar.server.entity.tracking.TrackingDataInformation;
 import net.dumbcode.projectnublar.server.entity.tracking.TrackingSavedData;
 import net.minecraft.entity.Entity;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-public class TrackingSystem implements EntitySystem {
+public class TrackingSystem implements ParallelEntitySystem {
 
     private Entity[] entities = new Entity[0];
     private TrackingComponent[] components = new TrackingComponent[0];
 
+    //The entities are split between threads, so each thread collects the information into its own list
+    private final ThreadLocal<List<TrackingDataInformation>> scratch = ThreadLocal.withInitial(ArrayList::new);
+
     @Override
     public void populateEntityBuffers(EntityManager manager) {
         EntityFamily<Entity> family = manager.resolveFamily(ComponentHandler.TRACKING_DATA);
@@ -38,11 +45,59 @@ public class TrackingSystem implements EntitySystem {
     }
 
     @Override
-    public void update(World world) {
-        for (int i = 0; i < this.entities.length; i++) {
-            TrackingSavedData.DataEntry entry = new TrackingSavedData.DataEntry(this.entities[i].getUniqueID(), this.entities[i].getPositionVector());
-            this.components[i].getInfoSuppliers().stream().map(Supplier::get).filter(Objects::nonNull).forEach(entry.getInformation()::add);
-            TrackingSavedData.getData(world).setEntry(entry);
+    public Set<EntityComponentType<?, ?>> getReadComponents() {
+        //The tracking information is read from these components
+        return Sets.newHashSet(
+            ComponentHandler.TRACKING_DATA, ComponentHandler.DINOSAUR, ComponentHandler.BASIC_ENTITY_INFORMATION,
+            ComponentHandler.METABOLISM, ComponentHandler.MOOD, ComponentHandler.DINOSAUR_EGG_LAYING
+        );
+    }
+
+    @Override
+    public Set<EntityComponentType<?, ?>> getWrittenComponents() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public int getEntityCount() {
+        return this.entities.length;
+    }
+
+    @Override
+    public void update(World world, int from, int to, CommandBuffer commands) {
+        int interval = ProjectNublarConfig.TRACKING.updateInterval;
+        double threshold = ProjectNublarConfig.TRACKING.positionThreshold;
+        long time = world.getTotalWorldTime();
+        for (int i = from; i < to; i++) {
+            Entity entity = this.entities[i];
+            //Spread the entities out over the interval, so they don't all update on the same tick
+            if((time + entity.getEntityId()) % interval != 0) {
+                continue;
+            }
+            TrackingComponent component = this.components[i];
+            List<TrackingDataInformation> scratch = this.scratch.get();
+            for (Supplier<TrackingDataInformation> supplier : component.getInfoSuppliers()) {
+                TrackingDataInformation info = supplier.get();
+                if(info != null) {
+                    scratch.add(info);
+                }
+            }
+            //Only copy the information out when it's changed, otherwise the last sent list is reused
+            List<TrackingDataInformation> information = component.getLastInformation();
+            if(!scratch.equals(information)) {
+                information = new ArrayList<>(scratch);
+                component.setLastInformation(information);
+            }
+            scratch.clear();
+            UUID uuid = entity.getUniqueID();
+            Vec3d position = entity.getPositionVector();
+            //The saved data is shared between all the entities, so is only written to from the main thread
+            commands.add(() -> TrackingSavedData.getData(world).updateEntry(uuid, position, information, threshold));
         }
     }
 
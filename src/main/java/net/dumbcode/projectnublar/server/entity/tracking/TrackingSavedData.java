@@ -2,10 +2,13 @@ package net.dumbcode.projectnublar.server.entity.tracking;
 
 import io.netty.buffer.ByteBuf;
 import lombok.EqualsAndHashCode;
-import lombok.Value;
+import lombok.Getter;
+import lombok.ToString;
 import net.dumbcode.dumblibrary.server.utils.IOCollectors;
 import net.dumbcode.dumblibrary.server.utils.StreamUtils;
 import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 import net.minecraft.world.storage.WorldSavedData;
@@ -16,7 +19,13 @@ import java.util.stream.IntStream;
 
 public class TrackingSavedData extends WorldSavedData {
 
-    private final Set<DataEntry> entries = new HashSet<>();
+    private final Map<UUID, DataEntry> entries = new HashMap<>();
+    //Chunk position (as a long) -> entries within that chunk. Used for the radius queries from the tracking tablet
+    private final Map<Long, Set<DataEntry>> chunkIndex = new HashMap<>();
+
+    //Removed entries are kept around and reused, so entities being tracked in and out don't keep allocating new entries
+    private static final int MAX_POOLED_ENTRIES = 256;
+    private final Deque<DataEntry> entryPool = new ArrayDeque<>();
 
     public TrackingSavedData(String name) {
         super(name);
@@ -25,27 +34,135 @@ public class TrackingSavedData extends WorldSavedData {
     @Override
     public void readFromNBT(NBTTagCompound nbt) {
         this.entries.clear();
-        StreamUtils.stream(nbt.getTagList("entries", Constants.NBT.TAG_COMPOUND)).map(b -> DataEntry.deserialize((NBTTagCompound) b)).forEach(this.entries::add);
+        this.chunkIndex.clear();
+        StreamUtils.stream(nbt.getTagList("entries", Constants.NBT.TAG_COMPOUND)).map(b -> DataEntry.deserialize((NBTTagCompound) b)).forEach(this::addEntry);
+    }
+
+    public Collection<DataEntry> getEntries() {
+        return Collections.unmodifiableCollection(this.entries.values());
     }
 
-    public Set<DataEntry> getEntries() {
-        return Collections.unmodifiableSet(this.entries);
+    /**
+     * Gets all the entries within {@code radius} blocks of the center, on the xz plane.
+     * Only the chunks that overlap the square around the center are visited.
+     * @param center the center of the query
+     * @param radius the radius, in blocks
+     * @return a list of the entries within the radius.
+     */
+    public List<DataEntry> query(Vec3d center, double radius) {
+        List<DataEntry> out = new ArrayList<>();
+        int minX = MathHelper.floor(center.x - radius) >> 4;
+        int maxX = MathHelper.floor(center.x + radius) >> 4;
+        int minZ = MathHelper.floor(center.z - radius) >> 4;
+        int maxZ = MathHelper.floor(center.z + radius) >> 4;
+        double radiusSq = radius * radius;
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                Set<DataEntry> bucket = this.chunkIndex.get(ChunkPos.asLong(x, z));
+                if(bucket == null) {
+                    continue;
+                }
+                for (DataEntry entry : bucket) {
+                    double dx = entry.position.x - center.x;
+                    double dz = entry.position.z - center.z;
+                    if(dx*dx + dz*dz <= radiusSq) {
+                        out.add(entry);
+                    }
+                }
+            }
+        }
+        return out;
     }
 
     public void setEntry(DataEntry entry) {
-        this.removeEntry(entry.uuid);
-        this.entries.add(entry);
+        this.removeFromIndex(entry.uuid);
+        this.addEntry(entry);
         this.markDirty();
     }
 
+    /**
+     * Updates the entry for the uuid in place, creating it if it doesn't exist yet. The data is only marked dirty
+     * if the entity moved further than {@code positionThreshold} blocks, or if any of the information has changed.
+     * @param uuid the uuid of the tracked entity
+     * @param position the current position of the entity
+     * @param information the current information of the entity. This list is copied, and so can be reused by the caller.
+     * @param positionThreshold the distance the entity needs to move before the saved position is changed
+     */
+    public void updateEntry(UUID uuid, Vec3d position, List<TrackingDataInformation> information, double positionThreshold) {
+        DataEntry entry = this.entries.get(uuid);
+        if(entry == null) {
+            entry = this.entryPool.isEmpty() ? new DataEntry(uuid, position) : this.entryPool.pop().reset(uuid, position);
+            entry.information.addAll(information);
+            this.addEntry(entry);
+            this.markDirty();
+            return;
+        }
+
+        boolean changed = false;
+        if(entry.position.squareDistanceTo(position) > positionThreshold * positionThreshold) {
+            long oldKey = getChunkKey(entry.position);
+            long newKey = getChunkKey(position);
+            if(oldKey != newKey) {
+                this.removeFromBucket(oldKey, entry);
+                this.chunkIndex.computeIfAbsent(newKey, l -> new HashSet<>()).add(entry);
+            }
+            entry.position = position;
+            changed = true;
+        }
+
+        if(!entry.information.equals(information)) {
+            entry.information.clear();
+            entry.information.addAll(information);
+            changed = true;
+        }
+
+        if(changed) {
+            this.markDirty();
+        }
+    }
+
     public void removeEntry(UUID uuid) {
-        this.entries.remove(new DataEntry(uuid, Vec3d.ZERO));
-        this.markDirty();
+        if(this.removeFromIndex(uuid)) {
+            this.markDirty();
+        }
+    }
+
+    private void addEntry(DataEntry entry) {
+        this.entries.put(entry.uuid, entry);
+        this.chunkIndex.computeIfAbsent(getChunkKey(entry.position), l -> new HashSet<>()).add(entry);
+    }
+
+    private boolean removeFromIndex(UUID uuid) {
+        DataEntry removed = this.entries.remove(uuid);
+        if(removed == null) {
+            return false;
+        }
+        this.removeFromBucket(getChunkKey(removed.position), removed);
+        if(this.entryPool.size() < MAX_POOLED_ENTRIES) {
+            removed.information.clear();
+            this.entryPool.push(removed);
+        }
+        return true;
+    }
+
+    private void removeFromBucket(long key, DataEntry entry) {
+        Set<DataEntry> bucket = this.chunkIndex.get(key);
+        if(bucket != null) {
+            bucket.remove(entry);
+            if(bucket.isEmpty()) {
+                this.chunkIndex.remove(key);
+            }
+        }
+    }
+
+    private static long getChunkKey(Vec3d position) {
+        return ChunkPos.asLong(MathHelper.floor(position.x) >> 4, MathHelper.floor(position.z) >> 4);
     }
 
     @Override
     public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
-        nbt.setTag("entries", this.entries.stream().map(DataEntry::serialize).collect(IOCollectors.toNBTTagList()));
+        nbt.setTag("entries", this.entries.values().stream().map(DataEntry::serialize).collect(IOCollectors.toNBTTagList()));
         return nbt;
     }
 
@@ -59,15 +176,29 @@ public class TrackingSavedData extends WorldSavedData {
         return data;
     }
 
-    //Per entity
-    @Value
+    //Per entity. Entries are mutable so they can be updated in place, but the uuid must not change while the entry is in the saved data.
+    @Getter
+    @ToString
+    @EqualsAndHashCode
     public static class DataEntry {
-        private final UUID uuid;
+        private UUID uuid;
         @EqualsAndHashCode.Exclude
-        private final Vec3d position;
+        private Vec3d position;
         @EqualsAndHashCode.Exclude
         private final List<TrackingDataInformation> information = new ArrayList<>();
 
+        public DataEntry(UUID uuid, Vec3d position) {
+            this.uuid = uuid;
+            this.position = position;
+        }
+
+        private DataEntry reset(UUID uuid, Vec3d position) {
+            this.uuid = uuid;
+            this.position = position;
+            this.information.clear();
+            return this;
+        }
+
         public static NBTTagCompound serialize(DataEntry info) {
             NBTTagCompound compound = new NBTTagCompound();
             compound.setUniqueId("uuid", info.uuid);
@@ -0,0 +1,129 @@
+package net.dumbcode.projectnublar.server.entity.tracking;
+
+import net.dumbcode.projectnublar.server.network.S32UpdateTrackingDataList;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Keeps track of what tracking data a single tracking tablet has been sent, so only the differences have to be sent.
+ * Each tracked uuid is given a short id for the lifetime of the session.
+ */
+public class TrackingTabletSession {
+
+    //The amount of information bits that fit in the dirty mask. Entries with more information are resent in full.
+    private static final int MAX_MASK_SIZE = 32;
+
+    private final int originX;
+    private final int originZ;
+
+    private final Map<UUID, SentEntry> sentEntries = new HashMap<>();
+    private final Deque<Short> freeIds = new ArrayDeque<>();
+    private short nextId;
+
+    private final Set<UUID> seenBuffer = new HashSet<>();
+
+    public TrackingTabletSession(int originX, int originZ) {
+        this.originX = originX;
+        this.originZ = originZ;
+    }
+
+    /**
+     * Computes the changes between the entries last sent and the current entries.
+     * @param entries the current entries in range of the tablet.
+     * @return the message to send, or null if there are no changes
+     */
+    @Nullable
+    public S32UpdateTrackingDataList createUpdate(Collection<TrackingSavedData.DataEntry> entries) {
+        S32UpdateTrackingDataList message = new S32UpdateTrackingDataList(this.originX, this.originZ);
+
+        this.seenBuffer.clear();
+        for (TrackingSavedData.DataEntry entry : entries) {
+            this.seenBuffer.add(entry.getUuid());
+            short x = this.quantize(entry.getPosition().x - this.originX);
+            short y = this.quantize(entry.getPosition().y);
+            short z = this.quantize(entry.getPosition().z - this.originZ);
+            List<TrackingDataInformation> information = entry.getInformation();
+
+            SentEntry sent = this.sentEntries.get(entry.getUuid());
+            if(sent != null && information.size() > MAX_MASK_SIZE && !information.equals(Arrays.asList(sent.information))) {
+                message.getRemoved().add(sent.id);
+                this.sentEntries.remove(entry.getUuid());
+                this.freeIds.push(sent.id);
+                sent = null;
+            }
+
+            if(sent == null) {
+                sent = new SentEntry(this.freeIds.isEmpty() ? this.nextId++ : this.freeIds.pop());
+                sent.setPosition(x, y, z);
+                sent.information = information.toArray(new TrackingDataInformation[0]);
+                this.sentEntries.put(entry.getUuid(), sent);
+
+                S32UpdateTrackingDataList.AddedEntry added = new S32UpdateTrackingDataList.AddedEntry(sent.id, entry.getUuid(), x, y, z);
+                added.getInformation().addAll(information);
+                message.getAdded().add(added);
+                continue;
+            }
+
+            boolean positionChanged = sent.x != x || sent.y != y || sent.z != z;
+            sent.setPosition(x, y, z);
+
+            int dirtyMask = 0;
+            for (int i = 0; i < information.size(); i++) {
+                if(i >= sent.information.length || !information.get(i).equals(sent.information[i])) {
+                    dirtyMask |= 1 << i;
+                }
+            }
+            boolean sizeChanged = information.size() != sent.information.length;
+
+            if(positionChanged || dirtyMask != 0 || sizeChanged) {
+                S32UpdateTrackingDataList.ChangedEntry changed = new S32UpdateTrackingDataList.ChangedEntry(sent.id, positionChanged, x, y, z, information.size(), dirtyMask);
+                for (int i = 0; i < information.size(); i++) {
+                    if((dirtyMask & (1 << i)) != 0) {
+                        changed.getInformation().add(information.get(i));
+                    }
+                }
+                if(dirtyMask != 0 || sizeChanged) {
+                    sent.information = information.toArray(new TrackingDataInformation[0]);
+                }
+                message.getChanged().add(changed);
+            }
+        }
+
+        Iterator<Map.Entry<UUID, SentEntry>> iterator = this.sentEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, SentEntry> next = iterator.next();
+            if(!this.seenBuffer.contains(next.getKey())) {
+                message.getRemoved().add(next.getValue().id);
+                this.freeIds.push(next.getValue().id);
+                iterator.remove();
+            }
+        }
+
+        return message.isEmpty() ? null : message;
+    }
+
+    private short quantize(double value) {
+        return (short) MathHelper.clamp(Math.round(value * S32UpdateTrackingDataList.POSITION_SCALE), Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    private static class SentEntry {
+        private final short id;
+        private short x;
+        private short y;
+        private short z;
+        private TrackingDataInformation[] information;
+
+        private SentEntry(short id) {
+            this.id = id;
+        }
+
+        private void setPosition(short x, short y, short z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
@@ -20,7 +20,7 @@ import java.util.Collections;
 import java.util.List;
 
 @Value
-@EqualsAndHashCode(callSuper = true)
+@EqualsAndHashCode(callSuper = false)
 public class BasicEntityInformation extends TooltipInformation {
 
     public static final String KEY = "basic_entity_information";
@@ -29,6 +29,7 @@ public class BasicEntityInformation extends TooltipInformation {
 
     private static final int HEART_SIZE = 9;
 
+    @EqualsAndHashCode.Exclude
     private final RepeatingIconDisplay display;
 
     private float health;
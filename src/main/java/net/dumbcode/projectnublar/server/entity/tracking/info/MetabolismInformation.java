@@ -1,7 +1,6 @@
 package net.dumbcode.projectnublar.server.entity.tracking.info;
 
 import io.netty.buffer.ByteBuf;
-import lombok.EqualsAndHashCode;
 import net.dumbcode.dumblibrary.client.RenderUtils;
 import net.dumbcode.dumblibrary.client.RepeatingIconDisplay;
 import net.dumbcode.projectnublar.server.entity.tracking.TooltipInformation;
@@ -18,13 +17,16 @@ import java.awt.*;
 import java.util.Arrays;
 import java.util.List;
 
-@EqualsAndHashCode(callSuper = true)
 public class MetabolismInformation extends TooltipInformation {
 
     public static final String KEY = "metabolism_info";
 
     private static final int PADDING_AFTER_TEXT = 10;
 
+    //The number of pixels each bar is drawn with, used to compare the values only to the precision they're shown.
+    private static final int FOOD_STEPS = 5 * 9;
+    private static final int WATER_STEPS = 4 * 6;
+
     private final float food;
     private final float maxFood;
     private final RepeatingIconDisplay foodDisplay;
@@ -47,6 +49,35 @@ public class MetabolismInformation extends TooltipInformation {
 
     }
 
+    //The food and water drain every few ticks, so they're compared to the pixel they're shown at.
+    //Otherwise the information would be seen as changed, and synced, every time it's refreshed.
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof MetabolismInformation)) {
+            return false;
+        }
+        MetabolismInformation other = (MetabolismInformation) o;
+        return Float.compare(other.maxFood, this.maxFood) == 0 && Float.compare(other.maxWater, this.maxWater) == 0 &&
+            quantise(other.food, other.maxFood, FOOD_STEPS) == quantise(this.food, this.maxFood, FOOD_STEPS) &&
+            quantise(other.water, other.maxWater, WATER_STEPS) == quantise(this.water, this.maxWater, WATER_STEPS);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.hashCode(this.maxFood);
+        result = 31 * result + Float.hashCode(this.maxWater);
+        result = 31 * result + quantise(this.food, this.maxFood, FOOD_STEPS);
+        result = 31 * result + quantise(this.water, this.maxWater, WATER_STEPS);
+        return result;
+    }
+
+    private static int quantise(float value, float max, int steps) {
+        return max <= 0 ? 0 : Math.round(value / max * steps);
+    }
+
     @Override
     protected String getTypeName() {
         return KEY;
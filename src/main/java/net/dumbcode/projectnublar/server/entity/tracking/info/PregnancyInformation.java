@@ -21,6 +21,37 @@ public class PregnancyInformation extends TooltipInformation {
         return KEY;
     }
 
+    //The ticks count down every tick, so they're compared to the second, as that's all the tooltip shows.
+    //Otherwise the information would be seen as changed, and synced, every time it's refreshed.
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof PregnancyInformation)) {
+            return false;
+        }
+        int[] other = ((PregnancyInformation) o).ticksTillGiveBirth;
+        if(other.length != this.ticksTillGiveBirth.length) {
+            return false;
+        }
+        for (int i = 0; i < other.length; i++) {
+            if(other[i] / 20 != this.ticksTillGiveBirth[i] / 20) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int ticks : this.ticksTillGiveBirth) {
+            result = 31 * result + ticks / 20;
+        }
+        return result;
+    }
+
     @Override
     protected List<String> getTooltipLines() {
         List<String> lines = new ArrayList<>();
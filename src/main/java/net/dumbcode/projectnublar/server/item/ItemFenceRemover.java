@@ -2,6 +2,7 @@ package net.dumbcode.projectnublar.server.item;
 
 import net.dumbcode.projectnublar.server.block.BlockConnectableBase;
 import net.dumbcode.projectnublar.server.block.entity.ConnectableBlockEntity;
+import net.dumbcode.projectnublar.server.block.entity.FenceNetworkManager;
 import net.dumbcode.projectnublar.server.utils.Connection;
 import net.dumbcode.projectnublar.server.utils.LineUtils;
 import net.minecraft.entity.player.EntityPlayer;
@@ -29,6 +30,7 @@ public class ItemFenceRemover extends Item {
                     for (Connection c : ((ConnectableBlockEntity) te).getConnections()) {
                         if(connection.lazyEquals(c)) {
                             c.setBroken(true);
+                            FenceNetworkManager.onConnectionChanged(worldIn, c);
                         } else {
                             left |= !c.isBroken();
                         }
@@ -0,0 +1,56 @@
+package net.dumbcode.projectnublar.server.network;
+
+import io.netty.buffer.ByteBuf;
+import net.dumbcode.projectnublar.server.utils.TrackingTabletIterator;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+/**
+ * Sent when the visible area of the tracking tablet map changes, so the server knows where to send full resolution tiles.
+ * If the player is zoomed too far out for full resolution to matter, an empty area (min > max) is sent.
+ */
+public class C42TrackingTabletViewport implements IMessage {
+
+    private int minX;
+    private int minZ;
+    private int maxX;
+    private int maxZ;
+
+    public C42TrackingTabletViewport() {
+    }
+
+    public C42TrackingTabletViewport(int minX, int minZ, int maxX, int maxZ) {
+        this.minX = minX;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxZ = maxZ;
+    }
+
+    @Override
+    public void fromBytes(ByteBuf buf) {
+        this.minX = buf.readInt();
+        this.minZ = buf.readInt();
+        this.maxX = buf.readInt();
+        this.maxZ = buf.readInt();
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf) {
+        buf.writeInt(this.minX);
+        buf.writeInt(this.minZ);
+        buf.writeInt(this.maxX);
+        buf.writeInt(this.maxZ);
+    }
+
+    public static class Handler extends WorldModificationsMessageHandler<C42TrackingTabletViewport, C42TrackingTabletViewport> {
+
+        @Override
+        protected void handleMessage(C42TrackingTabletViewport message, MessageContext ctx, World world, EntityPlayer player) {
+            if (TrackingTabletIterator.PLAYER_TO_TABLET_MAP.containsKey(player.getUniqueID())) {
+                TrackingTabletIterator.PLAYER_TO_TABLET_MAP.get(player.getUniqueID()).setFocus(message.minX, message.minZ, message.maxX, message.maxZ);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package net.dumbcode.projectnublar.server.network;
 
 import com.google.common.collect.Sets;
 import io.netty.buffer.ByteBuf;
+import net.dumbcode.projectnublar.client.render.FenceSectionRenderer;
 import net.dumbcode.projectnublar.server.block.entity.ConnectableBlockEntity;
 import net.dumbcode.projectnublar.server.utils.Connection;
 import net.minecraft.entity.player.EntityPlayer;
@@ -36,6 +37,7 @@ public class S20RegenCache implements IMessage {
                     ce.getConnections().addAll(newConnection);
                 }
             }
+            FenceSectionRenderer.markAllDirty();
         }
     }
 }
@@ -8,52 +8,185 @@ import net.minecraft.client.Minecraft;
 import net.minecraft.client.gui.GuiScreen;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.world.World;
+import net.minecraftforge.fml.common.network.ByteBufUtils;
 import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
 import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
 
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends a batch of tracking tablet map tiles. <br>
+ * Map colours have very few distinct values, so each tile is written as a palette followed by run length encoded palette indices.
+ * Tiles with more than 256 colours fall back to raw ints. On the client, the tiles are kept encoded until they are decoded
+ * straight into the texture upload buffer by {@link #decodeTile(ByteBuf, IntBuffer, int)}. <br>
+ * Each tile has a scale, the size in blocks of each pixel. Overview tiles use a scale above 1, and full resolution tiles use 1.
+ */
 public class S24TrackingTabletUpdateChunk implements IMessage {
 
-    private int startX;
-    private int endX;
-    private int startZ;
-    private int endZ;
-    private int[] data;
+    public static final int MAX_TILES = 64;
+
+    private static final byte ENCODING_PALETTE = 0;
+    private static final byte ENCODING_RAW = 1;
+    private static final int MAX_PALETTE_SIZE = 256;
+
+    //Server side
+    private final List<Tile> tiles = new ArrayList<>();
+
+    //Client side, the still encoded tiles
+    private int amount;
+    private ByteBuf payload;
 
     public S24TrackingTabletUpdateChunk() {
     }
 
-    public S24TrackingTabletUpdateChunk(int startX, int endX, int startZ, int endZ, int[] data) {
-        this.startX = startX;
-        this.endX = endX;
-        this.startZ = startZ;
-        this.endZ = endZ;
-        this.data = data;
+    public void addTile(int startX, int endX, int startZ, int endZ, int[] data) {
+        this.addTile(startX, startZ, endX - startX + 1, endZ - startZ + 1, 1, data);
+    }
+
+    /**
+     * @param startX the x block position of the first pixel
+     * @param startZ the z block position of the first pixel
+     * @param width the width of the tile, in pixels
+     * @param height the height of the tile, in pixels
+     * @param scale the size of each pixel, in blocks
+     * @param data the pixels
+     */
+    public void addTile(int startX, int startZ, int width, int height, int scale, int[] data) {
+        this.tiles.add(new Tile(startX, startZ, width, height, scale, data));
+    }
+
+    public boolean isFull() {
+        return this.tiles.size() >= MAX_TILES;
+    }
+
+    public boolean isEmpty() {
+        return this.tiles.isEmpty();
     }
 
     @Override
     public void fromBytes(ByteBuf buf) {
-        this.startX = buf.readInt();
-        this.endX = buf.readInt();
-        this.startZ = buf.readInt();
-        this.endZ = buf.readInt();
-
-        int len = buf.readInt();
-        this.data = new int[len];
-        for (int i = 0; i < len; i++) {
-            this.data[i] = buf.readInt();
-        }
+        this.amount = buf.readShort();
+        this.payload = buf.readBytes(buf.readableBytes());
     }
 
     @Override
     public void toBytes(ByteBuf buf) {
-        buf.writeInt(this.startX);
-        buf.writeInt(this.endX);
-        buf.writeInt(this.startZ);
-        buf.writeInt(this.endZ);
-
-        buf.writeInt(this.data.length);
-        for (int datum : this.data) {
-            buf.writeInt(datum);
+        buf.writeShort(this.tiles.size());
+        int[] palette = new int[MAX_PALETTE_SIZE];
+        for (Tile tile : this.tiles) {
+            buf.writeInt(tile.startX);
+            buf.writeInt(tile.startZ);
+            buf.writeShort(tile.width);
+            buf.writeShort(tile.height);
+            buf.writeByte(tile.scale);
+            encodeTile(buf, tile.data, palette);
+        }
+    }
+
+    private static void encodeTile(ByteBuf buf, int[] data, int[] palette) {
+        int paletteSize = 0;
+        int lastColor = 0;
+        boolean hasLast = false;
+        for (int color : data) {
+            if(hasLast && color == lastColor) {
+                continue;
+            }
+            if(indexOf(palette, paletteSize, color) == -1) {
+                if(paletteSize == MAX_PALETTE_SIZE) {
+                    paletteSize = -1;
+                    break;
+                }
+                palette[paletteSize++] = color;
+            }
+            lastColor = color;
+            hasLast = true;
+        }
+
+        if(paletteSize == -1) {
+            buf.writeByte(ENCODING_RAW);
+            buf.ensureWritable(data.length * 4);
+            int writerIndex = buf.writerIndex();
+            for (int i = 0; i < data.length; i++) {
+                buf.setInt(writerIndex + i * 4, data[i]);
+            }
+            buf.writerIndex(writerIndex + data.length * 4);
+            return;
+        }
+
+        buf.writeByte(ENCODING_PALETTE);
+        buf.writeByte(paletteSize - 1);
+        for (int i = 0; i < paletteSize; i++) {
+            buf.writeInt(palette[i]);
+        }
+
+        int i = 0;
+        while(i < data.length) {
+            int color = data[i];
+            int run = 1;
+            while(i + run < data.length && data[i + run] == color) {
+                run++;
+            }
+            ByteBufUtils.writeVarInt(buf, run, 3);
+            buf.writeByte(indexOf(palette, paletteSize, color));
+            i += run;
+        }
+    }
+
+    private static int indexOf(int[] palette, int size, int color) {
+        for (int i = 0; i < size; i++) {
+            if(palette[i] == color) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a single tile's pixels into the buffer.
+     * @param buf the buffer, positioned at the start of the tile's pixel data
+     * @param into the buffer to put the pixels into
+     * @param pixels the amount of pixels in the tile
+     */
+    public static void decodeTile(ByteBuf buf, IntBuffer into, int pixels) {
+        if(buf.readByte() == ENCODING_RAW) {
+            for (int i = 0; i < pixels; i++) {
+                into.put(buf.readInt());
+            }
+            return;
+        }
+
+        int paletteSize = (buf.readByte() & 255) + 1;
+        int paletteStart = buf.readerIndex();
+        buf.skipBytes(paletteSize * 4);
+
+        int decoded = 0;
+        while(decoded < pixels) {
+            int run = ByteBufUtils.readVarInt(buf, 3);
+            int color = buf.getInt(paletteStart + (buf.readByte() & 255) * 4);
+            for (int r = 0; r < run; r++) {
+                into.put(color);
+            }
+            decoded += run;
+        }
+    }
+
+    private static class Tile {
+        private final int startX;
+        private final int startZ;
+        private final int width;
+        private final int height;
+        private final int scale;
+        private final int[] data;
+
+        private Tile(int startX, int startZ, int width, int height, int scale, int[] data) {
+            this.startX = startX;
+            this.startZ = startZ;
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+            this.data = data;
         }
     }
 
@@ -61,12 +194,25 @@ public class S24TrackingTabletUpdateChunk implements IMessage {
 
         @Override
         protected void handleMessage(S24TrackingTabletUpdateChunk message, MessageContext ctx, World world, EntityPlayer player) {
-            GuiScreen screen = Minecraft.getMinecraft().currentScreen;
-            if(screen instanceof OpenedTabletScreen) {
-                TabletScreen tabletScreen = ((OpenedTabletScreen) screen).getScreen();
-                if(tabletScreen instanceof TrackingTabletScreen) {
-                    ((TrackingTabletScreen) tabletScreen).setRGB(message.startX, message.startZ, message.endX - message.startX + 1, message.endZ - message.startZ + 1, message.data);
+            //The payload is released even if decoding throws, otherwise the pooled buffer would leak
+            try {
+                GuiScreen screen = Minecraft.getMinecraft().currentScreen;
+                if(screen instanceof OpenedTabletScreen) {
+                    TabletScreen tabletScreen = ((OpenedTabletScreen) screen).getScreen();
+                    if(tabletScreen instanceof TrackingTabletScreen) {
+                        ByteBuf buf = message.payload;
+                        for (int i = 0; i < message.amount; i++) {
+                            int startX = buf.readInt();
+                            int startZ = buf.readInt();
+                            int width = buf.readShort();
+                            int height = buf.readShort();
+                            int scale = buf.readByte();
+                            ((TrackingTabletScreen) tabletScreen).setRGB(startX, startZ, width, height, scale, buf);
+                        }
+                    }
                 }
+            } finally {
+                message.payload.release();
             }
         }
     }
@@ -0,0 +1,208 @@
+package net.dumbcode.projectnublar.server.network;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.Value;
+import net.dumbcode.projectnublar.client.gui.tablet.OpenedTabletScreen;
+import net.dumbcode.projectnublar.client.gui.tablet.TabletScreen;
+import net.dumbcode.projectnublar.client.gui.tablet.screens.TrackingTabletScreen;
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.entity.tracking.TrackingDataInformation;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.gui.GuiScreen;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.common.network.simpleimpl.IMessage;
+import net.minecraftforge.fml.common.network.simpleimpl.MessageContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Sends the changes to the tracking data since the last update for a tracking tablet session.
+ * Entries are referenced by a short id assigned by the session, and positions are sent as fixed point
+ * (1/16th of a block) shorts relative to the tablet origin.
+ */
+@Getter
+public class S32UpdateTrackingDataList implements IMessage {
+
+    public static final float POSITION_SCALE = 16F;
+
+    private int originX;
+    private int originZ;
+
+    private final List<Short> removed = new ArrayList<>();
+    private final List<AddedEntry> added = new ArrayList<>();
+    private final List<ChangedEntry> changed = new ArrayList<>();
+
+    public S32UpdateTrackingDataList() {
+    }
+
+    public S32UpdateTrackingDataList(int originX, int originZ) {
+        this.originX = originX;
+        this.originZ = originZ;
+    }
+
+    public boolean isEmpty() {
+        return this.removed.isEmpty() && this.added.isEmpty() && this.changed.isEmpty();
+    }
+
+    public Vec3d decodePosition(short x, short y, short z) {
+        return new Vec3d(this.originX + x / POSITION_SCALE, y / POSITION_SCALE, this.originZ + z / POSITION_SCALE);
+    }
+
+    @Override
+    public void fromBytes(ByteBuf buf) {
+        this.originX = buf.readInt();
+        this.originZ = buf.readInt();
+
+        this.removed.clear();
+        this.added.clear();
+        this.changed.clear();
+
+        int removedSize = buf.readShort();
+        for (int i = 0; i < removedSize; i++) {
+            this.removed.add(buf.readShort());
+        }
+
+        int addedSize = buf.readShort();
+        for (int i = 0; i < addedSize; i++) {
+            AddedEntry entry = new AddedEntry(buf.readShort(), new UUID(buf.readLong(), buf.readLong()), buf.readShort(), buf.readShort(), buf.readShort());
+            readInformation(buf, buf.readByte(), entry.information);
+            entry.information.removeIf(Objects::isNull);
+            this.added.add(entry);
+        }
+
+        int changedSize = buf.readShort();
+        for (int i = 0; i < changedSize; i++) {
+            short id = buf.readShort();
+            boolean positionChanged = buf.readBoolean();
+            short x = 0, y = 0, z = 0;
+            if(positionChanged) {
+                x = buf.readShort();
+                y = buf.readShort();
+                z = buf.readShort();
+            }
+            int informationSize = buf.readByte();
+            int dirtyMask = buf.readInt();
+            List<TrackingDataInformation> information = new ArrayList<>();
+            readInformation(buf, Integer.bitCount(dirtyMask), information);
+            //Clear the bits of the information that couldn't be read, so the client keeps what it had for them
+            int index = 0;
+            for (int bit = 0; bit < informationSize; bit++) {
+                if((dirtyMask & (1 << bit)) != 0 && information.get(index++) == null) {
+                    dirtyMask &= ~(1 << bit);
+                }
+            }
+            information.removeIf(Objects::isNull);
+            ChangedEntry entry = new ChangedEntry(id, positionChanged, x, y, z, informationSize, dirtyMask);
+            entry.information.addAll(information);
+            this.changed.add(entry);
+        }
+    }
+
+    @Override
+    public void toBytes(ByteBuf buf) {
+        buf.writeInt(this.originX);
+        buf.writeInt(this.originZ);
+
+        buf.writeShort(this.removed.size());
+        for (short id : this.removed) {
+            buf.writeShort(id);
+        }
+
+        buf.writeShort(this.added.size());
+        for (AddedEntry entry : this.added) {
+            buf.writeShort(entry.id);
+            buf.writeLong(entry.uuid.getMostSignificantBits());
+            buf.writeLong(entry.uuid.getLeastSignificantBits());
+            buf.writeShort(entry.x);
+            buf.writeShort(entry.y);
+            buf.writeShort(entry.z);
+            buf.writeByte(entry.information.size());
+            entry.information.forEach(info -> writeInformation(buf, info));
+        }
+
+        buf.writeShort(this.changed.size());
+        for (ChangedEntry entry : this.changed) {
+            buf.writeShort(entry.id);
+            buf.writeBoolean(entry.positionChanged);
+            if(entry.positionChanged) {
+                buf.writeShort(entry.x);
+                buf.writeShort(entry.y);
+                buf.writeShort(entry.z);
+            }
+            buf.writeByte(entry.informationSize);
+            buf.writeInt(entry.dirtyMask);
+            entry.information.forEach(info -> writeInformation(buf, info));
+        }
+    }
+
+    //Each information is prefixed with its length, so one that can't be read can be skipped without breaking the rest of the message
+    private static void writeInformation(ByteBuf buf, TrackingDataInformation info) {
+        int lengthIndex = buf.writerIndex();
+        buf.writeInt(0);
+        TrackingDataInformation.serializeBuf(buf, info);
+        buf.setInt(lengthIndex, buf.writerIndex() - lengthIndex - 4);
+    }
+
+    //Information that fails to deserialize is logged and added as null, so the caller can line it up with the dirty bits before dropping it
+    private static void readInformation(ByteBuf buf, int amount, List<TrackingDataInformation> into) {
+        for (int i = 0; i < amount; i++) {
+            ByteBuf data = buf.readSlice(buf.readInt());
+            TrackingDataInformation info = null;
+            try {
+                info = TrackingDataInformation.deserializeBuf(data).orElse(null);
+                if(info == null) {
+                    ProjectNublar.getLogger().warn("Skipping tracking information of unknown type");
+                }
+            } catch (RuntimeException e) {
+                ProjectNublar.getLogger().warn("Unable to read tracking information, skipping it", e);
+            }
+            into.add(info);
+        }
+    }
+
+    @Value
+    public static class AddedEntry {
+        private final short id;
+        private final UUID uuid;
+        private final short x;
+        private final short y;
+        private final short z;
+        private final List<TrackingDataInformation> information = new ArrayList<>();
+    }
+
+    /**
+     * A change to an existing entry. The information list only contains the information for the bits set in
+     * {@link #dirtyMask}, in ascending bit order. {@link #informationSize} is the new total amount of information.
+     */
+    @Value
+    public static class ChangedEntry {
+        private final short id;
+        private final boolean positionChanged;
+        private final short x;
+        private final short y;
+        private final short z;
+        private final int informationSize;
+        private final int dirtyMask;
+        private final List<TrackingDataInformation> information = new ArrayList<>();
+    }
+
+    public static class Handler extends WorldModificationsMessageHandler<S32UpdateTrackingDataList, S32UpdateTrackingDataList> {
+
+        @Override
+        protected void handleMessage(S32UpdateTrackingDataList message, MessageContext ctx, World world, EntityPlayer player) {
+            GuiScreen screen = Minecraft.getMinecraft().currentScreen;
+            if(screen instanceof OpenedTabletScreen) {
+                TabletScreen tabletScreen = ((OpenedTabletScreen) screen).getScreen();
+                if(tabletScreen instanceof TrackingTabletScreen) {
+                    ((TrackingTabletScreen) tabletScreen).setTrackingData(message);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package net.dumbcode.projectnublar.server.profiler;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A section of code timed by the {@link ProjectNublarProfiler}. Sections should be got once, and kept in a field. <br>
+ * Each section keeps totals since the profiler was last reset, and the times and allocations of its most recent calls,
+ * which are used for the percentiles and the log2 nanosecond histogram.
+ * Sections can be timed on any thread.
+ */
+public class ProfilerSection {
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    private static final int WINDOW = 1024;
+
+    @Getter
+    private final String name;
+
+    private final ThreadLocal<long[]> allocationStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final long[] times = new long[WINDOW];
+    private final long[] allocations = new long[WINDOW];
+    private int index;
+    private int size;
+
+    private long calls;
+    private long totalNanos;
+    private long totalAllocated;
+    private long maxNanos;
+
+    ProfilerSection(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Starts timing this section. When the profiler is disabled this does nothing.
+     * @return the value that should be passed to {@link #stop(long)}
+     */
+    public long start() {
+        if(!ProjectNublarProfiler.isEnabled()) {
+            return NOT_STARTED;
+        }
+        this.allocationStart.get()[0] = ProjectNublarProfiler.getAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    /**
+     * Stops timing this section
+     * @param start the value returned from {@link #start()}
+     */
+    public void stop(long start) {
+        if(start != NOT_STARTED) {
+            long time = System.nanoTime() - start;
+            long allocated = ProjectNublarProfiler.getAllocatedBytes() - this.allocationStart.get()[0];
+            this.record(time, Math.max(allocated, 0));
+        }
+    }
+
+    private synchronized void record(long time, long allocated) {
+        this.times[this.index] = time;
+        this.allocations[this.index] = allocated;
+        this.index = (this.index + 1) % WINDOW;
+        this.size = Math.min(this.size + 1, WINDOW);
+
+        this.calls++;
+        this.totalNanos += time;
+        this.totalAllocated += allocated;
+        this.maxNanos = Math.max(this.maxNanos, time);
+    }
+
+    synchronized void reset() {
+        this.index = 0;
+        this.size = 0;
+        this.calls = 0;
+        this.totalNanos = 0;
+        this.totalAllocated = 0;
+        this.maxNanos = 0;
+    }
+
+    synchronized Snapshot snapshot() {
+        long[] recent = Arrays.copyOf(this.times, this.size);
+        long recentAllocated = 0;
+        long[] histogram = new long[64];
+        for (int i = 0; i < this.size; i++) {
+            recentAllocated += this.allocations[i];
+            histogram[63 - Long.numberOfLeadingZeros(Math.max(recent[i], 1))]++;
+        }
+        Arrays.sort(recent);
+        return new Snapshot(this.name, this.calls, this.totalNanos, this.totalAllocated, this.maxNanos,
+            percentile(recent, 0.5D), percentile(recent, 0.95D), percentile(recent, 0.99D),
+            this.size == 0 ? 0 : recentAllocated / this.size, histogram
+        );
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min((int) (sorted.length * percentile), sorted.length - 1)];
+    }
+
+    @Getter
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Snapshot {
+        static final String CSV_HEADER = "section,calls,total_ms,mean_us,p50_us,p95_us,p99_us,max_us,total_allocated_bytes,recent_allocated_bytes_per_call";
+
+        private final String name;
+        private final long calls;
+        private final long totalNanos;
+        private final long totalAllocated;
+        private final long maxNanos;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+        private final long recentAllocatedPerCall;
+        //Index i is the amount of recent calls that took between 2^i and 2^(i+1) nanoseconds
+        private final long[] histogram;
+
+        public long getMeanNanos() {
+            return this.calls == 0 ? 0 : this.totalNanos / this.calls;
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%d,%d",
+                this.name, this.calls, this.totalNanos / 1e6D, this.getMeanNanos() / 1e3D,
+                this.p50 / 1e3D, this.p95 / 1e3D, this.p99 / 1e3D, this.maxNanos / 1e3D,
+                this.totalAllocated, this.recentAllocatedPerCall
+            );
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("section", this.name);
+            json.addProperty("calls", this.calls);
+            json.addProperty("total_nanos", this.totalNanos);
+            json.addProperty("mean_nanos", this.getMeanNanos());
+            json.addProperty("p50_nanos", this.p50);
+            json.addProperty("p95_nanos", this.p95);
+            json.addProperty("p99_nanos", this.p99);
+            json.addProperty("max_nanos", this.maxNanos);
+            json.addProperty("total_allocated_bytes", this.totalAllocated);
+            json.addProperty("recent_allocated_bytes_per_call", this.recentAllocatedPerCall);
+            JsonArray histogram = new JsonArray();
+            for (long count : this.histogram) {
+                histogram.add(count);
+            }
+            json.add("log2_nanos_histogram", histogram);
+            return json;
+        }
+    }
+}
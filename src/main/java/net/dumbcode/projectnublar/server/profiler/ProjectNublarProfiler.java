@@ -0,0 +1,142 @@
+package net.dumbcode.projectnublar.server.profiler;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.ProjectNublarConfig;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Times the entity systems, AIs and ticking block entities of Project Nublar. <br>
+ * The profiler is off by default, and is toggled with {@code /projectnublar profile}. While it's off, a timed section
+ * costs one volatile read. While it's on, it can be dumped to the world folder, either from the command or every
+ * {@link ProjectNublarConfig.Profiler#dumpInterval} seconds.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class ProjectNublarProfiler {
+
+    private static final Map<String, ProfilerSection> SECTIONS = new ConcurrentHashMap<>();
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = getAllocationBean();
+
+    private static volatile boolean enabled;
+
+    /**
+     * Gets the section with the name, creating it if needed.
+     * @param name the name of the section. Names are split into groups with {@code /}, for example {@code system/AgeSystem/update}
+     * @return the section
+     */
+    public static ProfilerSection section(String name) {
+        return SECTIONS.computeIfAbsent(name, ProfilerSection::new);
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ProjectNublarProfiler.enabled = enabled;
+    }
+
+    /**
+     * Clears the timings of every section
+     */
+    public static void reset() {
+        SECTIONS.values().forEach(ProfilerSection::reset);
+    }
+
+    /**
+     * @return a snapshot of every section that has been timed, ordered by the total time spent in it
+     */
+    public static List<ProfilerSection.Snapshot> getSnapshots() {
+        return SECTIONS.values().stream()
+            .map(ProfilerSection::snapshot)
+            .filter(snapshot -> snapshot.getCalls() > 0)
+            .sorted(Comparator.comparingLong(ProfilerSection.Snapshot::getTotalNanos).reversed())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Writes every section to a new file in {@code projectnublar/profiler} in the world folder.
+     * @param server the server
+     * @param format the format of the file
+     * @return the file written to
+     * @throws IOException if the file couldn't be written
+     */
+    public static File dump(MinecraftServer server, DumpFormat format) throws IOException {
+        File folder = new File(server.getWorld(0).getSaveHandler().getWorldDirectory(), "projectnublar/profiler");
+        if(!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Unable to create folder: " + folder.getAbsolutePath());
+        }
+        File file = new File(folder, "profile-" + new SimpleDateFormat("yyyy-MM-dd_HH.mm.ss").format(new Date()) + "." + format.name().toLowerCase());
+        List<ProfilerSection.Snapshot> snapshots = getSnapshots();
+        try (PrintWriter writer = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+            if(format == DumpFormat.CSV) {
+                writer.println(ProfilerSection.Snapshot.CSV_HEADER);
+                snapshots.forEach(snapshot -> writer.println(snapshot.toCsv()));
+            } else {
+                JsonArray array = new JsonArray();
+                snapshots.forEach(snapshot -> array.add(snapshot.toJson()));
+                writer.println(new GsonBuilder().setPrettyPrinting().create().toJson(array));
+            }
+        }
+        return file;
+    }
+
+    static long getAllocatedBytes() {
+        return ALLOCATIONS == null ? 0 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        int interval = ProjectNublarConfig.PROFILER.dumpInterval;
+        if(enabled && interval > 0 && event.phase == TickEvent.Phase.END) {
+            MinecraftServer server = FMLCommonHandler.instance().getMinecraftServerInstance();
+            if(server != null && server.getTickCounter() % (interval * 20) == 0) {
+                try {
+                    dump(server, ProjectNublarConfig.PROFILER.dumpFormat);
+                } catch (IOException e) {
+                    ProjectNublar.getLogger().error("Unable to write profiler dump", e);
+                }
+            }
+        }
+    }
+
+    //Allocation counting is only available on HotSpot based jvms
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if(bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if(sunBean.isThreadAllocatedMemorySupported()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                    return sunBean;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            ProjectNublar.getLogger().warn("Unable to count allocations for the profiler", e);
+        }
+        return null;
+    }
+
+    public enum DumpFormat {
+        CSV, JSON
+    }
+}
@@ -0,0 +1,103 @@
+package net.dumbcode.projectnublar.server.utils;
+
+import net.minecraft.util.math.BlockPos;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, ordered run of block positions, such as the blocks a fence line goes through. <br>
+ * The positions are stored packed as longs, with a small open addressing hash table from position to index,
+ * so {@link #indexOf(Object)} and {@link #contains(Object)} don't need to walk the run.
+ * @see LineUtils#getBlocksInbetween(BlockPos, BlockPos, double)
+ */
+public class BlockRun extends AbstractList<BlockPos> implements RandomAccess {
+
+    private final long[] positions;
+    //The hash table. Each slot holds the index into positions plus one, with zero meaning an empty slot.
+    private final int[] table;
+    private final int mask;
+
+    public BlockRun(long[] positions) {
+        this.positions = positions;
+        int capacity = Integer.highestOneBit(Math.max(positions.length, 1) * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < positions.length; i++) {
+            int slot = hash(positions[i]) & this.mask;
+            while (this.table[slot] != 0) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.table[slot] = i + 1;
+        }
+    }
+
+    @Override
+    public BlockPos get(int index) {
+        return BlockPos.fromLong(this.positions[index]);
+    }
+
+    /**
+     * Gets the position at the index, packed as with {@link BlockPos#toLong()}
+     */
+    public long getLong(int index) {
+        return this.positions[index];
+    }
+
+    @Override
+    public int size() {
+        return this.positions.length;
+    }
+
+    /**
+     * Gets the index of the packed position in this run.
+     * @param pos the position, packed as with {@link BlockPos#toLong()}
+     * @return the index, or -1 if the position isn't in this run
+     */
+    public int indexOf(long pos) {
+        int slot = hash(pos) & this.mask;
+        int entry;
+        while ((entry = this.table[slot]) != 0) {
+            if(this.positions[entry - 1] == pos) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof BlockPos ? this.indexOf(((BlockPos) o).toLong()) : -1;
+    }
+
+    //Positions are never repeated in a run
+    @Override
+    public int lastIndexOf(Object o) {
+        return this.indexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return this.indexOf(o) != -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(o instanceof BlockRun) {
+            return Arrays.equals(this.positions, ((BlockRun) o).positions);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    private static int hash(long pos) {
+        long h = pos * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -142,6 +142,11 @@ public class BlockUtils {
     }
 
     public static BlockPos getTopSolid(World world, BlockPos pos){
+        //Nothing above the scan start can be solid, so skip the empty part of the column
+        int start = ColumnTopCache.getScanStartY(world, pos.getX(), pos.getZ()) + 1;
+        if(pos.getY() > start) {
+            pos = new BlockPos(pos.getX(), start, pos.getZ());
+        }
         while (pos.getY() > 0 && !world.isSideSolid(pos.down(), EnumFacing.UP)) {
             pos = pos.down();
         }
@@ -0,0 +1,123 @@
+package net.dumbcode.projectnublar.server.utils;
+
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.init.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Finds the top block of a column. The top block is the highest block that is either a full block, a liquid or a snow layer. <br>
+ * Instead of walking down from the top of the world, the search starts at the chunk's height map and precipitation height,
+ * as nothing above both of those can be a full block or a liquid. On the server, the results are cached per chunk,
+ * and the cached column is cleared when a block in it changes.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class ColumnTopCache {
+
+    private static final int UNKNOWN = -1;
+
+    private static final Map<World, Map<Long, int[]>> CACHE = new WeakHashMap<>();
+
+    /**
+     * Gets the y position of the top block of the column, or 0 if there are no top blocks.
+     */
+    public static int getTopBlockY(World world, int x, int z) {
+        if(world.isRemote) {
+            return findTopBlockY(world, x, z);
+        }
+        int[] columns = CACHE.computeIfAbsent(world, w -> new HashMap<>()).computeIfAbsent(ChunkPos.asLong(x >> 4, z >> 4), l -> {
+            int[] arr = new int[16 * 16];
+            Arrays.fill(arr, UNKNOWN);
+            return arr;
+        });
+        int index = (x & 15) | (z & 15) << 4;
+        if(columns[index] == UNKNOWN) {
+            columns[index] = findTopBlockY(world, x, z);
+        }
+        return columns[index];
+    }
+
+    /**
+     * Moves the position to the top block of its column.
+     * @return {@code pos}, for chaining
+     */
+    public static BlockPos.MutableBlockPos getTopBlock(World world, BlockPos.MutableBlockPos pos) {
+        return pos.setPos(pos.getX(), getTopBlockY(world, pos.getX(), pos.getZ()), pos.getZ());
+    }
+
+    /**
+     * Gets the position directly above the top block of the column, where something could be placed.
+     */
+    public static BlockPos getAboveTopBlock(World world, int x, int z) {
+        return new BlockPos(x, getTopBlockY(world, x, z) + 1, z);
+    }
+
+    public static boolean isTopBlock(IBlockState state) {
+        return state.isFullBlock() || state.getMaterial().isLiquid() || state.getBlock() == Blocks.SNOW_LAYER;
+    }
+
+    /**
+     * Gets the y position to start a top down search from. Every block above this position is neither opaque,
+     * a liquid or a block that blocks movement, so a search from the top of the world can safely skip straight to here.
+     */
+    public static int getScanStartY(World world, int x, int z) {
+        Chunk chunk = world.getChunk(x >> 4, z >> 4);
+        return Math.min(Math.max(chunk.getHeightValue(x & 15, z & 15), chunk.getPrecipitationHeight(new BlockPos(x, 0, z)).getY()), 255);
+    }
+
+    private static int findTopBlockY(World world, int x, int z) {
+        Chunk chunk = world.getChunk(x >> 4, z >> 4);
+        BlockPos.PooledMutableBlockPos pos = BlockPos.PooledMutableBlockPos.retain();
+        int y = getScanStartY(world, x, z);
+        while(y >= 1) {
+            if(isTopBlock(chunk.getBlockState(pos.setPos(x, y, z)))) {
+                break;
+            }
+            y--;
+        }
+        pos.release();
+        return Math.max(y, 0);
+    }
+
+    private static void onBlockChanged(World world, BlockPos pos, IBlockState oldState, IBlockState newState) {
+        Map<Long, int[]> chunks = CACHE.get(world);
+        if(chunks != null) {
+            int[] columns = chunks.get(ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4));
+            if(columns != null) {
+                columns[(pos.getX() & 15) | (pos.getZ() & 15) << 4] = UNKNOWN;
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldLoad(WorldEvent.Load event) {
+        if(!event.getWorld().isRemote) {
+            event.getWorld().addEventListener(new BlockChangeListener(ColumnTopCache::onBlockChanged));
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        CACHE.remove(event.getWorld());
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        Map<Long, int[]> chunks = CACHE.get(event.getWorld());
+        if(chunks != null) {
+            chunks.remove(ChunkPos.asLong(event.getChunk().x, event.getChunk().z));
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package net.dumbcode.projectnublar.server.utils;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Value;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.RayTraceResult;
+import net.minecraft.util.math.Vec3d;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.vecmath.Vector3d;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * The geometry of a {@link Connection}: where the cable goes through the block, its collision boxes and its render cuboids. <br>
+ * The geometry only depends on a connection's {@link Key}, so connections with the same key share one geometry,
+ * memoized in a bounded cache. Only the intersection with the block is worked out up front.
+ * The collision boxes and render cuboids are built the first time they're used, so connections that are only loaded never build them.
+ */
+@Getter
+public class ConnectionGeometry {
+
+    private static final int CACHE_SIZE = 4096;
+
+    //Access ordered, so the least recently used geometry is dropped first
+    private static final Map<Key, ConnectionGeometry> CACHE = new LinkedHashMap<Key, ConnectionGeometry>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ConnectionGeometry> eldest) {
+            return this.size() > CACHE_SIZE;
+        }
+    };
+
+    @Getter(AccessLevel.NONE) private final Key key;
+
+    private final double[] in;
+    private final boolean valid;
+
+    private final double xzlen;
+    private final double fullLen;
+
+    private final Vector3d center;
+
+    @Getter(AccessLevel.NONE) private RotatedRayBox rayBox;
+    @Getter(AccessLevel.NONE) private SurroundingCache prevCache;
+    @Getter(AccessLevel.NONE) private SurroundingCache nextCache;
+    @Getter(AccessLevel.NONE) private CableCache cableCache;
+
+    private ConnectionGeometry(Key key) {
+        this.key = key;
+        double[] intercept = LineUtils.intersect(key.position, key.from, key.to, key.offset);
+        if(intercept == null) {
+            intercept = new double[6]; //ew
+            this.valid = false;
+        } else {
+            this.valid = true;
+        }
+        this.in = intercept;
+        this.xzlen = Math.sqrt((this.in[1]-this.in[0])*(this.in[1]-this.in[0]) + (this.in[3]-this.in[2])*(this.in[3]-this.in[2]));
+        this.fullLen = Math.sqrt(this.xzlen*this.xzlen + (this.in[5]-this.in[4])*(this.in[5]-this.in[4]));
+        this.center = new Vector3d((this.in[0]+this.in[1])/2, (this.in[4]+this.in[5])/2, (this.in[2]+this.in[3])/2);
+    }
+
+    /**
+     * Gets the geometry for the key, from the cache if it's there.
+     */
+    public static ConnectionGeometry get(Key key) {
+        //Used by both the server and client threads
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(key, ConnectionGeometry::new);
+        }
+    }
+
+    public synchronized RotatedRayBox getRayBox() {
+        if(this.rayBox == null) {
+            double w = this.key.type.getCableWidth();
+            this.rayBox = new RotatedRayBox.Builder(new AxisAlignedBB(0, -w, -w, -this.fullLen, w, w))
+                    .origin(this.in[0], this.in[4], this.in[2])
+                    .rotate(Math.atan((this.in[5] - this.in[4]) / this.xzlen), 0, 0, 1)
+                    .rotate(this.in[1] == this.in[0] ? Math.PI*1.5D : Math.atan((this.in[3] - this.in[2]) / (this.in[1] - this.in[0])), 0, 1, 0)
+                    .build();
+        }
+        return this.rayBox;
+    }
+
+    public synchronized SurroundingCache getPrevCache() {
+        this.genSurroundingCaches();
+        return this.prevCache;
+    }
+
+    public synchronized SurroundingCache getNextCache() {
+        this.genSurroundingCaches();
+        return this.nextCache;
+    }
+
+    /**
+     * Gets the cuboids of the cable, generating them the first time they're needed.
+     * The cuboids are plain data, so they can be batched into whatever buffer is rendering them.
+     */
+    public synchronized CableCache getCableCache() {
+        if(this.cableCache == null) {
+            this.cableCache = this.genCableCache();
+        }
+        return this.cableCache;
+    }
+
+    //Each part of the geometry uses its own random with the same seed, so the result doesn't depend on which part is built first
+    private Random createRandom() {
+        return new Random(this.key.position.toLong() * (long)(this.key.offset * 1000));
+    }
+
+    private void genSurroundingCaches() {
+        if(this.prevCache == null) {
+            Random random = this.createRandom();
+            this.prevCache = this.genCache(false, random);
+            this.nextCache = this.genCache(true, random);
+        }
+    }
+
+    private SurroundingCache genCache(boolean next, Random random) {
+        Vector3d point = new Vector3d((next ? 1 : -1) * this.fullLen/2, 0, 0);
+        double w = this.key.type.getCableWidth();
+        RotatedRayBox fixedBox = new RotatedRayBox.Builder(new AxisAlignedBB(0, -w, -w, -this.fullLen/2, w, w))
+                .origin(next?this.center.x:this.in[0], next?this.center.y:this.in[4], next?this.center.z:this.in[2])
+                .rotate(Math.atan((this.in[5] - this.in[4]) / this.xzlen), 0, 0, 1)
+                .rotate(this.in[1] == this.in[0] ? Math.PI*1.5D : Math.atan((this.in[3] - this.in[2]) / (this.in[1] - this.in[0])), 0, 1, 0)
+                .build();
+        double yang = (random.nextFloat()-0.5F) * Math.PI/3F;
+        double zang = (random.nextFloat()-0.5F) * Math.PI/3F;
+        RotatedRayBox rotatedBox = this.genRotatedBox((next ? 1 : -1) * this.fullLen/2, yang, zang);
+        rotatedBox.getBackwards().transform(point);
+        AxisAlignedBB aabb = new AxisAlignedBB(this.key.position);
+        Vec3d centerVec = new Vec3d(this.center.x, this.center.y, this.center.z);
+        Vec3d vec3d = new Vec3d(point.x, point.y, point.z).add(centerVec);
+        if(!aabb.contains(vec3d)) { //Point outside of bounding box. Cant happen for selction box reasons
+            RayTraceResult result = aabb.calculateIntercept(centerVec, vec3d);
+            if(result != null && result.hitVec != null) {
+                double dist = result.hitVec.distanceTo(centerVec) * (next ? 1 : -1) ;
+                rotatedBox = this.genRotatedBox(dist, yang, zang);
+                point = new Vector3d(dist, 0, 0);
+                rotatedBox.getBackwards().transform(point);
+            }
+        }
+        return new SurroundingCache(point, fixedBox, rotatedBox);
+    }
+
+    private RotatedRayBox genRotatedBox(double length, double yang, double zang) {
+        double w = this.key.type.getCableWidth();
+        return new RotatedRayBox.Builder(new AxisAlignedBB(0, -w, -w, length, w, w))
+                .origin(this.center.x, this.center.y, this.center.z)
+                .rotate((this.in[1] == this.in[0] ? Math.PI*1.5D : Math.atan((this.in[3] - this.in[2]) / (this.in[1] - this.in[0]))) + yang, 0, 1, 0)
+                .rotate(Math.atan((this.in[5] - this.in[4]) / this.xzlen) + zang, 0, 0, 1)
+                .build();
+    }
+
+    private CableCache genCableCache() {
+        //The surrounding caches use the first 4 floats of the random
+        Random random = this.createRandom();
+        for (int i = 0; i < 4; i++) {
+            random.nextFloat();
+        }
+        double halfthick = this.key.type.getCableWidth() / 2F;
+
+        double posdist = this.distance(this.key.from, this.key.to.getX()+0.5F, this.key.to.getZ()+0.5F);
+        double yrange = posdist == 0 ? 1 : (this.key.to.getY() - this.key.from.getY()) / posdist;
+        double tangrad = this.in[1] == this.in[0] ? Math.PI/2D : Math.atan((this.in[2] - this.in[3]) / (this.in[1] - this.in[0]));
+        double xcomp = halfthick * Math.sin(tangrad);
+        double zcomp = halfthick * Math.cos(tangrad);
+        double tangrady = posdist == 0 ? Math.PI/2D : Math.atan((this.key.to.getY() - this.key.from.getY()) / posdist);
+        double yxzcomp = Math.sin(tangrady);
+        double[] ct = new double[] {
+                this.in[0] - xcomp + yxzcomp*zcomp, this.in[2] - zcomp - yxzcomp*xcomp,
+                this.in[1] - xcomp + yxzcomp*zcomp, this.in[3] - zcomp - yxzcomp*xcomp,
+                this.in[1] + xcomp + yxzcomp*zcomp, this.in[3] + zcomp - yxzcomp*xcomp,
+                this.in[0] + xcomp + yxzcomp*zcomp, this.in[2] + zcomp - yxzcomp*xcomp
+        };
+        double[] cb = new double[] {
+                this.in[0] - xcomp - yxzcomp*zcomp, this.in[2] - zcomp + yxzcomp*xcomp,
+                this.in[1] - xcomp - yxzcomp*zcomp, this.in[3] - zcomp + yxzcomp*xcomp,
+                this.in[1] + xcomp - yxzcomp*zcomp, this.in[3] + zcomp + yxzcomp*xcomp,
+                this.in[0] + xcomp - yxzcomp*zcomp, this.in[2] + zcomp + yxzcomp*xcomp
+        };
+        double[] cent = new double[] {
+                (ct[0] + ct[2])/2D,
+                (ct[1] + ct[3])/2D,
+                (ct[4] + ct[6])/2D,
+                (ct[5] + ct[7])/2D
+        };
+        double[] cenb = new double[] {
+                (cb[0] + cb[2])/2D,
+                (cb[1] + cb[3])/2D,
+                (cb[4] + cb[6])/2D,
+                (cb[5] + cb[7])/2D
+        };
+        double ytop = yrange * this.distance(this.key.from, this.in[0], this.in[2]) - this.key.position.getY() + this.key.from.getY();
+        double ybot = yrange * this.distance(this.key.from, this.in[1], this.in[3]) - this.key.position.getY() + this.key.from.getY();
+        double len = Math.sqrt(Math.pow(ct[0] == ct[2] ? ct[1]-ct[3] : ct[0]-ct[2], 2) + (ytop-ybot)*(ytop-ybot)) / (halfthick*32F);
+        double yThick = halfthick * Math.cos(tangrady);
+        Pair<Cuboid, Cuboid> prevRenderCache = this.genRenderCache(random, false, new double[]{ct[0], ct[1], cent[0], cent[1], cent[2], cent[3], ct[6], ct[7]}, new double[] {cb[0], cb[1], cenb[0], cenb[1], cenb[2], cenb[3], cb[6], cb[7]}, yThick, len, ytop, ybot);
+        Pair<Cuboid, Cuboid> nextRenderCache = this.genRenderCache(random, true,  new double[]{cent[0], cent[1], ct[2], ct[3], ct[4], ct[5], cent[2], cent[3]}, new double[] {cenb[0], cenb[1], cb[2], cb[3], cb[4], cb[5], cenb[2], cenb[3]}, yThick, len, ytop, ybot);
+        double[] uvs = IntStream.range(0, 12).mapToDouble(i -> random.nextInt(16)/16F).toArray();
+        Cuboid main = new Cuboid(new double[] {
+                ct[0], ytop + yThick, ct[1],
+                ct[2], ybot + yThick, ct[3],
+                ct[4], ybot + yThick, ct[5],
+                ct[6], ytop + yThick, ct[7],
+                cb[0], ytop - yThick, cb[1],
+                cb[2], ybot - yThick, cb[3],
+                cb[4], ybot - yThick, cb[5],
+                cb[6], ytop - yThick, cb[7]
+        }, uvs, len, this.key.type.getCableWidth(), this.key.type.getCableWidth());
+        return new CableCache(main, prevRenderCache.getLeft(), nextRenderCache.getLeft(), prevRenderCache.getRight(), nextRenderCache.getRight());
+    }
+
+    private double distance(BlockPos from, double x, double z) {
+        return Math.sqrt((from.getX()+0.5F-x)*(from.getX()+0.5F-x) + (from.getZ()+0.5F-z)*(from.getZ()+0.5F-z));
+    }
+
+    private Pair<Cuboid, Cuboid> genRenderCache(Random random, boolean next, double[] ct, double[] cb, double yThick, double len, double ytop, double ybot) {
+        Vector3d point = (next ? this.getNextCache() : this.getPrevCache()).getPoint();
+        double ycenter = ybot + (ytop - ybot) / 2D;
+        double[] uvs = IntStream.range(0, 12).mapToDouble(i -> random.nextInt(16)/16F).toArray();
+        Cuboid rotated;
+        if(next) {
+            ytop = ycenter;
+            rotated = new Cuboid(new double[] {
+                    ct[0] + point.x, ycenter + yThick + point.y, ct[1] + point.z,
+                    ct[0], ycenter + yThick, ct[1],
+                    ct[6], ycenter + yThick, ct[7],
+                    ct[6] + point.x, ycenter + yThick + point.y, ct[7] + point.z,
+
+                    cb[0] + point.x, ycenter - yThick + point.y, cb[1] + point.z,
+                    cb[0], ycenter - yThick, cb[1],
+                    cb[6], ycenter - yThick, cb[7],
+                    cb[6] + point.x, ycenter - yThick + point.y, cb[7] + point.z
+            }, uvs, len/2, this.key.type.getCableWidth(), this.key.type.getCableWidth());
+        } else {
+            ybot = ycenter;
+            rotated = new Cuboid(new double[] {
+                    ct[2], ycenter + yThick, ct[3],
+                    ct[2] + point.x, ycenter + yThick + point.y, ct[3] + point.z,
+                    ct[4] + point.x, ycenter + yThick + point.y, ct[5] + point.z,
+                    ct[4], ycenter + yThick, ct[5],
+
+                    cb[2], ycenter - yThick, cb[3],
+                    cb[2] + point.x, ycenter - yThick + point.y, cb[3] + point.z,
+                    cb[4] + point.x, ycenter - yThick + point.y, cb[5] + point.z,
+                    cb[4], ycenter - yThick, cb[5]
+            }, uvs, len/2, this.key.type.getCableWidth(), this.key.type.getCableWidth());
+        }
+        uvs = IntStream.range(0, 12).mapToDouble(i -> random.nextInt(16)/16F).toArray();
+        Cuboid fixed = new Cuboid(new double[] {
+                ct[0], ytop + yThick, ct[1],
+                ct[2], ybot + yThick, ct[3],
+                ct[4], ybot + yThick, ct[5],
+                ct[6], ytop + yThick, ct[7],
+                cb[0], ytop - yThick, cb[1],
+                cb[2], ybot - yThick, cb[3],
+                cb[4], ybot - yThick, cb[5],
+                cb[6], ytop - yThick, cb[7]
+        }, uvs, len/2, this.key.type.getCableWidth(), this.key.type.getCableWidth());
+        return Pair.of(fixed, rotated);
+    }
+
+    /**
+     * The parts of a connection that its geometry depends on. The from and to positions are in the connection's sorted order.
+     */
+    @Value public static class Key { ConnectionType type; double offset; BlockPos from, to, position; }
+
+    @Value public static class SurroundingCache { Vector3d point; RotatedRayBox fixedBox, rotatedBox; }
+
+    @Value public static class CableCache { Cuboid data, prevFixed, nextFixed, prevRotated, nextRotated; }
+
+    /**
+     * A cuboid of a cable. The points are the 4 top corners followed by the 4 bottom corners, with the x and z in world space,
+     * and the y relative to the connection's position. The uvs are the texture offsets of each face,
+     * and the lengths are the size of the cuboid in texture space.
+     */
+    @Value public static class Cuboid { double[] points; double[] uvs; double xLength, yLength, zLength; }
+}
@@ -1,6 +1,7 @@
 package net.dumbcode.projectnublar.server.utils;
 
 import io.netty.buffer.ByteBuf;
+import net.dumbcode.projectnublar.server.entity.EntityUUIDIndex;
 import net.minecraft.entity.Entity;
 import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.world.World;
@@ -31,11 +32,9 @@ public class EntityReference<E extends Entity> {
     @SuppressWarnings("unchecked")
     public E get(World world) {
         if(this.reference == null && this.entityUUID != null) {
-            for (Entity entity : world.loadedEntityList) {
-                if(entity.getUniqueID().equals(this.entityUUID) && this.entityClass.isInstance(entity) && this.entityPredicate.test((E) entity)) {
-                    this.entityUUID = entity.getUniqueID();
-                    return this.reference = (E) entity;
-                }
+            Entity entity = EntityUUIDIndex.getEntity(world, this.entityUUID);
+            if(this.entityClass.isInstance(entity) && this.entityPredicate.test((E) entity)) {
+                return this.reference = (E) entity;
             }
             this.entityUUID = null;
         }
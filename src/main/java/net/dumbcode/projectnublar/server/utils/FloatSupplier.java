@@ -0,0 +1,9 @@
+package net.dumbcode.projectnublar.server.utils;
+
+/**
+ * A supplier of primitive floats, to avoid boxing on hot paths.
+ */
+@FunctionalInterface
+public interface FloatSupplier {
+    float getAsFloat();
+}
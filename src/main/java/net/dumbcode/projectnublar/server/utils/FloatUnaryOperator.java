@@ -0,0 +1,9 @@
+package net.dumbcode.projectnublar.server.utils;
+
+/**
+ * An operation on a single primitive float, to avoid boxing on hot paths.
+ */
+@FunctionalInterface
+public interface FloatUnaryOperator {
+    float applyAsFloat(float value);
+}
@@ -1,14 +1,26 @@
 package net.dumbcode.projectnublar.server.utils;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.*;
 
-import java.util.List;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class LineUtils {
+
+    private static final int RUN_CACHE_SIZE = 1024;
+
+    //The block runs of recently used lines, so each line is only traced once. Access ordered, so the least recently used run is dropped first.
+    private static final Map<LineKey, BlockRun> RUN_CACHE = new LinkedHashMap<LineKey, BlockRun>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LineKey, BlockRun> eldest) {
+            return this.size() > RUN_CACHE_SIZE;
+        }
+    };
+
     //Returns {x, x1, z, z1, y, y1} Maybe swap around ?
     public static double[] intersect(BlockPos position, BlockPos fromPos, BlockPos toPos, double yoff) {
         Vec3d from = new Vec3d(fromPos).add(0.5, yoff, 0.5);
@@ -27,8 +39,30 @@ public class LineUtils {
         }
         return null;
     }
-    public static List<BlockPos> getBlocksInbetween(BlockPos fromPos, BlockPos toPos, double offset) {
-        Set<BlockPos> set = Sets.newLinkedHashSet();
+
+    /**
+     * Gets the blocks a line goes through, in order from the start to the end. The run for each line is only traced once,
+     * and is then shared by everything asking for the same line, so the returned run must not be modified.
+     * @param fromPos the start of the line
+     * @param toPos the end of the line
+     * @param offset the y offset of the line from the bottom of the start and end blocks
+     * @return the blocks the line goes through
+     */
+    public static BlockRun getBlocksInbetween(BlockPos fromPos, BlockPos toPos, double offset) {
+        LineKey key = new LineKey(fromPos.toLong(), toPos.toLong(), offset);
+        //Used by both the server and client threads
+        synchronized (RUN_CACHE) {
+            BlockRun run = RUN_CACHE.get(key);
+            if(run == null) {
+                run = traceBlocks(fromPos, toPos, offset);
+                RUN_CACHE.put(key, run);
+            }
+            return run;
+        }
+    }
+
+    private static BlockRun traceBlocks(BlockPos fromPos, BlockPos toPos, double offset) {
+        LongList set = new LongList();
         Vec3d from = new Vec3d(fromPos.getX() + 0.5, fromPos.getY() + offset, fromPos.getZ() + 0.5);
         Vec3d to = new Vec3d(toPos.getX() + 0.5, toPos.getY() + offset, toPos.getZ() + 0.5);
 
@@ -142,7 +176,37 @@ public class LineUtils {
             }
         }
 
-        return Lists.newArrayList(set);
+        return new BlockRun(set.toArray());
+    }
+
+    //A list of packed positions that ignores repeated positions, keeping the order they were first added in.
+    //The trace walks from block to neighbouring block, so a position can only be repeated straight after itself.
+    private static class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        private void add(BlockPos pos) {
+            long value = pos.toLong();
+            if(this.size != 0 && this.values[this.size - 1] == value) {
+                return;
+            }
+            if(this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+    }
+
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class LineKey {
+        private final long from;
+        private final long to;
+        private final double offset;
     }
 
 }
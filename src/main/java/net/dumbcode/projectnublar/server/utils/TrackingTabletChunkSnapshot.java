@@ -0,0 +1,296 @@
+package net.dumbcode.projectnublar.server.utils;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.biome.Biome;
+
+import java.util.Arrays;
+
+/**
+ * A copy of the world data needed to colour one chunk of the tracking tablet map. This is taken on the server thread
+ * by {@link TrackingTabletIterator}, then {@link #render()} can be run on any thread to create the colours. <br>
+ * Biome and grass colours are resolved when the snapshot is taken, as {@link Biome#getGrassColorAtPos(BlockPos)} fires
+ * a Forge event and isn't safe to call off the server thread.
+ */
+public class TrackingTabletChunkSnapshot {
+
+    //Used in the height array when the column isn't loaded
+    public static final int UNLOADED = Integer.MIN_VALUE;
+
+    private final int chunkX;
+    private final int chunkZ;
+
+    //The bounds of this snapshot. This is always the whole chunk, so the result can be cached. All values are inclusive
+    private final int xStart;
+    private final int xEnd;
+    private final int zStart;
+    private final int zEnd;
+
+    //The tile cache version when the snapshot was taken
+    private final int version;
+
+    //The biome colour of each column
+    private final int[] biomeColors;
+
+    private final boolean terrainGenerated;
+    private final boolean[] generatedGrid;
+
+    //Includes the row to the north of the snapshot, so the height difference can be worked out
+    private final int[] heights;
+    private final int[] blockColors;
+
+    public TrackingTabletChunkSnapshot(int chunkX, int chunkZ, int version, boolean terrainGenerated, boolean[] generatedGrid) {
+        this.chunkX = chunkX;
+        this.chunkZ = chunkZ;
+        this.version = version;
+        this.xStart = chunkX << 4;
+        this.xEnd = this.xStart + 15;
+        this.zStart = chunkZ << 4;
+        this.zEnd = this.zStart + 15;
+        this.terrainGenerated = terrainGenerated;
+        this.generatedGrid = generatedGrid;
+
+        int width = xEnd - xStart + 1;
+        int length = zEnd - zStart + 1;
+        this.biomeColors = new int[width * length];
+        this.heights = terrainGenerated ? new int[width * (length + 1)] : new int[0];
+        this.blockColors = terrainGenerated ? new int[width * length] : new int[0];
+    }
+
+    public int getChunkX() {
+        return this.chunkX;
+    }
+
+    public int getChunkZ() {
+        return this.chunkZ;
+    }
+
+    public int getVersion() {
+        return this.version;
+    }
+
+    public boolean isTerrainGenerated() {
+        return this.terrainGenerated;
+    }
+
+    /**
+     * Gets whether the tile rendered from this snapshot can be cached. Tiles shaded against an unloaded row to the north
+     * can't be, as the shading would be wrong once that row loads.
+     */
+    public boolean isCacheable() {
+        if(!this.terrainGenerated) {
+            return true;
+        }
+        for (int x = this.xStart; x <= this.xEnd; x++) {
+            if(this.getHeight(x, this.zStart - 1) == UNLOADED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the height of the column. z can be {@code zStart - 1}, for the row to the north of the snapshot.
+     */
+    public void setHeight(int x, int z, int height) {
+        this.heights[(x - this.xStart) + (z - this.zStart + 1) * (this.xEnd - this.xStart + 1)] = height;
+    }
+
+    public void setBiomeColor(int x, int z, int color) {
+        this.biomeColors[this.getIndex(this.xStart, this.xEnd, this.zStart, x, z)] = color;
+    }
+
+    /**
+     * Sets the map colour of the top block of the column, with grass and leaves already tinted by the biome.
+     */
+    public void setBlockColor(int x, int z, int color) {
+        this.blockColors[this.getIndex(this.xStart, this.xEnd, this.zStart, x, z)] = color;
+    }
+
+    private int getHeight(int x, int z) {
+        return this.heights[(x - this.xStart) + (z - this.zStart + 1) * (this.xEnd - this.xStart + 1)];
+    }
+
+    /**
+     * Creates the 16x16 colour data for this snapshot. Does not touch the world, so is safe to call off the server thread.
+     */
+    public int[] render() {
+        int[] colorData = new int[(this.xEnd - this.xStart + 1) * (this.zEnd - this.zStart + 1)];
+
+        this.generateBiomeData(colorData);
+
+        if(this.terrainGenerated) {
+            this.generateBlockMapData(colorData);
+        }
+
+        return colorData;
+    }
+
+    private void generateBlockMapData(int[] colorData) {
+        int[] biomeData = Arrays.copyOf(colorData, colorData.length);
+
+        for (int z = this.zStart; z <= this.zEnd ; z++) {
+            for (int x = this.xStart; x <= this.xEnd ; x++) {
+                int height = this.getHeight(x, z);
+
+                int colorIndex = 1;
+                int northHeight = this.getHeight(x, z - 1);
+                if(northHeight != UNLOADED) {
+                    colorIndex = MathHelper.clamp(height - northHeight, -1, 1) + 1;
+                }
+
+                int index = this.getIndex(this.xStart, this.xEnd, this.zStart, x, z);
+                colorData[index] = getMapColor(this.blockColors[index], colorIndex);
+            }
+        }
+
+        boolean needsGradient = false;
+        for (boolean point : this.generatedGrid) {
+            if(!point) {
+                needsGradient = true;
+                break;
+            }
+        }
+
+        if (needsGradient) {
+            this.generateGradient(colorData, biomeData);
+        }
+    }
+
+    private void generateGradient(int[] colorData, int[] biomeData) {
+        for (int quadX = 0; quadX < 2; quadX++) {
+            for (int quadZ = 0; quadZ < 2; quadZ++) {
+
+                int worldStartX = (this.chunkX << 4) + quadX*8;
+                int worldStartZ = (this.chunkZ << 4) + quadZ*8;
+
+                int worldEndX = worldStartX + 7;
+                int worldEndZ = worldStartZ + 7;
+
+                int topLeft = quadX + quadZ*3;
+                int topRight = topLeft + 1;
+                int bottomLeft = topLeft + 3;
+                int bottomRight = bottomLeft + 1;
+
+                int corner00 = this.generatedGrid[topLeft] ? 1 : 0;
+                int corner01 = this.generatedGrid[topRight] ? 1 : 0;
+                int corner10 = this.generatedGrid[bottomLeft] ? 1 : 0;
+                int corner11 = this.generatedGrid[bottomRight] ? 1 : 0;
+
+                int sum = corner00 + corner01 + corner10 + corner11;
+
+                //There'll never be a senario of:
+                // 1 -- 0
+                // |    |
+                // 0 -- 1
+                //So we can just do this to check if we should just straight line interpolate
+                if(sum % 2 == 0) {
+                    this.generateStraightEdges(
+                        worldStartZ, worldEndZ, worldStartX, worldEndX,
+                        corner00 | corner01, corner10 | corner11, corner00 | corner10, corner01 | corner11,
+                        colorData, biomeData
+                    );
+                } else {
+                    this.generateCurvedEdge(
+                        worldStartZ, worldEndZ, worldStartX, worldEndX,
+                        this.findVertex(sum == 1 ? 1 : 0, corner00, corner01, corner10, corner11), sum == 1 ? 1 : 0, sum == 1 ? -1 : 1,
+                        colorData, biomeData
+                    );
+                }
+
+            }
+        }
+    }
+
+    private int findVertex(int search, int... vertices) {
+        for (int i = 0; i < vertices.length; i++) {
+            if(vertices[i] == search) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Could not find value '" + search + "' in array: " + Arrays.toString(vertices));
+    }
+
+    private void generateCurvedEdge(
+        int worldStartZ, int worldEndZ, int worldStartX, int worldEndX,
+        int vertex, int offset, int modifier, //vertex => 00, 01, 10, 11
+        int[] colorData, int[] biomeData
+    ) {
+        for (int z = Math.max(this.zStart, worldStartZ); z <= Math.min(this.zEnd, worldEndZ) ; z++) {
+            for (int x = Math.max(this.xStart, worldStartX); x <= Math.min(this.xEnd, worldEndX); x++) {
+                float xDist = (x - worldStartX) / 8F - vertex % 2;
+                float zDist = (z - worldStartZ) / 8F - Math.floorDiv(vertex, 2);
+
+                float alpha = (float) (offset + modifier*MathHelper.clamp(Math.sqrt(xDist*xDist + zDist*zDist), 0D, 1D));
+
+                int index = this.getIndex(this.xStart, this.xEnd, this.zStart, x, z);
+                colorData[index] = this.interpolateBlockBiome(colorData[index], biomeData[index], alpha);
+            }
+        }
+    }
+
+    private void generateStraightEdges(
+        int worldStartZ, int worldEndZ, int worldStartX, int worldEndX,
+        int top, int bottom, int left, int right,
+        int[] colorData, int[] biomeData
+    ) {
+        for (int z = Math.max(this.zStart, worldStartZ); z <= Math.min(this.zEnd, worldEndZ) ; z++) {
+            for (int x = Math.max(this.xStart, worldStartX); x <= Math.min(this.xEnd, worldEndX); x++) {
+                float xAlphaPosition = (x - worldStartX) / 8F;
+                float zAlphaPosition = (z - worldStartZ) / 8F;
+
+                float xAlpha = left + (right - left) * xAlphaPosition;
+                float zAlpha = top + (bottom - top) * zAlphaPosition;
+
+                int index = this.getIndex(this.xStart, this.xEnd, this.zStart, x, z);
+                colorData[index] = this.interpolateBlockBiome(colorData[index], biomeData[index], xAlpha * zAlpha);
+            }
+        }
+    }
+
+    private int interpolateBlockBiome(int block, int biome, float alpha) {
+        int blockR = (block >> 16) & 255;
+        int blockG = (block >> 8) & 255;
+        int blockB = block & 255;
+
+        int biomeR = (biome >> 16) & 255;
+        int biomeG = (biome >> 8) & 255;
+        int biomeB = biome & 255;
+
+        int red = (int) (biomeR + (blockR - biomeR) * alpha);
+        int green = (int) (biomeG + (blockG - biomeG) * alpha);
+        int blue = (int) (biomeB + (blockB - biomeB) * alpha);
+
+        return (red << 16) | (green << 8) | (blue);
+
+    }
+
+    private void generateBiomeData(int[] colorData) {
+        System.arraycopy(this.biomeColors, 0, colorData, 0, colorData.length);
+    }
+
+    private int getIndex(int xStart, int xEnd, int zStart, int x, int z) {
+        return (x - xStart) + (z - zStart)*(xEnd - xStart + 1);
+    }
+
+    static int getMapColor(int color, int index) {
+        int alpha = 220;
+
+        if (index == 3) {
+            alpha = 135;
+        }
+
+        if (index == 2) {
+            alpha = 255;
+        }
+
+        if (index == 0) {
+            alpha = 180;
+        }
+
+        int r = (color >> 16 & 255) * alpha / 255;
+        int g = (color >> 8 & 255) * alpha / 255;
+        int b = (color & 255) * alpha / 255;
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+}
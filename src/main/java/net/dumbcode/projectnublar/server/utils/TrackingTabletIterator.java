@@ -1,34 +1,74 @@
 package net.dumbcode.projectnublar.server.utils;
 
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.ProjectNublarConfig;
 import net.dumbcode.projectnublar.server.entity.tracking.TrackingSavedData;
+import net.dumbcode.projectnublar.server.entity.tracking.TrackingTabletSession;
 import net.dumbcode.projectnublar.server.network.S22StartTrackingTabletHandshake;
 import net.dumbcode.projectnublar.server.network.S24TrackingTabletUpdateChunk;
-import net.dumbcode.projectnublar.server.network.S32SetTrackingDataList;
+import net.dumbcode.projectnublar.server.network.S32UpdateTrackingDataList;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.init.Blocks;
-import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 import net.minecraft.world.biome.Biome;
-import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.fml.common.gameevent.TickEvent;
 
-import java.util.Arrays;
-import java.util.Map;
-import java.util.UUID;
-import java.util.stream.Collectors;
-
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams the map and tracking data of a tracking tablet to a player. <br>
+ * First, a low resolution overview of the whole map is sent, sampling one column per cell. The cell size is picked so the
+ * overview always has roughly the same amount of samples, no matter the radius. After that, full resolution tiles are only sent
+ * for the area the client is zoomed into, as told by {@link #setFocus(int, int, int, int)}. <br>
+ * Full resolution tiles are created in two stages. On the server thread, each chunk is copied into a {@link TrackingTabletChunkSnapshot}.
+ * The snapshot is then coloured on a worker thread, and the finished chunk is sent on the next server tick.
+ * The time spent taking snapshots is shared between all the open tablets. Finished chunks are stored in the {@link TrackingTabletTileCache},
+ * so chunks that have already been mapped are sent straight away.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
 public class TrackingTabletIterator {
     public static final Map<UUID, TrackingTabletIterator> PLAYER_TO_TABLET_MAP = Maps.newHashMap();
 
     public static final int MAX_RADIUS = 1000;
 
+    //The maximum amount of snapshots a single tablet can have waiting on the workers
+    private static final int MAX_PENDING_CHUNKS = 64;
+
+    //The maximum amount of overview cells along each axis, and the smallest overview cell size
+    private static final int OVERVIEW_SIZE = 128;
+    private static final int MIN_OVERVIEW_SCALE = 4;
+    //The overview is sent in tiles of this many cells along each axis
+    private static final int OVERVIEW_TILE_SIZE = 16;
+
+    //The client only asks for full resolution tiles when zoomed in past this many blocks per pixel
+    public static final float FULL_RESOLUTION_BLOCKS_PER_PIXEL = 2F;
+    //The widest the map can be drawn, in pixels
+    public static final int MAX_MAP_WIDTH = 500;
+    //The maximum size, in chunks, of the area full resolution tiles can be requested for. This is the widest area the client can
+    //ask for, plus one for when the area isn't lined up with the chunks.
+    private static final int MAX_FOCUS_CHUNKS = MathHelper.ceil(FULL_RESOLUTION_BLOCKS_PER_PIXEL * MAX_MAP_WIDTH / 16F) + 1;
+
+    private static final List<TrackingTabletIterator> ACTIVE_TABLETS = new ArrayList<>();
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+        new ThreadFactoryBuilder().setNameFormat("Tracking Tablet Worker #%d").setDaemon(true).build()
+    );
+    private static int roundRobinIndex;
+
     private final EntityPlayerMP player;
     private final BlockPos center;
     private final int radius;
@@ -36,16 +76,36 @@ public class TrackingTabletIterator {
     private final BlockPos toPos;
 
     private final World world;
+    private final TrackingTabletSession session;
+
+    private final Queue<RenderedTile> completedChunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    //The tiles that will be sent together at the end of the tick
+    private S24TrackingTabletUpdateChunk pendingTiles = new S24TrackingTabletUpdateChunk();
+    private volatile boolean finished;
+
+    private final int overviewScale;
+    private final int overviewCellsX;
+    private final int overviewCellsZ;
+    //The position of the next overview tile, in overview tiles
+    private int overviewTileX;
+    private int overviewTileZ;
+    private boolean finishedOverview;
+
+    //The chunks that already have had their full resolution tile sent
+    private final Set<Long> sentChunks = new HashSet<>();
+    //The chunks waiting on a worker. If the tile can't be rendered, the chunk is dropped from here without being marked as sent,
+    //so it's tried again the next time the focus is set.
+    private final Set<Long> inFlightChunks = new HashSet<>();
+    private final Deque<ChunkPos> focusQueue = new ArrayDeque<>();
 
-    private ChunkPos currentPos;
-
-    private boolean finishedTerrain;
     private int tickCounter;
 
     public TrackingTabletIterator(EntityPlayerMP player, BlockPos center, int squareRadius) {
         this.player = player;
         this.world = player.world;
         this.center = center;
+        this.session = new TrackingTabletSession(center.getX(), center.getZ());
 
         squareRadius = Math.min(Math.abs(squareRadius), MAX_RADIUS);
         this.radius = squareRadius;
@@ -59,314 +119,359 @@ public class TrackingTabletIterator {
 
         PLAYER_TO_TABLET_MAP.put(player.getUniqueID(), this);
 
-        this.currentPos = new ChunkPos(this.fromPos);
+        int scale = MIN_OVERVIEW_SCALE;
+        while((2 * squareRadius + 1) / scale > OVERVIEW_SIZE) {
+            scale *= 2;
+        }
+        this.overviewScale = scale;
+        this.overviewCellsX = MathHelper.ceil((this.toPos.getX() - this.fromPos.getX() + 1) / (float) scale);
+        this.overviewCellsZ = MathHelper.ceil((this.toPos.getZ() - this.fromPos.getZ() + 1) / (float) scale);
+
         ProjectNublar.NETWORK.sendTo(new S22StartTrackingTabletHandshake(this.fromPos.getX(), this.toPos.getX(), this.fromPos.getZ(), this.toPos.getZ()), player);
     }
 
     @SubscribeEvent
-    public void onWorldTick(TickEvent.WorldTickEvent event) {
-        long startTime = System.currentTimeMillis();
-
-        if(!this.finishedTerrain) {
-            for (int i = 0; i < 10; i++) {
-                this.doCurrentChunk();
-                if(!this.incrementPosition()) {
-                    this.finishedTerrain = true;
-                    break;
-                }
-                //After 20ms, do no more
-                if(System.currentTimeMillis() - startTime >= 20) {
-                    break;
-                }
-            }
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if(event.phase != TickEvent.Phase.END || ACTIVE_TABLETS.isEmpty()) {
+            return;
         }
 
-        if(this.tickCounter++ % 5 == 0) {
-            ProjectNublar.NETWORK.sendTo(new S32SetTrackingDataList(
-                TrackingSavedData.getData(event.world).getEntries().stream()
-                    .filter(entry -> this.center.distanceSqToCenter(entry.getPosition().x, 0, entry.getPosition().z) <= this.radius*this.radius)
-                    .collect(Collectors.toList())
-            ), this.player);
+        for (TrackingTabletIterator tablet : ACTIVE_TABLETS) {
+            tablet.sendCompletedChunks();
+            tablet.sendTrackingData();
         }
 
-
-    }
-
-    private void doCurrentChunk() {
-        //All values are inclusive.
-        int xStart = MathHelper.clamp(this.currentPos.getXStart(), this.fromPos.getX(), this.toPos.getX());
-        int xEnd = MathHelper.clamp(this.currentPos.getXEnd(), this.fromPos.getX(), this.toPos.getX());
-
-        int zStart = MathHelper.clamp(this.currentPos.getZStart(), this.fromPos.getZ(), this.toPos.getZ());
-        int zEnd = MathHelper.clamp(this.currentPos.getZEnd(), this.fromPos.getZ(), this.toPos.getZ());
-
-        int[] colorData = new int[(xEnd - xStart + 1)*(zEnd - zStart + 1)];
-        Biome[] biomes = this.world.getBiomeProvider().getBiomes(null, xStart-1, zStart-1, xEnd - xStart + 3, zEnd - zStart + 3, false);
-
-        this.generateBiomeData(xStart, zStart, xEnd, zEnd, colorData, biomes);
-
-        if(this.isChunkOffsetGenerated(0, 0)) {
-            this.generateBlockMapData(xStart, zStart, xEnd, zEnd, colorData, biomes);
+        //The budget is shared between all the tablets. Each tablet snapshots one chunk at a time, in turn, until the budget is used up.
+        long endTime = System.nanoTime() + ProjectNublarConfig.TRACKING.mapBudgetMillis * 1_000_000L;
+        int idle = 0;
+        while(idle < ACTIVE_TABLETS.size() && System.nanoTime() < endTime) {
+            roundRobinIndex = (roundRobinIndex + 1) % ACTIVE_TABLETS.size();
+            if(ACTIVE_TABLETS.get(roundRobinIndex).snapshotNextChunk()) {
+                idle = 0;
+            } else {
+                idle++;
+            }
         }
 
-        ProjectNublar.NETWORK.sendTo(new S24TrackingTabletUpdateChunk(xStart, xEnd, zStart, zEnd, colorData), this.player);
+        for (TrackingTabletIterator tablet : ACTIVE_TABLETS) {
+            tablet.flushTiles();
+        }
     }
 
-    private void generateBlockMapData(int xStart, int zStart, int xEnd, int zEnd, int[] colorData, Biome[] biomes) {
-        int[] biomeData = Arrays.copyOf(colorData, colorData.length);
-        BlockPos.PooledMutableBlockPos pos = BlockPos.PooledMutableBlockPos.retain();
-
-        for (int z = zStart; z <= zEnd ; z++) {
-            for (int x = xStart; x <= xEnd ; x++) {
-                BlockPos.MutableBlockPos blockPos = this.getTopBlock(pos.setPos(x, 0, z));
-                IBlockState state = this.world.getBlockState(blockPos);
-
-                int colorIndex = 1;
-                if(this.world.isBlockLoaded(blockPos.north())) {
-                    int prevHeight = blockPos.getY() - this.getTopBlock(blockPos.move(EnumFacing.NORTH)).getY();
-                    colorIndex = MathHelper.clamp(prevHeight, -1, 1) + 1;
-                }
-
-                int color;
-                //todo: config these blocks
-                if(state.getBlock() == Blocks.GRASS) {
-                    color = BiomeUtils.getGrassColor(biomes[this.getIndex(xStart-1, xEnd+1, zStart-1, x, z)], blockPos, 0.5F);
-                } else if (state.getBlock() == Blocks.LEAVES || state.getBlock() == Blocks.LEAVES2) {
-                    color = BiomeUtils.getGrassColor(biomes[this.getIndex(xStart-1, xEnd+1, zStart-1, x, z)], blockPos, 0.3F);
-                } else {
-                    color = state.getMapColor(this.world, blockPos).colorValue;
-                }
-                colorData[this.getIndex(xStart, xEnd, zStart, x, z)] = this.getMapColor(color, colorIndex);
+    private void sendCompletedChunks() {
+        TrackingTabletTileCache cache = TrackingTabletTileCache.get(this.world);
+        RenderedTile tile;
+        while((tile = this.completedChunks.poll()) != null) {
+            long key = ChunkPos.asLong(tile.chunkX, tile.chunkZ);
+            this.inFlightChunks.remove(key);
+            if(tile.data == null) {
+                continue;
             }
-        }
-        pos.release();
-
-        boolean topCorner = this.isChunkOffsetGenerated(0, -1);
-        boolean leftCorner = this.isChunkOffsetGenerated(-1, 0);
-        boolean rightCorner = this.isChunkOffsetGenerated(1, 0);
-        boolean downCorner = this.isChunkOffsetGenerated(0, 1);
-
-        boolean[] generatedGrid = {
-            leftCorner && this.isChunkOffsetGenerated(-1, -1) && topCorner, topCorner,  topCorner && this.isChunkOffsetGenerated(1, -1) && rightCorner,
-            leftCorner,                   /*Self will always be generated*/ true, rightCorner,
-            leftCorner && this.isChunkOffsetGenerated(-1, 1) && downCorner, downCorner, downCorner && this.isChunkOffsetGenerated(1, 1) && rightCorner,
-        };
-
-        boolean needsGradient = false;
-        for (boolean point : generatedGrid) {
-            if(!point) {
-                needsGradient = true;
-                break;
+            if(tile.cacheable) {
+                cache.putTile(tile.chunkX, tile.chunkZ, tile.version, tile.data);
             }
-        }
-
-        if (needsGradient) {
-            this.generateGradient(xStart, xEnd, zStart, zEnd, generatedGrid, colorData, biomeData);
+            this.sendTile(tile.chunkX, tile.chunkZ, tile.data);
+            this.sentChunks.add(key);
         }
     }
 
-    private void generateGradient(int xStart, int xEnd, int zStart, int zEnd, boolean[] generatedGrid, int[] colorData, int[] biomeData) {
-        for (int quadX = 0; quadX < 2; quadX++) {
-            for (int quadZ = 0; quadZ < 2; quadZ++) {
-
-                int worldStartX = this.currentPos.getXStart() + quadX*8;
-                int worldStartZ = this.currentPos.getZStart() + quadZ*8;
-
-                int worldEndX = worldStartX + 7;
-                int worldEndZ = worldStartZ + 7;
+    //Sends the part of the 16x16 tile that is within the view
+    private void sendTile(int chunkX, int chunkZ, int[] tile) {
+        //All values are inclusive.
+        int xStart = MathHelper.clamp(chunkX << 4, this.fromPos.getX(), this.toPos.getX());
+        int xEnd = MathHelper.clamp((chunkX << 4) + 15, this.fromPos.getX(), this.toPos.getX());
 
-                //Check the quad isn't outside of the world view
-                if(worldEndX < this.fromPos.getX() || worldEndZ < this.fromPos.getZ() || worldStartX > this.toPos.getX() || worldStartZ > this.toPos.getZ()) {
-                    continue;
-                }
+        int zStart = MathHelper.clamp(chunkZ << 4, this.fromPos.getZ(), this.toPos.getZ());
+        int zEnd = MathHelper.clamp((chunkZ << 4) + 15, this.fromPos.getZ(), this.toPos.getZ());
 
-                int topLeft = quadX + quadZ*3;
-                int topRight = topLeft + 1;
-                int bottomLeft = topLeft + 3;
-                int bottomRight = bottomLeft + 1;
-
-                int corner00 = generatedGrid[topLeft] ? 1 : 0;
-                int corner01 = generatedGrid[topRight] ? 1 : 0;
-                int corner10 = generatedGrid[bottomLeft] ? 1 : 0;
-                int corner11 = generatedGrid[bottomRight] ? 1 : 0;
-
-                int sum = corner00 + corner01 + corner10 + corner11;
-
-                //There'll never be a senario of:
-                // 1 -- 0
-                // |    |
-                // 0 -- 1
-                //So we can just do this to check if we should just straight line interpolate
-                if(sum % 2 == 0) {
-                    this.generateStraightEdges(
-                        xStart, xEnd, zStart, zEnd,
-                        worldStartZ, worldEndZ, worldStartX, worldEndX,
-                        corner00 | corner01, corner10 | corner11, corner00 | corner10, corner01 | corner11,
-                        colorData, biomeData
-                    );
-                } else {
-                    this.generateCurvedEdge(
-                        xStart, xEnd, zStart, zEnd,
-                        worldStartZ, worldEndZ, worldStartX, worldEndX,
-                        this.findVertex(sum == 1 ? 1 : 0, corner00, corner01, corner10, corner11), sum == 1 ? 1 : 0, sum == 1 ? -1 : 1,
-                        colorData, biomeData
-                    );
-                }
+        int width = xEnd - xStart + 1;
+        int[] colorData = new int[width * (zEnd - zStart + 1)];
+        for (int z = zStart; z <= zEnd; z++) {
+            System.arraycopy(tile, (xStart & 15) + (z & 15) * 16, colorData, (z - zStart) * width, width);
+        }
 
-            }
+        this.pendingTiles.addTile(xStart, xEnd, zStart, zEnd, colorData);
+        if(this.pendingTiles.isFull()) {
+            this.flushTiles();
         }
     }
 
-    private int findVertex(int search, int... vertices) {
-        for (int i = 0; i < vertices.length; i++) {
-            if(vertices[i] == search) {
-                return i;
-            }
+    private void flushTiles() {
+        if(!this.pendingTiles.isEmpty()) {
+            ProjectNublar.NETWORK.sendTo(this.pendingTiles, this.player);
+            this.pendingTiles = new S24TrackingTabletUpdateChunk();
         }
-        throw new IllegalStateException("Could not find value '" + search + "' in array: " + Arrays.toString(vertices));
     }
 
-    private void generateCurvedEdge(
-        int xStart, int xEnd, int zStart, int zEnd,
-        int worldStartZ, int worldEndZ, int worldStartX, int worldEndX,
-        int vertex, int offset, int modifier, //vertex => 00, 01, 10, 11
-        int[] colorData, int[] biomeData
-    ) {
-        for (int z = Math.max(zStart, worldStartZ); z <= Math.min(zEnd, worldEndZ) ; z++) {
-            for (int x = Math.max(xStart, worldStartX); x <= Math.min(xEnd, worldEndX); x++) {
-                float xDist = (x - worldStartX) / 8F - vertex % 2;
-                float zDist = (z - worldStartZ) / 8F - Math.floorDiv(vertex, 2);
-
-                float alpha = (float) (offset + modifier*MathHelper.clamp(Math.sqrt(xDist*xDist + zDist*zDist), 0D, 1D));
-
-                int index = this.getIndex(xStart, xEnd, zStart, x, z);
-                colorData[index] = this.interpolateBlockBiome(colorData[index], biomeData[index], alpha);
+    private void sendTrackingData() {
+        if(this.tickCounter++ % 5 == 0) {
+            S32UpdateTrackingDataList update = this.session.createUpdate(
+                TrackingSavedData.getData(this.world).query(new Vec3d(this.center.getX() + 0.5D, 0, this.center.getZ() + 0.5D), this.radius)
+            );
+            if(update != null) {
+                ProjectNublar.NETWORK.sendTo(update, this.player);
             }
         }
     }
 
-    private void generateStraightEdges(
-        int xStart, int xEnd, int zStart, int zEnd,
-        int worldStartZ, int worldEndZ, int worldStartX, int worldEndX,
-        int top, int bottom, int left, int right,
-        int[] colorData, int[] biomeData
-    ) {
-        for (int z = Math.max(zStart, worldStartZ); z <= Math.min(zEnd, worldEndZ) ; z++) {
-            for (int x = Math.max(xStart, worldStartX); x <= Math.min(xEnd, worldEndX); x++) {
-                float xAlphaPosition = (x - worldStartX) / 8F;
-                float zAlphaPosition = (z - worldStartZ) / 8F;
-
-                float xAlpha = left + (right - left) * xAlphaPosition;
-                float zAlpha = top + (bottom - top) * zAlphaPosition;
-
-                int index = this.getIndex(xStart, xEnd, zStart, x, z);
-                colorData[index] = this.interpolateBlockBiome(colorData[index], biomeData[index], xAlpha * zAlpha);
+    /**
+     * Sets the area the client is looking at. Full resolution tiles will be sent for the chunks in this area, nearest to the center first.
+     * An empty area (min > max) means only the overview is needed.
+     */
+    public void setFocus(int minX, int minZ, int maxX, int maxZ) {
+        this.focusQueue.clear();
+
+        minX = Math.max(minX, this.fromPos.getX()) >> 4;
+        minZ = Math.max(minZ, this.fromPos.getZ()) >> 4;
+        maxX = Math.min(maxX, this.toPos.getX()) >> 4;
+        maxZ = Math.min(maxZ, this.toPos.getZ()) >> 4;
+        if(minX > maxX || minZ > maxZ || maxX - minX > MAX_FOCUS_CHUNKS || maxZ - minZ > MAX_FOCUS_CHUNKS) {
+            return;
+        }
+
+        TrackingTabletTileCache cache = TrackingTabletTileCache.get(this.world);
+        List<ChunkPos> chunks = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                if(this.needsTile(ChunkPos.asLong(x, z))) {
+                    chunks.add(new ChunkPos(x, z));
+                    //Start reading the cached tiles now, so the disk isn't touched while snapshotting
+                    cache.prefetch(x, z);
+                }
             }
         }
+        int centerX = (minX + maxX) / 2;
+        int centerZ = (minZ + maxZ) / 2;
+        chunks.sort(Comparator.comparingInt(pos -> (pos.x - centerX) * (pos.x - centerX) + (pos.z - centerZ) * (pos.z - centerZ)));
+        this.focusQueue.addAll(chunks);
     }
 
-    private int interpolateBlockBiome(int block, int biome, float alpha) {
-        int blockR = (block >> 16) & 255;
-        int blockG = (block >> 8) & 255;
-        int blockB = block & 255;
+    //Returns false if nothing was done
+    private boolean snapshotNextChunk() {
+        if(!this.finishedOverview) {
+            this.sampleOverviewTile();
+            return true;
+        }
 
-        int biomeR = (biome >> 16) & 255;
-        int biomeG = (biome >> 8) & 255;
-        int biomeB = biome & 255;
+        if(this.pendingChunks.get() >= MAX_PENDING_CHUNKS) {
+            return false;
+        }
 
-        int red = (int) (biomeR + (blockR - biomeR) * alpha);
-        int green = (int) (biomeG + (blockG - biomeG) * alpha);
-        int blue = (int) (biomeB + (blockB - biomeB) * alpha);
+        TrackingTabletTileCache cache = TrackingTabletTileCache.get(this.world);
+        ChunkPos chunkPos;
+        long key;
+        //Chunks with their cached tile still being read from disk are moved to the back of the queue, so they don't hold up the others
+        int waiting = 0;
+        while(true) {
+            chunkPos = this.focusQueue.poll();
+            if(chunkPos == null) {
+                return false;
+            }
+            key = ChunkPos.asLong(chunkPos.x, chunkPos.z);
+            if(!this.needsTile(key)) {
+                continue;
+            }
+            int[] cached = cache.getTile(chunkPos.x, chunkPos.z);
+            if(cached != null) {
+                this.sendTile(chunkPos.x, chunkPos.z, cached);
+                this.sentChunks.add(key);
+                return true;
+            }
+            if(!cache.isLoading(chunkPos.x, chunkPos.z)) {
+                break;
+            }
+            this.focusQueue.add(chunkPos);
+            if(++waiting >= this.focusQueue.size()) {
+                return false;
+            }
+        }
 
-        return (red << 16) | (green << 8) | (blue);
+        TrackingTabletChunkSnapshot snapshot = this.snapshotChunk(chunkPos);
+        this.inFlightChunks.add(key);
+        this.pendingChunks.incrementAndGet();
+        WORKERS.execute(() -> {
+            int[] data = null;
+            try {
+                if(!this.finished) {
+                    data = snapshot.render();
+                }
+            } catch (RuntimeException e) {
+                ProjectNublar.getLogger().error("Unable to render tracking tablet chunk", e);
+            } finally {
+                //Failed tiles are still handed back, so the chunk is no longer in flight and can be tried again
+                this.completedChunks.add(new RenderedTile(snapshot.getChunkX(), snapshot.getChunkZ(), snapshot.getVersion(), snapshot.isCacheable(), data));
+                this.pendingChunks.decrementAndGet();
+            }
+        });
 
+        return true;
     }
 
-    private boolean isChunkOffsetGenerated(int xOff, int zOff) {
-        return this.world.isChunkGeneratedAt(this.currentPos.x + xOff, this.currentPos.z + zOff) && this.world.getChunk(this.currentPos.x + xOff, this.currentPos.z + zOff).isTerrainPopulated();
+    private boolean needsTile(long chunk) {
+        return !this.sentChunks.contains(chunk) && !this.inFlightChunks.contains(chunk);
     }
 
-    private void generateBiomeData(int xStart, int zStart, int xEnd, int zEnd, int[] colorData, Biome[] biomes) {
-        for (int z = zStart; z <= zEnd ; z++) {
-            for (int x = xStart; x <= xEnd; x++) {
-
-                Biome biome = biomes[this.getIndex(xStart-1, xEnd + 1, zStart-1, x, z)];
-
-                boolean bordered = false;
+    private void sampleOverviewTile() {
+        int cellStartX = this.overviewTileX * OVERVIEW_TILE_SIZE;
+        int cellStartZ = this.overviewTileZ * OVERVIEW_TILE_SIZE;
+        int width = Math.min(OVERVIEW_TILE_SIZE, this.overviewCellsX - cellStartX);
+        int height = Math.min(OVERVIEW_TILE_SIZE, this.overviewCellsZ - cellStartZ);
 
-                for (int btx = x-1; btx < x+2; btx++) {
-                    for (int btz = z-1; btz < z+2; btz++) {
-                        if(btx >= this.fromPos.getX() && btx <= this.toPos.getX() && btz >= this.fromPos.getZ() && btz <= this.toPos.getZ()) {
-                            bordered |= biomes[this.getIndex(xStart-1, xEnd+1, zStart-1, btx, btz)] != biome;
-                        }
-
-                    }
-                }
+        int[] colorData = new int[width * height];
+        BlockPos.PooledMutableBlockPos pos = BlockPos.PooledMutableBlockPos.retain();
+        for (int z = 0; z < height; z++) {
+            for (int x = 0; x < width; x++) {
+                //Sample the center of the cell
+                int blockX = Math.min(this.fromPos.getX() + (cellStartX + x) * this.overviewScale + this.overviewScale / 2, this.toPos.getX());
+                int blockZ = Math.min(this.fromPos.getZ() + (cellStartZ + z) * this.overviewScale + this.overviewScale / 2, this.toPos.getZ());
+                colorData[x + z * width] = this.sampleColumn(pos.setPos(blockX, 0, blockZ));
+            }
+        }
+        pos.release();
 
+        this.pendingTiles.addTile(
+            this.fromPos.getX() + cellStartX * this.overviewScale, this.fromPos.getZ() + cellStartZ * this.overviewScale,
+            width, height, this.overviewScale, colorData
+        );
+        if(this.pendingTiles.isFull()) {
+            this.flushTiles();
+        }
 
-                if(!bordered) {
-                }
-                colorData[this.getIndex(xStart, xEnd, zStart, x, z)] = BiomeUtils.getBiomeColor(new BlockPos(x, 100, z), biome);
+        if(++this.overviewTileX * OVERVIEW_TILE_SIZE >= this.overviewCellsX) {
+            this.overviewTileX = 0;
+            if(++this.overviewTileZ * OVERVIEW_TILE_SIZE >= this.overviewCellsZ) {
+                this.finishedOverview = true;
             }
         }
     }
 
-    private int getIndex(int xStart, int xEnd, int zStart, int x, int z) {
-        return (x - xStart) + (z - zStart)*(xEnd - xStart + 1);
-    }
-
-    private int getMapColor(int color, int index) {
-        int alpha = 220;
+    //Gets the colour of a single column, for the overview. The tile cache never waits on the disk here, if the tile isn't in memory
+    //the column is sampled from the world instead.
+    private int sampleColumn(BlockPos.MutableBlockPos pos) {
+        int chunkX = pos.getX() >> 4;
+        int chunkZ = pos.getZ() >> 4;
+        int[] cached = TrackingTabletTileCache.get(this.world).getTile(chunkX, chunkZ);
+        if(cached != null) {
+            return cached[(pos.getX() & 15) + (pos.getZ() & 15) * 16];
+        }
 
-        if (index == 3) {
-            alpha = 135;
+        Biome biome = this.world.getBiome(pos);
+        if(!this.isChunkGenerated(chunkX, chunkZ)) {
+            return BiomeUtils.getBiomeColor(pos, biome);
         }
 
-        if (index == 2) {
-            alpha = 255;
+        IBlockState state = this.world.getBlockState(ColumnTopCache.getTopBlock(this.world, pos));
+        int color;
+        if(state.getBlock() == Blocks.GRASS) {
+            color = BiomeUtils.getGrassColor(biome, pos, 0.5F);
+        } else if (state.getBlock() == Blocks.LEAVES || state.getBlock() == Blocks.LEAVES2) {
+            color = BiomeUtils.getGrassColor(biome, pos, 0.3F);
+        } else {
+            color = state.getMapColor(this.world, pos).colorValue;
         }
+        return TrackingTabletChunkSnapshot.getMapColor(color, 1);
+    }
 
-        if (index == 0) {
-            alpha = 180;
+    private TrackingTabletChunkSnapshot snapshotChunk(ChunkPos chunkPos) {
+        //All values are inclusive. The whole chunk is always used, so the tile can be cached
+        int xStart = chunkPos.getXStart();
+        int xEnd = chunkPos.getXEnd();
+
+        int zStart = chunkPos.getZStart();
+        int zEnd = chunkPos.getZEnd();
+        int chunkX = chunkPos.x;
+        int chunkZ = chunkPos.z;
+
+        int width = xEnd - xStart + 1;
+        Biome[] biomes = this.world.getBiomeProvider().getBiomes(null, xStart, zStart, width, zEnd - zStart + 1, false);
+
+        boolean terrainGenerated = this.isChunkGenerated(chunkX, chunkZ);
+        boolean[] generatedGrid = null;
+        if(terrainGenerated) {
+            boolean topCorner = this.isChunkGenerated(chunkX, chunkZ - 1);
+            boolean leftCorner = this.isChunkGenerated(chunkX - 1, chunkZ);
+            boolean rightCorner = this.isChunkGenerated(chunkX + 1, chunkZ);
+            boolean downCorner = this.isChunkGenerated(chunkX, chunkZ + 1);
+
+            generatedGrid = new boolean[]{
+                leftCorner && this.isChunkGenerated(chunkX - 1, chunkZ - 1) && topCorner, topCorner,  topCorner && this.isChunkGenerated(chunkX + 1, chunkZ - 1) && rightCorner,
+                leftCorner,                   /*Self will always be generated*/ true, rightCorner,
+                leftCorner && this.isChunkGenerated(chunkX - 1, chunkZ + 1) && downCorner, downCorner, downCorner && this.isChunkGenerated(chunkX + 1, chunkZ + 1) && rightCorner,
+            };
         }
 
-        int r = (color >> 16 & 255) * alpha / 255;
-        int g = (color >> 8 & 255) * alpha / 255;
-        int b = (color & 255) * alpha / 255;
-        return 0xFF000000 | r << 16 | g << 8 | b;
-    }
+        TrackingTabletChunkSnapshot snapshot = new TrackingTabletChunkSnapshot(
+            chunkX, chunkZ, TrackingTabletTileCache.get(this.world).getVersion(),
+            terrainGenerated, generatedGrid
+        );
 
-    private BlockPos.MutableBlockPos getTopBlock(BlockPos.MutableBlockPos topPos) {
-        topPos.setY(256);
-        while(topPos.getY() >= 1) {
-            IBlockState state = this.world.getBlockState(topPos);
-            if(state.isFullBlock() || state.getMaterial().isLiquid() || state.getBlock() == Blocks.SNOW_LAYER) {
-                break;
+        //The biome and grass colours are worked out here rather than on the workers, as they can't be looked up off the server thread
+        BlockPos.PooledMutableBlockPos pos = BlockPos.PooledMutableBlockPos.retain();
+        for (int z = zStart; z <= zEnd ; z++) {
+            for (int x = xStart; x <= xEnd ; x++) {
+                snapshot.setBiomeColor(x, z, BiomeUtils.getBiomeColor(pos.setPos(x, 100, z), biomes[(x - xStart) + (z - zStart) * width]));
+            }
+        }
+
+        if(terrainGenerated) {
+            for (int x = xStart; x <= xEnd; x++) {
+                pos.setPos(x, 0, zStart - 1);
+                snapshot.setHeight(x, zStart - 1, this.world.isBlockLoaded(pos) ? ColumnTopCache.getTopBlock(this.world, pos).getY() : TrackingTabletChunkSnapshot.UNLOADED);
+            }
+            for (int z = zStart; z <= zEnd ; z++) {
+                for (int x = xStart; x <= xEnd ; x++) {
+                    BlockPos.MutableBlockPos blockPos = ColumnTopCache.getTopBlock(this.world, pos.setPos(x, 0, z));
+                    snapshot.setHeight(x, z, blockPos.getY());
+
+                    IBlockState state = this.world.getBlockState(blockPos);
+                    Biome biome = biomes[(x - xStart) + (z - zStart) * width];
+                    //todo: config these blocks
+                    if(state.getBlock() == Blocks.GRASS) {
+                        snapshot.setBlockColor(x, z, BiomeUtils.getGrassColor(biome, blockPos, 0.5F));
+                    } else if (state.getBlock() == Blocks.LEAVES || state.getBlock() == Blocks.LEAVES2) {
+                        snapshot.setBlockColor(x, z, BiomeUtils.getGrassColor(biome, blockPos, 0.3F));
+                    } else {
+                        snapshot.setBlockColor(x, z, state.getMapColor(this.world, blockPos).colorValue);
+                    }
+                }
             }
-            topPos.setY(topPos.getY() - 1);
         }
-        return topPos;
+        pos.release();
+
+        return snapshot;
     }
 
-    //Returns false when done
-    private boolean incrementPosition() {
-        this.currentPos = new ChunkPos(this.currentPos.x + 1, this.currentPos.z);
+    private boolean isChunkGenerated(int chunkX, int chunkZ) {
+        return this.world.isChunkGeneratedAt(chunkX, chunkZ) && this.world.getChunk(chunkX, chunkZ).isTerrainPopulated();
+    }
 
-        //Out of bounds to the right, so move down one
-        if(this.currentPos.getXStart() > this.toPos.getX()) {
-            this.currentPos = new ChunkPos(this.fromPos.getX() >> 4, this.currentPos.z + 1);
+    private static class RenderedTile {
+        private final int chunkX;
+        private final int chunkZ;
+        private final int version;
+        private final boolean cacheable;
+        //Null if the tile couldn't be rendered
+        @Nullable
+        private final int[] data;
+
+        private RenderedTile(int chunkX, int chunkZ, int version, boolean cacheable, @Nullable int[] data) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.version = version;
+            this.cacheable = cacheable;
+            this.data = data;
         }
-
-        //Out of bounds to the bottom, so we're done and should return false
-        return this.currentPos.getZStart() <= this.toPos.getZ();
     }
 
     public void start() {
-        MinecraftForge.EVENT_BUS.register(this);
+        if(!ACTIVE_TABLETS.contains(this)) {
+            ACTIVE_TABLETS.add(this);
+        }
     }
 
     public void finish() {
-        MinecraftForge.EVENT_BUS.unregister(this);
+        this.finished = true;
+        ACTIVE_TABLETS.remove(this);
         PLAYER_TO_TABLET_MAP.remove(this.player.getUniqueID());
     }
 
@@ -0,0 +1,396 @@
+package net.dumbcode.projectnublar.server.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dumbcode.projectnublar.server.ProjectNublar;
+import net.dumbcode.projectnublar.server.ProjectNublarConfig;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraftforge.event.terraingen.PopulateChunkEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A per dimension cache of the coloured 16x16 tracking tablet tiles, keyed by chunk. <br>
+ * Tiles are kept in memory under an LRU policy. Evicted tiles are spilled to region files (32x32 chunks each) in the world folder,
+ * which are written when the world saves. Tiles are invalidated when a block in the chunk changes, or when the chunk or one of its neighbours is populated.
+ * All methods should only be called from the server thread. The region files themselves are only touched from a single io thread,
+ * so saving doesn't wait on the disk, and reads always see the writes queued before them. Regions are read ahead of time with
+ * {@link #prefetch(int, int)}, or on a miss, and their tiles show up in the cache once the read has finished.
+ */
+@Mod.EventBusSubscriber(modid = ProjectNublar.MODID)
+public class TrackingTabletTileCache {
+
+    public static final int TILE_SIZE = 16 * 16;
+
+    private static final Map<Integer, TrackingTabletTileCache> CACHES = new HashMap<>();
+    private static final ExecutorService IO = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("Tracking Tablet Tile IO").setDaemon(true).build()
+    );
+
+    private final File folder;
+
+    private final LinkedHashMap<Long, Tile> tiles = new LinkedHashMap<Long, Tile>(256, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+            if(this.size() > ProjectNublarConfig.TRACKING.tileCacheSize) {
+                TrackingTabletTileCache.this.onEvicted(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    //The version each chunk was last invalidated at, so tiles rendered from an outdated snapshot aren't cached.
+    //Entries are dropped when their chunk unloads, with prunedVersion standing in for any dropped entry.
+    private final Map<Long, Integer> chunkVersions = new HashMap<>();
+    private int version;
+    private int prunedVersion;
+
+    //Region key -> (index in region -> tile). Null tiles mean the tile has been invalidated and should be removed from the file.
+    private final Map<Long, Map<Short, int[]>> pendingRegionWrites = new HashMap<>();
+    //Regions where every tile on disk is also in memory, so a miss doesn't need to read the file again
+    private final Set<Long> loadedRegions = new HashSet<>();
+    //Regions being read on the io thread. A region is dropped from here if one of its tiles is evicted while it's being read,
+    //so it isn't marked as loaded when the read finishes.
+    private final Set<Long> loadingRegions = new HashSet<>();
+    //Regions the io thread has finished reading, waiting to be put into the cache on the server thread
+    private final Queue<ReadRegion> readRegions = new ConcurrentLinkedQueue<>();
+    //The last write queued on the io thread
+    private Future<?> lastWrite;
+
+    private TrackingTabletTileCache(File folder) {
+        this.folder = folder;
+    }
+
+    public static TrackingTabletTileCache get(World world) {
+        return CACHES.computeIfAbsent(world.provider.getDimension(), dim -> new TrackingTabletTileCache(new File(world.getSaveHandler().getWorldDirectory(), "tablet_tiles/DIM" + dim)));
+    }
+
+    /**
+     * Gets the current version of the cache. A snapshot taken now should be put back into the cache with this version.
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Gets the tile for the chunk. This never waits on the disk. If the chunk's region hasn't been read yet, it's read
+     * on the io thread, and null is returned until it has been.
+     * @return the 16x16 colour data of the chunk, or null if it isn't cached, or its region is still being read.
+     * @see #isLoading(int, int)
+     */
+    @Nullable
+    public int[] getTile(int chunkX, int chunkZ) {
+        this.addReadRegions();
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        Tile tile = this.tiles.get(key);
+        if(tile != null) {
+            return tile.data;
+        }
+
+        long regionKey = ChunkPos.asLong(chunkX >> 5, chunkZ >> 5);
+        Map<Short, int[]> pending = this.pendingRegionWrites.get(regionKey);
+        if(pending != null && pending.containsKey(getRegionIndex(chunkX, chunkZ))) {
+            int[] data = pending.get(getRegionIndex(chunkX, chunkZ));
+            if(data != null) {
+                this.tiles.put(key, new Tile(data, true));
+                pending.remove(getRegionIndex(chunkX, chunkZ));
+            }
+            return data;
+        }
+
+        this.prefetch(chunkX, chunkZ);
+        return null;
+    }
+
+    /**
+     * Gets whether the region of the chunk is being read on the io thread, meaning {@link #getTile(int, int)} may have a tile for it soon.
+     */
+    public boolean isLoading(int chunkX, int chunkZ) {
+        this.addReadRegions();
+        return this.loadingRegions.contains(ChunkPos.asLong(chunkX >> 5, chunkZ >> 5));
+    }
+
+    /**
+     * Starts reading the region of the chunk on the io thread, if it hasn't been read already.
+     */
+    public void prefetch(int chunkX, int chunkZ) {
+        long regionKey = ChunkPos.asLong(chunkX >> 5, chunkZ >> 5);
+        if(!this.loadedRegions.contains(regionKey) && this.loadingRegions.add(regionKey)) {
+            int regionX = chunkX >> 5;
+            int regionZ = chunkZ >> 5;
+            int version = this.version;
+            IO.execute(() -> this.readRegions.add(new ReadRegion(regionX, regionZ, version, this.readRegion(regionX, regionZ))));
+        }
+    }
+
+    //Puts the tiles of the regions read on the io thread into the cache
+    private void addReadRegions() {
+        ReadRegion read;
+        while((read = this.readRegions.poll()) != null) {
+            long regionKey = ChunkPos.asLong(read.regionX, read.regionZ);
+            Map<Short, int[]> pending = this.pendingRegionWrites.get(regionKey);
+            for (Map.Entry<Short, int[]> entry : read.tiles.entrySet()) {
+                short index = entry.getKey();
+                int chunkX = (read.regionX << 5) + (index & 31);
+                int chunkZ = (read.regionZ << 5) + (index >> 5);
+                long tileKey = ChunkPos.asLong(chunkX, chunkZ);
+                //Tiles invalidated since the read started are skipped, as the file may have been read before the invalidation was written
+                if((pending == null || !pending.containsKey(index)) && !this.tiles.containsKey(tileKey)
+                        && this.chunkVersions.getOrDefault(tileKey, this.prunedVersion) <= read.version) {
+                    this.tiles.put(tileKey, new Tile(entry.getValue(), false));
+                }
+            }
+            if(this.loadingRegions.remove(regionKey)) {
+                this.loadedRegions.add(regionKey);
+            }
+        }
+    }
+
+    /**
+     * Puts the tile into the cache, if the chunk hasn't been invalidated since {@code version} was taken.
+     */
+    public void putTile(int chunkX, int chunkZ, int version, int[] data) {
+        if(data.length == TILE_SIZE && this.chunkVersions.getOrDefault(ChunkPos.asLong(chunkX, chunkZ), this.prunedVersion) <= version) {
+            this.tiles.put(ChunkPos.asLong(chunkX, chunkZ), new Tile(data, true));
+        }
+    }
+
+    public void invalidate(int chunkX, int chunkZ) {
+        long key = ChunkPos.asLong(chunkX, chunkZ);
+        this.chunkVersions.put(key, ++this.version);
+        this.tiles.remove(key);
+        //Make sure the tile on disk is also removed
+        this.pendingRegionWrites.computeIfAbsent(ChunkPos.asLong(chunkX >> 5, chunkZ >> 5), l -> new HashMap<>()).put(getRegionIndex(chunkX, chunkZ), null);
+    }
+
+    private void onEvicted(long key, Tile tile) {
+        int chunkX = (int) key;
+        int chunkZ = (int) (key >>> 32);
+        long regionKey = ChunkPos.asLong(chunkX >> 5, chunkZ >> 5);
+        if(tile.dirty) {
+            this.pendingRegionWrites.computeIfAbsent(regionKey, l -> new HashMap<>()).put(getRegionIndex(chunkX, chunkZ), tile.data);
+        }
+        //The tile is no longer in memory, so the region will need to be read again. This is also needed for spilled tiles,
+        //as once they're flushed they're only on disk.
+        this.loadedRegions.remove(regionKey);
+        this.loadingRegions.remove(regionKey);
+    }
+
+    private void onChunkUnloaded(int chunkX, int chunkZ) {
+        Integer version = this.chunkVersions.remove(ChunkPos.asLong(chunkX, chunkZ));
+        if(version != null) {
+            this.prunedVersion = Math.max(this.prunedVersion, version);
+        }
+    }
+
+    /**
+     * Queues all the dirty tiles, and the tiles spilled from memory, to be written to the region files on the io thread.
+     */
+    public void flush() {
+        for (Map.Entry<Long, Tile> entry : this.tiles.entrySet()) {
+            if(entry.getValue().dirty) {
+                int chunkX = (int) (long) entry.getKey();
+                int chunkZ = (int) (entry.getKey() >>> 32);
+                this.pendingRegionWrites.computeIfAbsent(ChunkPos.asLong(chunkX >> 5, chunkZ >> 5), l -> new HashMap<>()).put(getRegionIndex(chunkX, chunkZ), entry.getValue().data);
+                entry.getValue().dirty = false;
+            }
+        }
+
+        if(!this.pendingRegionWrites.isEmpty()) {
+            Map<Long, Map<Short, int[]>> writes = new HashMap<>(this.pendingRegionWrites);
+            this.pendingRegionWrites.clear();
+            this.lastWrite = IO.submit(() -> this.writeRegions(writes));
+        }
+    }
+
+    //Waits for every queued write to finish
+    private void awaitWrites() {
+        if(this.lastWrite != null) {
+            try {
+                this.lastWrite.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                ProjectNublar.getLogger().error("Unable to write tablet tile regions", e);
+            }
+        }
+    }
+
+    //Run on the io thread
+    private void writeRegions(Map<Long, Map<Short, int[]>> writes) {
+        for (Map.Entry<Long, Map<Short, int[]>> entry : writes.entrySet()) {
+            int regionX = (int) (long) entry.getKey();
+            int regionZ = (int) (entry.getKey() >>> 32);
+            Map<Short, int[]> region = this.readRegion(regionX, regionZ);
+            for (Map.Entry<Short, int[]> tile : entry.getValue().entrySet()) {
+                if(tile.getValue() == null) {
+                    region.remove(tile.getKey());
+                } else {
+                    region.put(tile.getKey(), tile.getValue());
+                }
+            }
+            this.writeRegion(regionX, regionZ, region);
+        }
+    }
+
+
+    private Map<Short, int[]> readRegion(int regionX, int regionZ) {
+        Map<Short, int[]> region = new HashMap<>();
+        File file = this.getRegionFile(regionX, regionZ);
+        if(!file.exists()) {
+            return region;
+        }
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            int amount = stream.readShort();
+            for (int i = 0; i < amount; i++) {
+                short index = stream.readShort();
+                int[] data = new int[TILE_SIZE];
+                for (int d = 0; d < TILE_SIZE; d++) {
+                    data[d] = stream.readInt();
+                }
+                region.put(index, data);
+            }
+        } catch (IOException e) {
+            ProjectNublar.getLogger().error("Unable to read tablet tile region " + file, e);
+        }
+        return region;
+    }
+
+    private void writeRegion(int regionX, int regionZ, Map<Short, int[]> region) {
+        File file = this.getRegionFile(regionX, regionZ);
+        if(region.isEmpty()) {
+            if(file.exists() && !file.delete()) {
+                ProjectNublar.getLogger().error("Unable to delete tablet tile region {}", file);
+            }
+            return;
+        }
+        if(!this.folder.exists() && !this.folder.mkdirs()) {
+            ProjectNublar.getLogger().error("Unable to create folder: {}", this.folder.getAbsolutePath());
+            return;
+        }
+        try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            stream.writeShort(region.size());
+            for (Map.Entry<Short, int[]> entry : region.entrySet()) {
+                stream.writeShort(entry.getKey());
+                for (int datum : entry.getValue()) {
+                    stream.writeInt(datum);
+                }
+            }
+        } catch (IOException e) {
+            ProjectNublar.getLogger().error("Unable to write tablet tile region " + file, e);
+        }
+    }
+
+    private File getRegionFile(int regionX, int regionZ) {
+        return new File(this.folder, "r." + regionX + "." + regionZ + ".tiles");
+    }
+
+    private static short getRegionIndex(int chunkX, int chunkZ) {
+        return (short) ((chunkX & 31) | (chunkZ & 31) << 5);
+    }
+
+    @SubscribeEvent
+    public static void onWorldLoad(WorldEvent.Load event) {
+        World world = event.getWorld();
+        if(!world.isRemote) {
+            world.addEventListener(new BlockChangeListener(TrackingTabletTileCache::onBlockChanged));
+        }
+    }
+
+    private static void onBlockChanged(World world, BlockPos pos, IBlockState oldState, IBlockState newState) {
+        TrackingTabletTileCache cache = CACHES.get(world.provider.getDimension());
+        if(cache != null) {
+            cache.invalidate(pos.getX() >> 4, pos.getZ() >> 4);
+            //The shading of the row south of this uses this block's height
+            if((pos.getZ() & 15) == 15) {
+                cache.invalidate(pos.getX() >> 4, (pos.getZ() >> 4) + 1);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldSave(WorldEvent.Save event) {
+        if(!event.getWorld().isRemote) {
+            TrackingTabletTileCache cache = CACHES.get(event.getWorld().provider.getDimension());
+            if(cache != null) {
+                cache.flush();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onWorldUnload(WorldEvent.Unload event) {
+        if(!event.getWorld().isRemote) {
+            TrackingTabletTileCache cache = CACHES.remove(event.getWorld().provider.getDimension());
+            if(cache != null) {
+                cache.flush();
+                //Make sure everything is on disk before the world is gone
+                cache.awaitWrites();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if(!event.getWorld().isRemote) {
+            TrackingTabletTileCache cache = CACHES.get(event.getWorld().provider.getDimension());
+            if(cache != null) {
+                cache.onChunkUnloaded(event.getChunk().x, event.getChunk().z);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onChunkPopulated(PopulateChunkEvent.Post event) {
+        if(!event.getWorld().isRemote) {
+            TrackingTabletTileCache cache = get(event.getWorld());
+            //The gradient at the edges of a tile depends on whether the neighbouring chunks are populated
+            for (int x = -1; x <= 1; x++) {
+                for (int z = -1; z <= 1; z++) {
+                    cache.invalidate(event.getChunkX() + x, event.getChunkZ() + z);
+                }
+            }
+        }
+    }
+
+    private static class ReadRegion {
+        private final int regionX;
+        private final int regionZ;
+        //The cache version when the read was started
+        private final int version;
+        private final Map<Short, int[]> tiles;
+
+        private ReadRegion(int regionX, int regionZ, int version, Map<Short, int[]> tiles) {
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.version = version;
+            this.tiles = tiles;
+        }
+    }
+
+    private static class Tile {
+        private final int[] data;
+        private boolean dirty;
+
+        private Tile(int[] data, boolean dirty) {
+            this.data = data;
+            this.dirty = dirty;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import net.dumbcode.dumblibrary.server.utils.WorldUtils;
 import net.dumbcode.projectnublar.server.block.FossilBlock;
 import net.dumbcode.projectnublar.server.dinosaur.DinosaurHandler;
 import net.dumbcode.projectnublar.server.utils.BlockUtils;
+import net.dumbcode.projectnublar.server.utils.ColumnTopCache;
 import net.dumbcode.projectnublar.server.world.LootTableHandler;
 import net.dumbcode.projectnublar.server.world.constants.StructureConstants;
 import net.dumbcode.projectnublar.server.world.structures.Structure;
@@ -345,7 +346,7 @@ public class Digsite extends Structure {
             BlockPos blockpos;
             BlockPos blockpos1;
 
-            for (blockpos = new BlockPos(pos.getX(), chunk.getTopFilledSegment() + 16, pos.getZ()); blockpos.getY() >= 0; blockpos = blockpos1) {
+            for (blockpos = new BlockPos(pos.getX(), ColumnTopCache.getScanStartY(this.world, pos.getX(), pos.getZ()) + 1, pos.getZ()); blockpos.getY() >= 0; blockpos = blockpos1) {
                 blockpos1 = blockpos.down();
                 IBlockState state = chunk.getBlockState(blockpos1);
 